@@ -0,0 +1,403 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.aws.lambda;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.MapWrap;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Split based parsers for VPC flow logs, classic ELB and ALB access logs. They produce the same
+ * fields and types as the grok patterns %{AWS_FLOW_LOG} and %{AWS_ELB_LOG} (including
+ * {name}_grokfailure when a value cannot be converted) at several times the throughput.
+ *
+ * Lines are validated by structure and numeric fields, timestamps and ip addresses are not validated.
+ * Lines that cannot be parsed are tagged with _grokparsefailure and not modified.
+ *
+ * <pre> Groovy usage:
+ *  {@code
+ * observable.flatMap (AWSLogParsers.vpcFlowLog())
+ *
+ * observable.flatMap (AWSLogParsers.elb(field: 'message', tagOnFailure: true, tag: '_elbparsefailure'))
+ * }</pre>
+ */
+@SuppressWarnings("unused")
+public class AWSLogParsers {
+
+    private static final String ERROR_TAG = "_grokparsefailure";
+
+    /**
+     * Same fields as %{AWS_FLOW_LOG}
+     */
+    public static Func1<JsonEvent, Observable<JsonEvent>> vpcFlowLog() {
+        return vpcFlowLog(Collections.emptyMap());
+    }
+
+    public static Func1<JsonEvent, Observable<JsonEvent>> vpcFlowLog(Map conf) {
+        return stage(conf, AWSLogParsers::parseFlowLog);
+    }
+
+    /**
+     * Same fields as %{AWS_ELB_LOG}. A backend_status_code of - (no response from backend) is left
+     * out instead of failing the line.
+     */
+    public static Func1<JsonEvent, Observable<JsonEvent>> elb() {
+        return elb(Collections.emptyMap());
+    }
+
+    public static Func1<JsonEvent, Observable<JsonEvent>> elb(Map conf) {
+        return stage(conf, (line, target) -> parseAccessLog(line, target, false));
+    }
+
+    /**
+     * Same fields as elb (target is named backend as in ELB logs) and type, ssl_cipher, ssl_protocol,
+     * target_group_arn, trace_id, domain_name and chosen_cert_arn when present.
+     */
+    public static Func1<JsonEvent, Observable<JsonEvent>> alb() {
+        return alb(Collections.emptyMap());
+    }
+
+    public static Func1<JsonEvent, Observable<JsonEvent>> alb(Map conf) {
+        return stage(conf, (line, target) -> parseAccessLog(line, target, true));
+    }
+
+    private interface Parser {
+        /**
+         * @return false if the line could not be parsed, target is not modified
+         */
+        boolean parse(String line, ObjectNode target);
+    }
+
+    private static Func1<JsonEvent, Observable<JsonEvent>> stage(Map conf, Parser parser) {
+        MapWrap config = MapWrap.of(conf);
+        String field = config.asString("field", "message");
+        boolean tagOnFailure = config.asBoolean("tagOnFailure", true);
+        String tag = config.asString("tag", ERROR_TAG);
+        return jsonEvent -> {
+            if (!jsonEvent.has(field)) {
+                return jsonEvent.toObservable();
+            }
+            if (!parser.parse(jsonEvent.valueAsString(field), jsonEvent.unsafe()) && tagOnFailure) {
+                jsonEvent.addTag(tag);
+            }
+            return jsonEvent.toObservable();
+        };
+    }
+
+    /**
+     * version account-id interface-id srcaddr dstaddr srcport dstport protocol packets bytes start end action log-status
+     */
+    static boolean parseFlowLog(String line, ObjectNode target) {
+        Tokens tokens = new Tokens(line);
+        String version = tokens.next();
+        String accountId = tokens.next();
+        String interfaceId = tokens.next();
+        String srcaddr = tokens.next();
+        String dstaddr = tokens.next();
+        String srcport = tokens.next();
+        String dstport = tokens.next();
+        String protocol = tokens.next();
+        String packets = tokens.next();
+        String bytes = tokens.next();
+        String start = tokens.next();
+        String end = tokens.next();
+        String action = tokens.next();
+        String logStatus = tokens.last();
+        if (logStatus == null || !isNumber(version) || !isNumber(accountId) || !isNumber(start) || !isNumber(end)) {
+            return false;
+        }
+        // Sorted by field name, same as grok
+        putString(target, "account_id", accountId);
+        putString(target, "action", action);
+        putLong(target, "bytes", bytes);
+        putString(target, "dstaddr", dstaddr);
+        putString(target, "dstport", dstport);
+        putInt(target, "end", end);
+        putString(target, "interface_id", interfaceId);
+        putString(target, "log_status", logStatus);
+        putLong(target, "packets", packets);
+        putString(target, "protocol", protocol);
+        putString(target, "srcaddr", srcaddr);
+        putString(target, "srcport", srcport);
+        putInt(target, "start", start);
+        putString(target, "version", version);
+        return true;
+    }
+
+    /**
+     * [type] timestamp elb client:port backend:port request_processing_time backend_processing_time
+     * response_processing_time elb_status_code backend_status_code received_bytes sent_bytes "request" "user_agent"
+     * [ssl_cipher ssl_protocol target_group_arn "trace_id" "domain_name" "chosen_cert_arn" ...]
+     */
+    static boolean parseAccessLog(String line, ObjectNode target, boolean alb) {
+        Tokens tokens = new Tokens(line);
+        String type = alb ? tokens.next() : null;
+        String timestamp = tokens.next();
+        String loadbalancer = tokens.next();
+        String client = tokens.next();
+        String backend = tokens.next();
+        String requestTime = tokens.next();
+        String backendTime = tokens.next();
+        String responseTime = tokens.next();
+        String elbStatus = tokens.next();
+        String backendStatus = tokens.next();
+        String receivedBytes = tokens.next();
+        String sentBytes = tokens.next();
+        String request = tokens.quoted();
+        String userAgent = tokens.quoted();
+        if (userAgent == null) {
+            return false;
+        }
+        int clientPort = client.lastIndexOf(':');
+        int backendPort = backend.equals("-") ? 0 : backend.lastIndexOf(':');
+        if (clientPort <= 0 || !isNumber(client, clientPort + 1) || backendPort < 0
+                || (backendPort > 0 && !isNumber(backend, backendPort + 1))
+                || !isNumber(requestTime) || !isNumber(backendTime) || !isNumber(responseTime)
+                || !isNumber(elbStatus) || !(isNumber(backendStatus) || backendStatus.equals("-"))
+                || !isNumber(receivedBytes) || !isNumber(sentBytes)) {
+            return false;
+        }
+
+        // Request is either "verb request[ HTTP/version]" or raw
+        String verb = null;
+        String path = null;
+        String httpVersion = null;
+        int verbEnd = request.indexOf(' ');
+        if (verbEnd > 0 && isWord(request, verbEnd)) {
+            int pathEnd = request.indexOf(' ', verbEnd + 1);
+            if (pathEnd < 0 && verbEnd + 1 < request.length()) {
+                verb = request.substring(0, verbEnd);
+                path = request.substring(verbEnd + 1);
+            } else if (pathEnd > verbEnd + 1 && request.startsWith("HTTP/", pathEnd + 1)
+                    && isNumber(request, pathEnd + 6)) {
+                verb = request.substring(0, verbEnd);
+                path = request.substring(verbEnd + 1, pathEnd);
+                httpVersion = request.substring(pathEnd + 6);
+            }
+        }
+
+        String sslCipher = null;
+        String sslProtocol = null;
+        String targetGroupArn = null;
+        String traceId = null;
+        String domainName = null;
+        String chosenCertArn = null;
+        if (alb) {
+            sslCipher = tokens.next();
+            sslProtocol = tokens.next();
+            targetGroupArn = tokens.next();
+            traceId = tokens.quoted();
+            domainName = tokens.quoted();
+            chosenCertArn = tokens.quoted();
+        }
+
+        // Sorted by field name, same as grok
+        if (backendPort > 0) {
+            putString(target, "backend_ip", backend.substring(0, backendPort));
+            putInt(target, "backend_port", backend.substring(backendPort + 1));
+        }
+        target.put("backend_processing_time", Float.parseFloat(backendTime));
+        if (!backendStatus.equals("-")) {
+            putInt(target, "backend_status_code", backendStatus);
+        }
+        putQuoted(target, "chosen_cert_arn", chosenCertArn);
+        putString(target, "client_ip", client.substring(0, clientPort));
+        putInt(target, "client_port", client.substring(clientPort + 1));
+        putQuoted(target, "domain_name", domainName);
+        putInt(target, "elb_status_code", elbStatus);
+        putString(target, "httpversion", httpVersion);
+        putString(target, "loadbalancer", loadbalancer);
+        putString(target, "rawrequest", verb == null ? request : null);
+        putInt(target, "received_bytes", receivedBytes);
+        putString(target, "request", path);
+        target.put("request_processing_time", Float.parseFloat(requestTime));
+        target.put("response_processing_time", Float.parseFloat(responseTime));
+        putInt(target, "sent_bytes", sentBytes);
+        putString(target, "ssl_cipher", sslCipher);
+        putString(target, "ssl_protocol", sslProtocol);
+        putString(target, "target_group_arn", targetGroupArn);
+        putString(target, "timestamp", timestamp);
+        putQuoted(target, "trace_id", traceId);
+        putString(target, "type", type);
+        putQuoted(target, "useragent", userAgent);
+        putString(target, "verb", verb);
+        return true;
+    }
+
+    private static void putString(ObjectNode target, String name, String value) {
+        if (value != null) {
+            target.put(name, unquote(value));
+        }
+    }
+
+    /**
+     * Quotes are already removed
+     */
+    private static void putQuoted(ObjectNode target, String name, String value) {
+        if (value != null) {
+            target.put(name, value);
+        }
+    }
+
+    private static void putInt(ObjectNode target, String name, String value) {
+        try {
+            target.put(name, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            target.put(name + "_grokfailure", e.toString());
+            target.put(name, unquote(value));
+        }
+    }
+
+    private static void putLong(ObjectNode target, String name, String value) {
+        try {
+            target.put(name, Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            target.put(name + "_grokfailure", e.toString());
+            target.put(name, unquote(value));
+        }
+    }
+
+    /**
+     * Removes surrounding quotes, same as grok
+     */
+    private static String unquote(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return value;
+        }
+        char first = value.charAt(0);
+        if (length == 1) {
+            return first == '"' || first == '\'' ? "" : value;
+        }
+        if (first == value.charAt(length - 1) && (first == '"' || first == '\'')) {
+            return value.substring(1, length - 1);
+        }
+        return value;
+    }
+
+    private static boolean isNumber(String value) {
+        return value != null && isNumber(value, 0);
+    }
+
+    /**
+     * Same as grok NUMBER, [+-]?(digits(.digits)?|.digits) from start to end of value
+     */
+    private static boolean isNumber(String value, int start) {
+        int i = start;
+        int length = value.length();
+        if (i < length && (value.charAt(i) == '+' || value.charAt(i) == '-')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < length && isDigit(value.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < length && value.charAt(i) == '.') {
+            i++;
+            int decimals = 0;
+            while (i < length && isDigit(value.charAt(i))) {
+                i++;
+                decimals++;
+            }
+            return decimals > 0 && i == length;
+        }
+        return digits > 0 && i == length;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWord(String value, int end) {
+        for (int i = 0; i < end; i++) {
+            char c = value.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Space separated tokens, once a token is missing all following tokens are null
+     */
+    private static final class Tokens {
+        private final String line;
+        private int position;
+
+        Tokens(String line) {
+            this.line = line;
+        }
+
+        /**
+         * Non empty text up to the next space
+         */
+        String next() {
+            if (position < 0 || position >= line.length()) {
+                position = -1;
+                return null;
+            }
+            int end = line.indexOf(' ', position);
+            if (end == position || end < 0) {
+                position = -1;
+                return null;
+            }
+            String token = line.substring(position, end);
+            position = end + 1;
+            return token;
+        }
+
+        /**
+         * Non empty text up to the next space or end of line, the rest of the line is ignored
+         */
+        String last() {
+            if (position < 0 || position >= line.length()) {
+                return null;
+            }
+            int end = line.indexOf(' ', position);
+            return end == position ? null : line.substring(position, end < 0 ? line.length() : end);
+        }
+
+        /**
+         * Text between quotes, a backslash escapes the next character. The escapes are kept.
+         */
+        String quoted() {
+            if (position < 0 || position >= line.length() || line.charAt(position) != '"') {
+                position = -1;
+                return null;
+            }
+            for (int i = position + 1; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    String token = line.substring(position + 1, i);
+                    position = i + 2 <= line.length() && (i + 1 == line.length() || line.charAt(i + 1) == ' ')
+                            ? i + 2
+                            : -1;
+                    return token;
+                }
+            }
+            position = -1;
+            return null;
+        }
+    }
+}
@@ -18,11 +18,8 @@ import lumbermill.api.EventProcessor;
 import lumbermill.api.JsonEvent;
 import rx.Observable;
 
-import static lumbermill.Core.grok;
-import static lumbermill.internal.MapWrap.Map;
-
 /**
- * Decodes raw VPC Flow Log messages from Cloudwatch logs
+ * Decodes raw VPC Flow Log messages from Cloudwatch logs, fields are the same as grok %{AWS_FLOW_LOG}
  */
 @SuppressWarnings("unused")
 public class VPCFlowLogsEventPreProcessor implements EventProcessor<JsonEvent, JsonEvent>{
@@ -31,9 +28,6 @@ public class VPCFlowLogsEventPreProcessor implements EventProcessor<JsonEvent, J
 
         return observable
                 .compose(new CloudWatchLogsEventPreProcessor())
-                .flatMap(
-                        grok.parse (
-                                Map("field",  "message",
-                                    "pattern","%{AWS_FLOW_LOG}")));
+                .flatMap(AWSLogParsers.vpcFlowLog());
     }
 }
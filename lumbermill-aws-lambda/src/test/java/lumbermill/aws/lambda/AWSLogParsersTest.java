@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.aws.lambda;
+
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.MapWrap;
+import org.junit.Test;
+import rx.Observable;
+import rx.functions.Func1;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AWSLogParsersTest {
+
+    private static final String FLOW_LOG = "2 123456789010 eni-1235b8ca 172.31.16.139 172.31.16.21 20641 22 6 20 4249 1418530010 1418530070 ACCEPT OK";
+    private static final String FLOW_LOG_NODATA = "2 123456789010 eni-1235b8ca - - - - - - - 1431280876 1431280934 - NODATA";
+    private static final String ELB = "2015-05-13T23:39:43.945958Z my-loadbalancer 192.168.131.39:2817 10.0.0.1:80 0.000073 0.001048 0.000057 200 200 0 29 \"GET http://www.example.com:80/ HTTP/1.1\" \"curl/7.38.0\" - -";
+    private static final String ELB_RAW_REQUEST = "2015-05-13T23:39:43.945958Z my-loadbalancer 192.168.131.39:2817 10.0.0.1:80 0.000086 0.001048 0.001337 200 200 0 57 \"- - - \" \"-\" - -";
+    private static final String ELB_NO_BACKEND = "2015-05-13T23:39:43.945958Z my-loadbalancer 192.168.131.39:2817 - -1 -1 -1 504 - 0 0 \"GET http://www.example.com:80/ HTTP/1.1\" \"curl/7.38.0\" - -";
+    private static final String ALB = "https 2018-07-02T22:23:00.186641Z app/my-loadbalancer/50dc6c495c0c9188 192.168.131.39:2817 10.0.0.1:80 0.086 0.048 0.037 200 200 0 57 \"GET https://www.example.com:443/ HTTP/1.1\" \"curl/7.46.0\" ECDHE-RSA-AES128-GCM-SHA256 TLSv1.2 arn:aws:elasticloadbalancing:us-east-2:123456789012:targetgroup/my-targets/73e2d6bc24d8a067 \"Root=1-58337281-1d84f3d73c47ec4e58577259\" \"www.example.com\" \"arn:aws:acm:us-east-2:123456789012:certificate/12345678-1234-1234-1234-123456789012\" 1 2018-07-02T22:22:48.364000Z \"authenticate,forward\" \"-\" \"-\"";
+
+    @Test
+    public void test_flow_log_same_as_grok() {
+        assertSameAsGrok("%{AWS_FLOW_LOG}", AWSLogParsers.vpcFlowLog(), FLOW_LOG);
+        assertSameAsGrok("%{AWS_FLOW_LOG}", AWSLogParsers.vpcFlowLog(), FLOW_LOG_NODATA);
+    }
+
+    @Test
+    public void test_elb_same_as_grok() {
+        assertSameAsGrok("%{AWS_ELB_LOG}", AWSLogParsers.elb(), ELB);
+        assertSameAsGrok("%{AWS_ELB_LOG}", AWSLogParsers.elb(), ELB_RAW_REQUEST);
+    }
+
+    @Test
+    public void test_elb_without_backend_status() {
+        JsonEvent event = parse(AWSLogParsers.elb(), ELB_NO_BACKEND);
+        assertThat(event.hasTag("_grokparsefailure")).isFalse();
+        assertThat(event.has("backend_ip")).isFalse();
+        assertThat(event.has("backend_status_code")).isFalse();
+        assertThat(event.unsafe().get("elb_status_code").intValue()).isEqualTo(504);
+    }
+
+    @Test
+    public void test_alb() {
+        JsonEvent event = parse(AWSLogParsers.alb(), ALB);
+        assertThat(event.valueAsString("type")).isEqualTo("https");
+        assertThat(event.valueAsString("loadbalancer")).isEqualTo("app/my-loadbalancer/50dc6c495c0c9188");
+        assertThat(event.unsafe().get("backend_port").intValue()).isEqualTo(80);
+        assertThat(event.valueAsString("verb")).isEqualTo("GET");
+        assertThat(event.valueAsString("useragent")).isEqualTo("curl/7.46.0");
+        assertThat(event.valueAsString("ssl_protocol")).isEqualTo("TLSv1.2");
+        assertThat(event.valueAsString("trace_id")).isEqualTo("Root=1-58337281-1d84f3d73c47ec4e58577259");
+        assertThat(event.valueAsString("domain_name")).isEqualTo("www.example.com");
+    }
+
+    @Test
+    public void test_invalid_line_is_tagged_and_not_modified() {
+        JsonEvent event = parse(AWSLogParsers.vpcFlowLog(), "2 123456789010 eni-1235b8ca");
+        assertThat(event.hasTag("_grokparsefailure")).isTrue();
+        assertThat(event.has("version")).isFalse();
+        assertThat(parse(AWSLogParsers.elb(), ALB).hasTag("_grokparsefailure")).isTrue();
+    }
+
+    private static void assertSameAsGrok(String pattern, Func1<JsonEvent, Observable<JsonEvent>> parser, String line) {
+        JsonEvent expected = parse(Core.grok.parse(MapWrap.of("field", "message", "pattern", pattern).toMap()), line);
+        JsonEvent actual = parse(parser, line);
+        expected.remove("@timestamp");
+        actual.remove("@timestamp");
+        assertThat(actual.toString()).isEqualTo(expected.toString());
+    }
+
+    private static JsonEvent parse(Func1<JsonEvent, Observable<JsonEvent>> parser, String line) {
+        return parser.call(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.aws.lambda.AWSLogParsers;
+import lumbermill.internal.MapWrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split based AWS log parsers compared to grok with the bundled patterns. ALB lines are parsed with
+ * %{AWS_ELB_LOG} by grok, it matches from the second field.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AWSLogParsersBenchmark {
+
+    @Param({"aws-flow", "aws-elb", "aws-alb"})
+    public String corpus;
+
+    @Param({"split", "grok"})
+    public String parser;
+
+    private List<String> lines;
+    private Func1<JsonEvent, Observable<JsonEvent>> parse;
+    private int next;
+
+    @Setup
+    public void setup() {
+        lines = Corpus.lines(corpus);
+        if (parser.equals("grok")) {
+            parse = Core.grok.parse(MapWrap.of("field", "message",
+                    "pattern", corpus.equals("aws-flow") ? "%{AWS_FLOW_LOG}" : "%{AWS_ELB_LOG}").toMap());
+        } else {
+            parse = corpus.equals("aws-flow") ? AWSLogParsers.vpcFlowLog()
+                    : corpus.equals("aws-elb") ? AWSLogParsers.elb() : AWSLogParsers.alb();
+        }
+        // ALB lines without a target response fail with grok
+        if (parser.equals("split")) {
+            for (String line : lines) {
+                if (parse.call(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single().hasTag("_grokparsefailure")) {
+                    throw new IllegalStateException("Corpus line does not match: " + line);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public JsonEvent parse() {
+        next = next + 1 == lines.size() ? 0 : next + 1;
+        return parse.call(Codecs.TEXT_TO_JSON.from(lines.get(next))).toBlocking().single();
+    }
+}
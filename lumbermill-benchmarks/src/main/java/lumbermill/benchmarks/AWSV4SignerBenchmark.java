@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import lumbermill.internal.aws.AWSV4SignerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AWS V4 signing of an Elasticsearch bulk request, the payload hash dominates for larger payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AWSV4SignerBenchmark {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2016, 6, 15, 13, 26, 52);
+
+    @Param({"1024", "1048576"})
+    public int payloadSize;
+
+    private AWSV4SignerImpl signer;
+    private Map<String, String> headers;
+    private Optional<byte[]> payload;
+
+    @Setup
+    public void setup() {
+        signer = new AWSV4SignerImpl(
+                new AWSStaticCredentialsProvider(new BasicAWSCredentials("AKIDEXAMPLE", "wJalrXUtnFEMI/K7MDENG+bPxRfiCYEXAMPLEKEY")),
+                "eu-west-1", "es", () -> NOW);
+        headers = new HashMap<>();
+        headers.put("Host", "search-domain.eu-west-1.es.amazonaws.com");
+        headers.put("Content-Type", "application/json");
+        payload = Optional.of(Corpus.jsonOfSize(payloadSize).toByteArray());
+    }
+
+    @Benchmark
+    public Map<String, String> sign() {
+        return signer.getSignedHeaders("/_bulk", "POST", Collections.emptyMap(), headers, payload);
+    }
+}
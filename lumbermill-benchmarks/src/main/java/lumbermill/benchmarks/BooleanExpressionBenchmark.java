@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.BooleanExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * keepWhen/skipWhen expressions, compiled compared to evaluated as javascript.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BooleanExpressionBenchmark {
+
+    @Param({
+            "'{level}' == 'ERROR'",
+            "{status} >= 500 && '{program}' != 'haproxy'",
+            "'{message}'.contains('Accepted') || {status} == 404"})
+    public String expression;
+
+    private JsonEvent event;
+    private BooleanExpression compiled;
+    private BooleanExpression javaScript;
+
+    @Setup
+    public void setup() {
+        event = Codecs.TEXT_TO_JSON.from("Accepted publickey for ubuntu from 10.0.0.2 port 52344 ssh2")
+                .put("level", "INFO")
+                .put("status", 200)
+                .put("program", "sshd");
+        compiled = BooleanExpression.fromString(expression);
+        javaScript = BooleanExpression.fromJavaScript(expression);
+    }
+
+    @Benchmark
+    public boolean compiled() {
+        return compiled.eval(event);
+    }
+
+    @Benchmark
+    public boolean javaScript() {
+        return javaScript.eval(event);
+    }
+}
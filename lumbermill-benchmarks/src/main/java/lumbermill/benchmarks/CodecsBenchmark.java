@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.Json;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Json decoding and encoding straight from/to bytes compared to going through a String.
+ *
+ * Run with the gc profiler to see allocations per operation:
+ *  ./gradlew jmhGc -Pinclude=CodecsBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecsBenchmark {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    @Param({"1024", "65536"})
+    public int size;
+
+    private byte[] json;
+    private ObjectNode node;
+
+    @Setup
+    public void setup() {
+        json = Corpus.jsonOfSize(size).toByteArray();
+        node = Codecs.JSON_OBJECT.from(json).copyNode();
+    }
+
+    /**
+     * A new ByteString is created for each operation (as it is for each record in a real pipeline)
+     * since ByteString caches the result of utf8().
+     */
+    @Benchmark
+    public JsonEvent decodeBytes() {
+        return Codecs.JSON_OBJECT.from(ByteString.of(json));
+    }
+
+    @Benchmark
+    public JsonEvent decodeViaString() throws IOException {
+        return new JsonEvent((ObjectNode) OBJECT_MAPPER.readTree(ByteString.of(json).utf8()));
+    }
+
+    @Benchmark
+    public ByteString encodeBytes() {
+        return Json.toByteString(node);
+    }
+
+    @Benchmark
+    public ByteString encodeViaString() throws IOException {
+        return ByteString.encodeUtf8(OBJECT_MAPPER.writeValueAsString(node));
+    }
+}
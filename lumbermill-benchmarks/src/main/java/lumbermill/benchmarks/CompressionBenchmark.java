@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.Core;
+import lumbermill.api.BytesEvent;
+import lumbermill.api.Codecs;
+import okio.ByteString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GZip and Zlib compress and decompress of a corpus. Payload is one of the corpora as a single event,
+ * similar to a Kinesis record or S3 object.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"syslog", "aws-flow"})
+    public String corpus;
+
+    private final Func1<BytesEvent, Observable<BytesEvent>> gzipCompress = Core.gzip.compress();
+    private final Func1<BytesEvent, Observable<BytesEvent>> gzipDecompress = Core.gzip.decompress();
+    private final Func1<BytesEvent, Observable<BytesEvent>> zlibCompress = Core.zlib.compress();
+    private final Func1<BytesEvent, Observable<BytesEvent>> zlibDecompress = Core.zlib.decompress();
+
+    private ByteString plain;
+    private ByteString gzipped;
+    private ByteString zlibbed;
+
+    @Setup
+    public void setup() {
+        plain = ByteString.encodeUtf8(String.join("\n", Corpus.lines(corpus)));
+        gzipped = gzipCompress.call(Codecs.BYTES.from(plain)).toBlocking().single().raw();
+        zlibbed = zlibCompress.call(Codecs.BYTES.from(plain)).toBlocking().single().raw();
+    }
+
+    @Benchmark
+    public BytesEvent gzipCompress() {
+        return gzipCompress.call(Codecs.BYTES.from(plain)).toBlocking().single();
+    }
+
+    @Benchmark
+    public BytesEvent gzipDecompress() {
+        return gzipDecompress.call(Codecs.BYTES.from(gzipped)).toBlocking().single();
+    }
+
+    @Benchmark
+    public BytesEvent zlibCompress() {
+        return zlibCompress.call(Codecs.BYTES.from(plain)).toBlocking().single();
+    }
+
+    @Benchmark
+    public BytesEvent zlibDecompress() {
+        return zlibDecompress.call(Codecs.BYTES.from(zlibbed)).toBlocking().single();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.JsonEvent;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test data used by the benchmarks
+ */
+final class Corpus {
+
+    private Corpus() {}
+
+    /**
+     * A log like json object of approximately the requested size in bytes
+     */
+    static ByteString jsonOfSize(int size) {
+        JsonEvent event = new JsonEvent()
+                .put("@timestamp", "2016-06-15T13:26:52.485Z")
+                .put("host", "ip-10-0-0-1.eu-west-1.compute.internal")
+                .put("level", "INFO")
+                .put("status", 200)
+                .put("bytes", 5857L)
+                .put("duration", 0.123);
+        int i = 0;
+        while (event.raw().size() < size) {
+            event.put("field_" + i, "Got 12 records (5857 bytes) from shardId-00000000000" + (i++ % 10));
+        }
+        return event.raw();
+    }
+
+    /**
+     * Lines of a log file in src/main/resources/corpus, available are
+     * syslog, syslog-rfc5424, haproxy, aws-flow, aws-elb, aws-alb and apache
+     */
+    static List<String> lines(String name) {
+        InputStream in = Corpus.class.getClassLoader().getResourceAsStream("corpus/" + name + ".log");
+        if (in == null) {
+            throw new IllegalStateException("No corpus named " + name);
+        }
+        try (BufferedSource source = Okio.buffer(Okio.source(in))) {
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The date stage, fallback is a value that only matches the second of two patterns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateBenchmark {
+
+    @Param({"pattern", "fallback", "iso8601", "unix_ms"})
+    public String format;
+
+    private Func1<JsonEvent, Observable<JsonEvent>> date;
+    private String value;
+    private JsonEvent event;
+
+    @Setup
+    public void setup() {
+        switch (format) {
+            case "pattern":
+                date = Core.date("time", "dd/MMM/yyyy:HH:mm:ss Z");
+                value = "15/Jun/2016:13:26:52 +0200";
+                break;
+            case "fallback":
+                date = Core.date("time", "yyyy-MM-dd'T'HH:mm:ss.SSSZ", "dd/MMM/yyyy:HH:mm:ss Z");
+                value = "15/Jun/2016:13:26:52 +0200";
+                break;
+            case "iso8601":
+                date = Core.date("time", "ISO8601");
+                value = "2016-06-15T13:26:52.485Z";
+                break;
+            default:
+                date = Core.date("time", "UNIX_MS");
+                value = "1466001612485";
+        }
+        event = Codecs.TEXT_TO_JSON.from("Hello");
+    }
+
+    @Benchmark
+    public JsonEvent date() {
+        return date.call(event.put("time", value)).toBlocking().single();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.MapWrap;
+import lumbermill.internal.transformers.GrokFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dissect compared to the equivalent bundled grok pattern on the same corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DissectBenchmark {
+
+    @Param({"apache", "aws-flow"})
+    public String corpus;
+
+    @Param({"dissect", "grok"})
+    public String parser;
+
+    private List<String> lines;
+    private Func1<JsonEvent, Observable<JsonEvent>> parse;
+    private int next;
+
+    @Setup
+    public void setup() {
+        lines = Corpus.lines(corpus);
+        boolean apache = corpus.equals("apache");
+        if (parser.equals("dissect")) {
+            parse = Core.dissect("message", apache
+                    ? "%{clientip} %{ident} %{auth} [%{timestamp}] \"%{verb} %{request} HTTP/%{httpversion}\" %{response} %{bytes}"
+                    : "%{version} %{account_id} %{interface_id} %{srcaddr} %{dstaddr} %{srcport} %{dstport} %{protocol} " +
+                      "%{packets:long} %{bytes:long} %{start:int} %{end:int} %{action} %{log_status}");
+        } else {
+            parse = Core.grok.parse(MapWrap.of("field", "message",
+                    "pattern", apache ? "%{COMMONAPACHELOG}" : "%{AWS_FLOW_LOG}").toMap());
+        }
+        for (String line : lines) {
+            JsonEvent event = parse.call(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single();
+            if (event.hasTag(GrokFactory.ERROR_TAG) || event.hasTag("_dissectfailure")) {
+                throw new IllegalStateException("Corpus line does not match: " + line);
+            }
+        }
+    }
+
+    @Benchmark
+    public JsonEvent parse() {
+        next = next + 1 == lines.size() ? 0 : next + 1;
+        return parse.call(Codecs.TEXT_TO_JSON.from(lines.get(next))).toBlocking().single();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.elasticsearch.ElasticSearchOkHttpClientImpl;
+import lumbermill.internal.transformers.Grok;
+import lumbermill.internal.transformers.GrokFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Serialization of a batch of grokked haproxy events into an Elasticsearch bulk request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElasticSearchBulkBenchmark {
+
+    @Param({"100", "1000"})
+    public int batchSize;
+
+    private BulkClient client;
+    private List<JsonEvent> batch;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        client = new BulkClient();
+        Grok<JsonEvent> grok = GrokFactory.create("message", "%{HAPROXYHTTP}");
+        batch = Corpus.lines("haproxy").stream()
+                .limit(batchSize)
+                .map(line -> grok.parse(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single())
+                .map(event -> event.put("@timestamp", "2016-06-15T13:26:52.485Z").put("type", "haproxy"))
+                .collect(toList());
+        while (batch.size() < batchSize) {
+            batch.addAll(batch.subList(0, Math.min(batch.size(), batchSize - batch.size())));
+        }
+    }
+
+    @Benchmark
+    public byte[] toBulkApiRequest() {
+        return client.bulkRequest(batch);
+    }
+
+    /**
+     * Exposes the protected serialization, no requests are sent
+     */
+    private static final class BulkClient extends ElasticSearchOkHttpClientImpl {
+
+        BulkClient() {
+            super("http://localhost:9200", "lumbermill-{type}-", "{type}", true);
+        }
+
+        byte[] bulkRequest(List<JsonEvent> batch) {
+            return toBulkApiRequest(batch).readByteArray();
+        }
+    }
+}
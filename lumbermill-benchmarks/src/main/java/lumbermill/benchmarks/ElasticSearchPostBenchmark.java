@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.elasticsearch.ElasticSearchBulkResponseEvent;
+import lumbermill.internal.elasticsearch.ElasticSearchOkHttpClientImpl;
+import lumbermill.internal.transformers.Grok;
+import lumbermill.internal.transformers.GrokFactory;
+import okio.Okio;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Posting a batch of grokked haproxy events to a local mock of the bulk endpoint, with and without gzip.
+ * The mock counts the bytes received, the secondary results post:wireBytes and post:requests are the
+ * totals of the measurement iterations, bytes on the wire per request is wireBytes / requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElasticSearchPostBenchmark {
+
+    private static final byte[] BULK_RESPONSE = "{\"took\":1,\"errors\":false,\"items\":[]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1000"})
+    public int batchSize;
+
+    /**
+     * none or the gzip level
+     */
+    @Param({"none", "1", "3", "6"})
+    public String compression;
+
+    private HttpServer server;
+    private ElasticSearchOkHttpClientImpl client;
+    private List<JsonEvent> batch;
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /**
+     * Bytes received by the mock and requests sent in an iteration, JMH sums them over the iterations
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class WireBytes {
+        public long wireBytes;
+        public long requests;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+            requests = 0;
+        }
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws IOException {
+        // Otherwise the response headers and body are delayed by Nagle
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/_bulk", exchange -> {
+            try (InputStream body = exchange.getRequestBody()) {
+                bytesReceived.addAndGet(Okio.buffer(Okio.source(body)).readByteString().size());
+            }
+            exchange.sendResponseHeaders(200, BULK_RESPONSE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BULK_RESPONSE);
+            }
+        });
+        server.start();
+
+        client = new ElasticSearchOkHttpClientImpl("http://localhost:" + server.getAddress().getPort(),
+                "lumbermill-{type}-", "{type}", true);
+        if (!compression.equals("none")) {
+            client.withGzip(Integer.parseInt(compression));
+        }
+
+        Grok<JsonEvent> grok = GrokFactory.create("message", "%{HAPROXYHTTP}");
+        batch = Corpus.lines("haproxy").stream()
+                .limit(batchSize)
+                .map(line -> grok.parse(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single())
+                .map(event -> event.put("@timestamp", "2016-06-15T13:26:52.485Z").put("type", "haproxy"))
+                .collect(toList());
+        while (batch.size() < batchSize) {
+            batch.addAll(batch.subList(0, Math.min(batch.size(), batchSize - batch.size())));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public ElasticSearchBulkResponseEvent post(WireBytes wireBytes) {
+        long before = bytesReceived.get();
+        ElasticSearchBulkResponseEvent response = client.post(batch).toBlocking().single();
+        wireBytes.wireBytes += bytesReceived.get() - before;
+        wireBytes.requests++;
+        return response;
+    }
+}
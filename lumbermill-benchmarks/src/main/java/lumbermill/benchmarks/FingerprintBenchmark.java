@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.Fingerprint;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.MapWrap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fingerprint of the raw contents of a 1kb event or of two of its fields.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintBenchmark {
+
+    @Param({"md5", "murmur3_128", "sipHash24", "xxhash64"})
+    public String algorithm;
+
+    @Param({"raw", "fields"})
+    public String source;
+
+    private Func1<JsonEvent, Observable<JsonEvent>> fingerprint;
+    private JsonEvent event;
+
+    @Setup
+    public void setup() {
+        MapWrap config = MapWrap.of("algorithm", algorithm);
+        if (source.equals("fields")) {
+            config.put("fields", Arrays.asList("host", "@timestamp"));
+        }
+        fingerprint = Fingerprint.hash(config.toMap());
+        event = Codecs.JSON_OBJECT.from(Corpus.jsonOfSize(1024));
+    }
+
+    @Benchmark
+    public JsonEvent fingerprint() {
+        return fingerprint.call(event).toBlocking().single();
+    }
+}
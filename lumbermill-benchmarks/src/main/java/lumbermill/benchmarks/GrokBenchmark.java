@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.transformers.Grok;
+import lumbermill.internal.transformers.GrokFactory;
+import lumbermill.internal.transformers.MatchBudget;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grok compile and parse of the log corpora with the bundled patterns. Each parse creates
+ * a new event from the next line in the corpus since grok adds fields to the event.
+ *
+ * The budget param compares java.util.regex with and without a {@link MatchBudget}
+ * (the value is wrapped in a CharSequence that counts the characters read by the regex).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GrokBenchmark {
+
+    @Param({
+            "syslog:%{SYSLOGLINE}",
+            "haproxy:%{HAPROXYHTTP}",
+            "aws-flow:%{AWS_FLOW_LOG}",
+            "aws-elb:%{AWS_ELB_LOG}"})
+    public String corpusAndPattern;
+
+    @Param({"unlimited", "maxSteps", "timeout"})
+    public String budget;
+
+    private String pattern;
+    private List<String> lines;
+    private Grok<JsonEvent> grok;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        String corpus = corpusAndPattern.substring(0, corpusAndPattern.indexOf(':'));
+        pattern = corpusAndPattern.substring(corpus.length() + 1);
+        lines = Corpus.lines(corpus);
+        grok = GrokFactory.create("message", Collections.singletonList(pattern), true, GrokFactory.ERROR_TAG,
+                Collections.emptyMap(), false, true, matchBudget());
+        for (String line : lines) {
+            JsonEvent event = grok.parse(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single();
+            if (event.hasTag(GrokFactory.ERROR_TAG)) {
+                throw new IllegalStateException("Corpus line does not match " + pattern + ": " + line);
+            }
+        }
+    }
+
+    private MatchBudget matchBudget() {
+        switch (budget) {
+            case "maxSteps":
+                return MatchBudget.of(1_000_000, 0, TimeUnit.MILLISECONDS);
+            case "timeout":
+                return MatchBudget.of(0, 50, TimeUnit.MILLISECONDS);
+            default:
+                return MatchBudget.UNLIMITED;
+        }
+    }
+
+    @Benchmark
+    public JsonEvent parse() {
+        next = next + 1 == lines.size() ? 0 : next + 1;
+        return grok.parse(Codecs.TEXT_TO_JSON.from(lines.get(next))).toBlocking().single();
+    }
+
+    @Benchmark
+    public JsonEvent textToJsonOnly() {
+        next = next + 1 == lines.size() ? 0 : next + 1;
+        return Codecs.TEXT_TO_JSON.from(lines.get(next));
+    }
+
+    /**
+     * Compiled patterns are cached so this is the cost of creating another stage with the same pattern
+     */
+    @Benchmark
+    public Grok create() {
+        return GrokFactory.create("message", pattern);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.Event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * The StringTemplate implementation used before templates were compiled into segments,
+ * kept as a baseline for StringTemplateBenchmark.
+ */
+class LegacyStringTemplate {
+
+    private final String pattern;
+    private final List<String[]> fields = new ArrayList<>();
+
+    LegacyStringTemplate(String pattern) {
+        this.pattern = pattern;
+        initializeFields(pattern);
+    }
+
+    Optional<String> format(Event event) {
+        String stringToReturn = pattern;
+        for (String[] field : fields) {
+            String expression = field[0];
+            String name = field[1];
+            String defaultValue = field[2];
+            if (event.has(name)) {
+                stringToReturn = stringToReturn.replace(String.format("{%s}", expression),
+                        String.format("%s", event.valueAsString(name)));
+                continue;
+            }
+            String property = System.getProperty(name);
+            if (property != null) {
+                stringToReturn = stringToReturn.replace(String.format("{%s}", expression),
+                        String.format("%s", property));
+                continue;
+            }
+            String env = System.getenv(name);
+            if (env != null) {
+                stringToReturn = stringToReturn.replace(String.format("{%s}", expression),
+                        String.format("%s", env));
+                continue;
+            }
+            if (defaultValue == null) {
+                return Optional.empty();
+            }
+            stringToReturn = stringToReturn.replace(String.format("{%s}", expression),
+                    String.format("%s", defaultValue));
+        }
+        return Optional.of(stringToReturn);
+    }
+
+    private void initializeFields(String expression) {
+        int first = expression.indexOf("{");
+        int next = expression.indexOf("}");
+        if (first != -1 && next != -1) {
+            String substring = expression.substring(++first, next);
+            String name = substring.trim();
+            String defaultValue = null;
+            if (name.contains("||")) {
+                String[] split = name.split(Pattern.quote("||"));
+                name = split[0].trim();
+                defaultValue = split.length > 1 ? split[1].trim() : "";
+            }
+            fields.add(new String[] {substring, name, defaultValue});
+            initializeFields(expression.substring(++next, expression.length()));
+        }
+    }
+}
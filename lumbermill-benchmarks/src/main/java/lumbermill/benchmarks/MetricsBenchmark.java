@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.StageMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of an instrumented stage compared to the same stage without instrumentation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+public class MetricsBenchmark {
+
+    /**
+     * Shared between threads as in a pipeline
+     */
+    @State(Scope.Benchmark)
+    public static class Stages {
+        private final Func1<JsonEvent, Observable<JsonEvent>> plain = e -> Observable.just(e.put("stage", true));
+        private final Func1<JsonEvent, Observable<JsonEvent>> instrumented = new StageMetrics("benchmark").instrument(plain);
+    }
+
+    private JsonEvent event;
+
+    @Setup
+    public void setup() {
+        event = Codecs.TEXT_TO_JSON.from("Hello");
+    }
+
+    @Benchmark
+    public JsonEvent plain(Stages stages) {
+        return stages.plain.call(event).toBlocking().single();
+    }
+
+    @Benchmark
+    public JsonEvent instrumented(Stages stages) {
+        return stages.instrumented.call(event).toBlocking().single();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.transformers.Grok;
+import lumbermill.internal.transformers.GrokFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grok with a list of patterns on a mixed stream, 50% flow logs, 25% elb, 15% haproxy and
+ * 10% syslog. The patterns are configured in the worst order (least common first) to show the
+ * effect of reordering by hit count and of the literal prefilter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MixedGrokBenchmark {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "%{HAPROXYHTTP}", "%{SYSLOGLINE}", "%{AWS_ELB_LOG}", "%{AWS_FLOW_LOG}");
+
+    @Param({"configured", "prefilter", "reorder", "reorder+prefilter"})
+    public String mode;
+
+    private List<String> lines;
+    private Grok<JsonEvent> grok;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        List<String> flow = Corpus.lines("aws-flow");
+        List<String> elb = Corpus.lines("aws-elb");
+        List<String> haproxy = Corpus.lines("haproxy");
+        List<String> syslog = Corpus.lines("syslog");
+        lines = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            int slot = i % 20;
+            List<String> corpus = slot < 10 ? flow : slot < 15 ? elb : slot < 18 ? haproxy : syslog;
+            lines.add(corpus.get(i % corpus.size()));
+        }
+        grok = GrokFactory.create("message", PATTERNS, true, GrokFactory.ERROR_TAG, Collections.emptyMap(),
+                mode.startsWith("reorder"), mode.endsWith("prefilter"));
+        for (String line : lines) {
+            JsonEvent event = grok.parse(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single();
+            if (event.hasTag(GrokFactory.ERROR_TAG)) {
+                throw new IllegalStateException("Corpus line does not match any pattern: " + line);
+            }
+        }
+    }
+
+    @Benchmark
+    public JsonEvent parse() {
+        next = next + 1 == lines.size() ? 0 : next + 1;
+        return grok.parse(Codecs.TEXT_TO_JSON.from(lines.get(next))).toBlocking().single();
+    }
+}
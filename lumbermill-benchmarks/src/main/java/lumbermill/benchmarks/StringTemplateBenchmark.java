@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.StringTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiled StringTemplate compared to the previous replace based implementation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringTemplateBenchmark {
+
+    @Param({
+            "{type}",
+            "logs-{type}-{/request/verb}",
+            "{service}/{region || eu-west-1}/{@timestamp}/{fingerprint}"})
+    public String pattern;
+
+    private JsonEvent event;
+    private StringTemplate template;
+    private LegacyStringTemplate legacy;
+
+    @Setup
+    public void setup() {
+        event = Codecs.JSON_OBJECT.from("{\"type\":\"access\",\"service\":\"frontend\"," +
+                "\"@timestamp\":\"2016-06-15T13:26:52.485Z\",\"request\":{\"verb\":\"GET\"}}")
+                .putMetaData("fingerprint", "8b1a9953c4611296a827abf8c47804d7");
+        template = StringTemplate.compile(pattern);
+        legacy = new LegacyStringTemplate(pattern);
+    }
+
+    @Benchmark
+    public Optional<String> compiled() {
+        return template.format(event);
+    }
+
+    @Benchmark
+    public Optional<String> legacy() {
+        return legacy.format(event);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.benchmarks;
+
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.MapWrap;
+import lumbermill.internal.transformers.GrokFactory;
+import lumbermill.internal.transformers.Syslog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rx.Observable;
+import rx.functions.Func1;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The syslog stage compared to grok, SYSLOGLINE for RFC 3164 and the logstash SYSLOG5424LINE pattern
+ * for RFC 5424. Grok keeps structured data as a string while the syslog stage splits it into fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyslogBenchmark {
+
+    private static final String SYSLOG5424LINE = "<%{NONNEGINT:priority:int}>%{NONNEGINT:version:int} " +
+            "+(?:%{TIMESTAMP_ISO8601:timestamp}|-) +(?:%{IPORHOST:logsource}|-) +(-|%{SYSLOG5424PRINTASCII:program}) " +
+            "+(-|%{SYSLOG5424PRINTASCII:pid}) +(-|%{SYSLOG5424PRINTASCII:msgid}) " +
+            "+(?:%{SYSLOG5424SD:structured_data}|-|) +%{GREEDYDATA:message}";
+
+    @Param({"syslog", "syslog-rfc5424"})
+    public String corpus;
+
+    @Param({"syslog", "grok"})
+    public String parser;
+
+    private List<String> lines;
+    private Func1<JsonEvent, Observable<JsonEvent>> parse;
+    private int next;
+
+    @Setup
+    public void setup() {
+        lines = Corpus.lines(corpus);
+        if (parser.equals("syslog")) {
+            parse = Core.syslog();
+        } else if (corpus.equals("syslog")) {
+            parse = Core.grok.parse(MapWrap.of("field", "message", "pattern", "%{SYSLOGLINE}").toMap());
+        } else {
+            parse = Core.grok.parse(MapWrap.of("field", "message", "pattern", SYSLOG5424LINE,
+                    "patterns", MapWrap.of(
+                            "SYSLOG5424PRINTASCII", "[!-~]+",
+                            "SYSLOG5424SD", "\\[%{DATA}\\]+").toMap()).toMap());
+        }
+        for (String line : lines) {
+            JsonEvent event = parse.call(Codecs.TEXT_TO_JSON.from(line)).toBlocking().single();
+            if (event.hasTag(GrokFactory.ERROR_TAG) || event.hasTag(Syslog.ERROR_TAG)) {
+                throw new IllegalStateException("Corpus line does not match: " + line);
+            }
+        }
+    }
+
+    @Benchmark
+    public JsonEvent parse() {
+        next = next + 1 == lines.size() ? 0 : next + 1;
+        return parse.call(Codecs.TEXT_TO_JSON.from(lines.get(next))).toBlocking().single();
+    }
+}
@@ -22,6 +22,9 @@ import lumbermill.api.JsonEvent;
 import lumbermill.api.RetryStrategy;
 import lumbermill.internal.*;
 import lumbermill.internal.transformers.ConditionalFunc1;
+import lumbermill.internal.transformers.DateParser;
+import lumbermill.internal.transformers.Dissect;
+import lumbermill.internal.transformers.Syslog;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,12 +32,12 @@ import rx.Observable;
 import rx.Subscriber;
 import rx.functions.Func1;
 
-import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -60,6 +63,7 @@ public class Core {
     public static Base64 base64 = new Base64();
     public static File file = new File();
     public static Fingerprint fingerprint = new Fingerprint();
+    public static Metrics metrics = new Metrics();
 
 
     /**
@@ -70,6 +74,26 @@ public class Core {
     }
 
 
+    /**
+     * Collects events into Lists that are closed when any of maxEvents, maxBytes (sum of raw().size())
+     * or maxLingerMs is reached, use with compose(). Unlike buffer() it respects backpressure, a slow
+     * sink causes the batches to grow up to maxEvents or maxBytes instead of queueing more batches.
+     *
+     * <pre> Groovy usage:
+     *  {@code
+     * .compose (
+     *     batch (maxEvents : 500, maxBytes : 5242880, maxLingerMs : 1000)
+     * )
+     * .flatMap (
+     *     elasticsearch.client (...)
+     * )
+     * }</pre>
+     */
+    public static <T extends Event> Observable.Transformer<T, List<T>> batch(Map conf) {
+        BatchOperator<T> operator = BatchOperator.of(MapWrap.of(conf));
+        return events -> events.lift(operator);
+    }
+
     /**
      * Converts from a List into single Events
      */
@@ -78,17 +102,49 @@ public class Core {
     }
 
     /**
-     * Parallelizes the call to the specified function with the events in the buffered list.
+     * Parallelizes the call to the specified function with the events in the buffered list and
+     * returns the results in the same order, see {@link #parallelize(Map, Func1)}.
      * @param func - Target function
      */
-    public static <T extends Event> Func1<List<T>,Observable<List<T>>> parallelize(Func1<T,T> func) {
-        return ts -> {
+    public static <T extends Event, R extends Event> Func1<List<T>,Observable<List<R>>> parallelize(Func1<T,R> func) {
+        return parallelize(Collections.emptyMap(), func);
+    }
 
-            List<Event> collect = ts.parallelStream()
-                    .map(e1 -> func.call(e1))
-                    .collect(toList());
-            return Observable.just(ts);
-        };
+    /**
+     * Parallelizes the call to the specified function with the events in the buffered list on a
+     * dedicated thread pool and returns the results. If the function returns null the original event is used.
+     *
+     * <pre> Groovy usage:
+     *  {@code
+     * .buffer(100)
+     * .flatMap (
+     *     parallelize (parallelism : 4, ordered : true) { event -> ... }
+     * )
+     * }</pre>
+     *
+     * Optional parallelism, queueSize and ordered are described in {@link ParallelMap}
+     * @param func - Target function
+     */
+    public static <T extends Event, R extends Event> Func1<List<T>,Observable<List<R>>> parallelize(Map conf, Func1<T,R> func) {
+        ParallelMap<T, R> parallelMap = ParallelMap.of(MapWrap.of(conf), func);
+        return ts -> Observable.just(parallelMap.apply(ts));
+    }
+
+    /**
+     * Same as parallelize but for a stream of single events, use with compose(). At most 'parallelism'
+     * events are processed at the same time and upstream is not requested for more until there is room.
+     *
+     * <pre> Groovy usage:
+     *  {@code
+     * .compose (
+     *     parallel (parallelism : 4) { event -> ... }
+     * )
+     * }</pre>
+     * @param func - Target function
+     */
+    public static <T extends Event, R extends Event> Observable.Transformer<T, R> parallel(Map conf, Func1<T,R> func) {
+        ParallelMap<T, R> parallelMap = ParallelMap.of(MapWrap.of(conf), func);
+        return parallelMap::apply;
     }
 
     /**
@@ -319,8 +375,7 @@ public class Core {
 
 
     public static Func1<JsonEvent, Observable<JsonEvent>> timestampNow() {
-        return jsonEvent -> jsonEvent.put("@timestamp", ZonedDateTime.now()
-                .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME)).toObservable();
+        return jsonEvent -> jsonEvent.put("@timestamp", Timestamps.now()).toObservable();
     }
 
     public static Func1<JsonEvent, Observable<JsonEvent>> timestampFromMs(String from) {
@@ -340,59 +395,133 @@ public class Core {
     }
 
     public static Func1<JsonEvent, Observable<JsonEvent>> timestampFromSecs(String from, String to) {
+        IsoTimestampFormat isoFormat = new IsoTimestampFormat();
         return e -> {
             if (! e.has(from)) {
                 return e.toObservable();
             }
-            String format = ZonedDateTime.ofInstant(
-                    Instant.ofEpochMilli(e.asLong(from) * 1000),
-                    ZoneId.systemDefault())
-                    .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-            return e.put (to, format).toObservable();
+            return e.put (to, isoFormat.format(e.asLong(from) * 1000, ZoneId.systemDefault())).toObservable();
         };
     }
 
     public static Func1<JsonEvent, Observable<JsonEvent>> timestampFromMs(String from, String to) {
+        IsoTimestampFormat isoFormat = new IsoTimestampFormat();
         return e -> {
             if (! e.has(from)) {
                 return e.toObservable();
             }
-            String format = ZonedDateTime.ofInstant(
-                    Instant.ofEpochMilli(e.asLong(from)),
-                    ZoneId.systemDefault())
-                    .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-            return e.put (to, format).toObservable();
+            return e.put (to, isoFormat.format(e.asLong(from), ZoneId.systemDefault())).toObservable();
         };
     }
 
     /**
-     * FIXME - make sure this works properly
+     * Parses the field with the first matching format, sets @timestamp to the date in ISO 8601 and removes the field.
+     * Formats are DateTimeFormatter patterns or ISO8601, UNIX and UNIX_MS, see {@link DateParser}.
+     * Dates without offset or zone are in UTC, fails if no format matches.
      *
+     * <pre> Groovy usage:
+     *  {@code
+     * date ('time', 'ISO8601', 'dd/MMM/yyyy:HH:mm:ss Z')
+     * }</pre>
      */
     public static Func1<JsonEvent, Observable<JsonEvent>> date(String field, String... formats) {
+        DateParser parser = DateParser.create(ZoneId.of("UTC"), formats);
+        return jsonEvent -> {
+            ZonedDateTime date = parser.parse(jsonEvent.valueAsString(field));
+            if (date == null) {
+                throw new IllegalStateException("Failed to parse date with any of the supplied formats");
+            }
+            jsonEvent.putMetaData("_@date", date);
+            jsonEvent.remove(field);
+            return jsonEvent.put("@timestamp", parser.format(date)).toObservable();
+        };
+    }
+
+    /**
+     * Splits a field on the literal delimiters of a pattern and adds the keys as fields, a regex free
+     * alternative to grok for delimited and fixed position formats. See {@link Dissect} for key modifiers.
+     * Events that do not match are tagged with _dissectfailure.
+     *
+     * <pre> Groovy usage:
+     *  {@code
+     * dissect ('message', '%{clientip} %{ident} %{auth} [%{timestamp}] "%{verb} %{request} HTTP/%{httpversion}" %{status:int} %{bytes}')
+     * }</pre>
+     */
+    public static Func1<JsonEvent, Observable<JsonEvent>> dissect(String field, String pattern) {
+        return dissect(MapWrap.of("field", field, "pattern", pattern).toMap());
+    }
+
+    /**
+     * Same as dissect(field, pattern) with options
+     * <pre> Groovy usage:
+     *  {@code
+     * dissect (
+     *     field : 'message',
+     *     pattern : '%{ts} %{+ts} %{level->} %{text}',
+     *     appendSeparator : ' ',
+     *     tagOnFailure : true,
+     *     tag : '_dissectfailure'
+     * )
+     * }</pre>
+     */
+    public static Func1<JsonEvent, Observable<JsonEvent>> dissect(Map conf) {
+        MapWrap config = MapWrap.of(conf).assertExists("field", "pattern");
+        String field = config.asString("field");
+        Dissect dissect = Dissect.compile(config.asString("pattern"), config.asString("appendSeparator", " "));
+        boolean tagOnFailure = config.asBoolean("tagOnFailure", true);
+        String tag = config.asString("tag", "_dissectfailure");
+        return jsonEvent -> {
+            if (!jsonEvent.has(field)) {
+                return jsonEvent.toObservable();
+            }
+            if (!dissect.match(jsonEvent.valueAsString(field), jsonEvent.unsafe()) && tagOnFailure) {
+                jsonEvent.addTag(tag);
+            }
+            return jsonEvent.toObservable();
+        };
+    }
 
-        final List<DateTimeFormatter> formatters =
-                asList(formats).stream()
-                        .map(format -> DateTimeFormatter.ofPattern(format).withZone(ZoneId.of("UTC")))
-                        .collect(toList());
+    /**
+     * Parses RFC 3164 and RFC 5424 syslog lines in the message field and adds priority, facility, severity,
+     * timestamp, logsource, program, pid, message and for RFC 5424 also msgid and structured_data,
+     * see {@link Syslog}. @timestamp is set from the syslog timestamp. Events that can not be parsed
+     * are tagged with _syslogparsefailure.
+     *
+     * <pre> Groovy usage:
+     *  {@code
+     * syslog ()
+     * }</pre>
+     */
+    public static Func1<JsonEvent, Observable<JsonEvent>> syslog() {
+        return syslog(Collections.emptyMap());
+    }
 
+    /**
+     * Same as syslog() with options, timezone is used for RFC 3164 timestamps which have no zone
+     * <pre> Groovy usage:
+     *  {@code
+     * syslog (
+     *     field : 'message',
+     *     timezone : 'UTC',
+     *     tagOnFailure : true,
+     *     tag : '_syslogparsefailure'
+     * )
+     * }</pre>
+     */
+    public static Func1<JsonEvent, Observable<JsonEvent>> syslog(Map conf) {
+        MapWrap config = MapWrap.of(conf);
+        String field = config.asString("field", "message");
+        Syslog syslog = Syslog.create(ZoneId.of(config.asString("timezone", "UTC")));
+        boolean tagOnFailure = config.asBoolean("tagOnFailure", true);
+        String tag = config.asString("tag", Syslog.ERROR_TAG);
         return jsonEvent -> {
-            String dateString = jsonEvent.valueAsString(field);
-            for (DateTimeFormatter formatter: formatters) {
-                try {
-                    ZonedDateTime date = ZonedDateTime.parse(dateString, formatter);
-                    String isoDate = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(date);
-                    jsonEvent.putMetaData("_@date", date);
-                    jsonEvent.remove(field);
-                    return jsonEvent.put("@timestamp", isoDate).toObservable();
-                } catch (RuntimeException e) {
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Failed to parse date {}", e.getMessage());
-                    }
-                    continue;
-                }
+            if (!jsonEvent.has(field)) {
+                return jsonEvent.toObservable();
+            }
+            if (!syslog.parse(jsonEvent.valueAsString(field), jsonEvent.unsafe()) && tagOnFailure) {
+                jsonEvent.addTag(tag);
             }
-            throw new IllegalStateException("Failed to parse date with any of the supplied formats");
+            return jsonEvent.toObservable();
         };
     }
 
@@ -500,6 +629,14 @@ public class Core {
         return e -> Codecs.JSON_OBJECT.from(e).toObservable();
     }
 
+    /**
+     * Same as toJsonObject() but the json is parsed first when a field is used. Use this when most
+     * events are forwarded as is, raw() then returns the original bytes as long as the event is not modified.
+     */
+    public static <E extends Event> Func1<E, Observable<JsonEvent>> toLazyJsonObject() {
+        return e -> Codecs.JSON_OBJECT_LAZY.from(e).toObservable();
+    }
+
     /**
      * Extracts a string value from JsonEvent and merges it with the "parent" event or replaces the current event with
      * the child event. Note that keepWhen merging, any field that already exists will be overwritten so make sure to
@@ -594,11 +731,28 @@ public class Core {
     }
 
 
+    /**
+     * Keeps the events where the boolean expression is true. The expression is compiled once
+     * and only falls back to javascript for expressions the compiler does not support.
+     *
+     * <pre>
+     * Groovy usage:
+     *  {@code
+     * .filter (keepWhen("{tags}.contains('_failure') || '{message}'.contains('ERROR')"))
+     * .filter (keepWhen("hasTag('_grokparsefailure')"))
+     * }
+     * </pre>
+     */
     public static Func1<Event, Boolean> keepWhen(String strExpression) {
         final BooleanExpression expression = BooleanExpression.fromString(strExpression);
         return event -> expression.eval(event);
     }
 
+    /**
+     * Skips the events where the boolean expression is true.
+     *
+     * @see #keepWhen(String)
+     */
     public static Func1<Event, Boolean> skipWhen(String strExpression) {
         final BooleanExpression expression = BooleanExpression.fromString(strExpression);
         return event -> !expression.eval(event);
@@ -626,6 +780,9 @@ public class Core {
         };
     }
 
+    /**
+     * Use metrics.instrument(name, stage) to measure a stage
+     */
     @Deprecated
     public static <T extends Event> Func1<T,T> wrap(Func1<T, T> target) {
         return t -> {
@@ -15,20 +15,31 @@
 package lumbermill;
 
 import com.google.common.base.Charsets;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
 import lumbermill.api.Event;
+import lumbermill.internal.HashAlgorithm;
+import lumbermill.internal.MapWrap;
 import lumbermill.internal.StringTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
 
 /**
  * Used to create fingerprints (checksum/hashes) of parts of the contents in Events.
  */
-class Fingerprint {
+public class Fingerprint {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Fingerprint.class);
 
@@ -79,11 +90,107 @@ class Fingerprint {
      * </pre>
      */
     public static <E extends Event> Func1<E, Observable<E>> md5() {
+        return hash(MapWrap.of("algorithm", "md5").toMap());
+    }
 
+    /**
+     * Creates a hash of the raw event with murmur3_128, which is much faster than md5, and stores it
+     * as hex under metadata field name 'fingerprint'.
+     *
+     * <pre>
+     *
+     * Groovy usage:
+     *  {@code
+     * fingerprint.hash()
+     * }
+     * </pre>
+     */
+    public static <E extends Event> Func1<E, Observable<E>> hash() {
+        return hash(Collections.emptyMap());
+    }
+
+    /**
+     * Same as hash() with options. The raw contents or the fields are written directly to the hash function,
+     * field values are hashed in order as UTF-8 with a 0 byte after each value. The long encoding
+     * is the first 8 bytes of the hash, the hex and base64url encodings can be used as document_id.
+     *
+     * <pre>
+     *
+     * Groovy usage with all options, source : '{message}|{@timestamp}' can be used instead of fields:
+     *  {@code
+     * fingerprint.hash (
+     *     algorithm : 'xxhash64',              // md5, murmur3_128, sipHash24 or xxhash64
+     *     fields : ['message', '@timestamp'],  // default is the raw contents
+     *     encoding : 'base64url',              // hex, base64url or long
+     *     field : 'fingerprint'
+     * )
+     * }
+     * </pre>
+     */
+    public static <E extends Event> Func1<E, Observable<E>> hash(Map conf) {
+        MapWrap config = MapWrap.of(conf);
+        HashAlgorithm algorithm = HashAlgorithm.of(config.asString("algorithm", "murmur3_128"));
+        Func1<HashCode, Object> encoding = encoding(config.asString("encoding", "hex"));
+        String field = config.asString("field", "fingerprint");
+        BiConsumer<E, HashAlgorithm.Sink> source = source(config);
         return e -> {
-            String hashOfContents = Hashing.md5().hashString(e.raw().utf8(), Charsets.UTF_8).toString();
+            HashAlgorithm.Sink sink = algorithm.newSink();
+            source.accept(e, sink);
             // as Metadata
-            return e.put("fingerprint", hashOfContents).toObservable();
+            return e.put(field, encoding.call(sink.hash())).toObservable();
         };
     }
+
+    private static <E extends Event> BiConsumer<E, HashAlgorithm.Sink> source(MapWrap config) {
+        Optional<Object> fieldsConfig = config.getIfExists("fields");
+        if (fieldsConfig.isPresent()) {
+            List<String> fields = fieldsConfig
+                    .filter(value -> value instanceof List)
+                    .map(value -> ((List<?>) value).stream().map(String::valueOf).collect(Collectors.toList()))
+                    .orElseGet(() -> Collections.singletonList(String.valueOf(fieldsConfig.get())));
+            return (e, sink) -> {
+                for (String field : fields) {
+                    if (!e.has(field)) {
+                        throw new IllegalStateException("All fields MUST exist when using fingerprint " +
+                                "but " + field + " was missing");
+                    }
+                    byte[] value = e.valueAsString(field).getBytes(StandardCharsets.UTF_8);
+                    sink.write(value, 0, value.length);
+                    sink.write(0);
+                }
+            };
+        }
+        if (config.exists("source")) {
+            String sourcePattern = config.asString("source");
+            StringTemplate template = StringTemplate.compile(sourcePattern);
+            return (e, sink) -> {
+                byte[] value = template.format(e)
+                        .orElseThrow(() -> new IllegalStateException("All fields in pattern MUST exist when using " +
+                                "fingerprint but at least one was missing: " + sourcePattern))
+                        .getBytes(StandardCharsets.UTF_8);
+                sink.write(value, 0, value.length);
+            };
+        }
+        return (e, sink) -> {
+            try {
+                e.raw().write(sink);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        };
+    }
+
+    private static Func1<HashCode, Object> encoding(String encoding) {
+        switch (encoding) {
+            case "hex":
+                return HashCode::toString;
+            case "base64url":
+                return hash -> BaseEncoding.base64Url().omitPadding().encode(hash.asBytes());
+            case "long":
+                return HashCode::asLong;
+            default:
+                throw new IllegalStateException("Unknown fingerprint encoding " + encoding +
+                        ", expected hex, base64url or long");
+        }
+    }
 }
@@ -17,12 +17,17 @@ package lumbermill;
 import lumbermill.api.Event;
 import lumbermill.api.JsonEvent;
 import lumbermill.internal.MapWrap;
+import lumbermill.internal.ParallelMap;
 import lumbermill.internal.transformers.GrokFactory;
+import lumbermill.internal.transformers.MatchBudget;
 import rx.Observable;
 import rx.functions.Func1;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class Grok<E extends Event> {
 
@@ -39,23 +44,81 @@ public class Grok<E extends Event> {
      *     tagOnFailure : false
      * )
      * }</pre>
+     *
+     * Custom patterns can be defined with 'patterns' and are used before the bundled patterns:
+     * <pre>{@code
+     * parse (
+     *     field : 'message',
+     *     pattern : '%{MYAPP_LINE}',
+     *     patterns : [MYAPP_LINE : '%{LOGLEVEL:level} %{GREEDYDATA:text}']
+     * )
+     * }</pre>
+     *
+     * A list of patterns parses mixed logs in a single stage, the first pattern that matches is used.
+     * With reorder : true the patterns are reordered by how often and how fast they match, a pattern is not
+     * moved ahead of an earlier pattern that it overlaps with in recently matched values. Only enable it for
+     * patterns that never match the same value, since the overlap check is based on samples. A pattern is
+     * skipped if the value lacks a literal the pattern requires (prefilter : false disables).
+     * Match, miss and skip counts per pattern are available with {@code stage.patterns().counters()}.
+     * <pre>{@code
+     * def stage = parse (
+     *     field : 'message',
+     *     pattern : ['%{HAPROXYHTTP}', '%{SYSLOGLINE}', '%{JAVASTACKTRACEPART}'],
+     *     reorder : true
+     * )
+     * }</pre>
+     *
+     * A pathological value can make the regex backtrack for a very long time, maxSteps (characters read by
+     * the regex) and timeoutMs limit the work per event. Events exceeding the limit are tagged with
+     * _groktimeout and left unmodified. Both are unlimited by default.
+     * <pre>{@code
+     * parse (
+     *     field : 'message',
+     *     pattern : '%{SYSLOGLINE}',
+     *     maxSteps : 1000000,
+     *     timeoutMs : 50
+     * )
+     * }</pre>
      */
     public Func1<JsonEvent, Observable<JsonEvent>> parse (Map conf) {
         MapWrap mapWrap = MapWrap.of(conf).assertExists("field", "pattern");
-        lumbermill.internal.transformers.Grok grok = GrokFactory.create(mapWrap.asString("field"),
-                mapWrap.asString("pattern"),
-                mapWrap.asBoolean("tagOnFailure", true),
-                mapWrap.asString("tag", GrokFactory.ERROR_TAG));
-
-        return t -> grok.parse(t);
+        return create(mapWrap);
     }
 
+    /**
+     * Same as parse but for a buffer of events, the events are parsed in parallel on a dedicated
+     * thread pool and returned in the same order.
+     *
+     * <pre> Groovy usage:
+     *  {@code
+     * parseBuffer (
+     *     field : 'message',
+     *     pattern : 'AWS_ELB_LOG',
+     *     parallelism : 4
+     * )
+     * }</pre>
+     *
+     * Optional parallelism, queueSize and ordered are described in {@link ParallelMap}
+     */
     public Func1<List<E>, Observable<List<E>>> parseBuffer(Map parameters) {
         MapWrap mapWrap = MapWrap.of(parameters).assertExists("field", "pattern");
-        lumbermill.internal.transformers.Grok grok = GrokFactory.create(mapWrap.asString("field"),
-                mapWrap.asString("pattern"),
+        lumbermill.internal.transformers.Grok grok = create(mapWrap);
+        ParallelMap<E, E> parallelMap = grok.parallelMap(mapWrap);
+        return events -> grok.parse(events, parallelMap);
+    }
+
+    private lumbermill.internal.transformers.Grok create(MapWrap mapWrap) {
+        List<String> patterns = mapWrap.getIfExists("pattern")
+                .filter(pattern -> pattern instanceof List)
+                .map(pattern -> ((List<?>) pattern).stream().map(String::valueOf).collect(Collectors.toList()))
+                .orElseGet(() -> Collections.singletonList(mapWrap.asString("pattern")));
+        return GrokFactory.create(mapWrap.asString("field"),
+                patterns,
                 mapWrap.asBoolean("tagOnFailure", true),
-                mapWrap.asString("tag", GrokFactory.ERROR_TAG));
-        return events -> grok.parse(events);
+                mapWrap.asString("tag", GrokFactory.ERROR_TAG),
+                mapWrap.<Map<String, String>>getIfExists("patterns").orElse(Collections.emptyMap()),
+                mapWrap.asBoolean("reorder", false),
+                mapWrap.asBoolean("prefilter", true),
+                MatchBudget.of(mapWrap.asLong("maxSteps", 0), mapWrap.asLong("timeoutMs", 0), TimeUnit.MILLISECONDS));
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill;
+
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.Json;
+import lumbermill.internal.MapWrap;
+import lumbermill.internal.StageMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Subscription;
+import rx.functions.Func1;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Opt-in per stage instrumentation, accessible from Core.metrics
+ *
+ * <pre> Groovy usage:
+ *  {@code
+ * metrics.report (intervalSeconds : 60, format : 'json')
+ *
+ * ...
+ * .flatMap (
+ *     metrics.instrument ('grok', grok.parse (field : 'message', pattern : '%{AWS_ELB_LOG}'))
+ * )
+ * .buffer (500)
+ * .flatMap (
+ *     metrics.instrument ('elasticsearch', elasticsearch.client (...))
+ * )
+ * }</pre>
+ *
+ * Stages with the same name share metrics.
+ *
+ * Gauges are values read when reporting, for instance the Elasticsearch client registers its current
+ * concurrency limit and queue depth.
+ */
+public class Metrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+
+    private static final int DEFAULT_INTERVAL_SECONDS = 60;
+
+    private final ConcurrentMap<String, StageMetrics> stages = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Records events in/out, errors and processing time of the stage. Works with both single
+     * events and buffers (List) where each event in the list is counted.
+     */
+    public <T, R> Func1<T, Observable<R>> instrument(String name, Func1<T, Observable<R>> stage) {
+        return stage(name).instrument(stage);
+    }
+
+    public StageMetrics stage(String name) {
+        return stages.computeIfAbsent(name, StageMetrics::new);
+    }
+
+    public Optional<StageMetrics.Snapshot> snapshot(String name) {
+        return Optional.ofNullable(stages.get(name)).map(StageMetrics::snapshot);
+    }
+
+    public List<StageMetrics.Snapshot> snapshot() {
+        return new ArrayList<>(stages.values()).stream()
+                .map(StageMetrics::snapshot)
+                .collect(toList());
+    }
+
+    /**
+     * Registers a gauge, a gauge with the same name is replaced.
+     */
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Current value of all gauges, sorted by name
+     */
+    public Map<String, Number> gauges() {
+        Map<String, Number> values = new TreeMap<>();
+        gauges.forEach((name, value) -> values.put(name, value.get()));
+        return values;
+    }
+
+    public void reset() {
+        stages.values().forEach(StageMetrics::reset);
+    }
+
+    /**
+     * Emits one JsonEvent per stage with a snapshot of its metrics every intervalSeconds.
+     * If reset is true the metrics are reset after each snapshot which gives metrics per interval.
+     */
+    public Observable<JsonEvent> snapshots(Map conf) {
+        MapWrap config = MapWrap.of(conf);
+        int interval = config.asInt("intervalSeconds", DEFAULT_INTERVAL_SECONDS);
+        boolean reset = config.asBoolean("reset", false);
+        return Observable.interval(interval, interval, TimeUnit.SECONDS)
+                .concatMap(tick -> {
+                    List<StageMetrics.Snapshot> snapshots = snapshot();
+                    if (reset) {
+                        reset();
+                    }
+                    return Observable.from(snapshots);
+                })
+                .map(StageMetrics.Snapshot::toJsonEvent);
+    }
+
+    /**
+     * Logs the metrics of all stages and the gauges every intervalSeconds as text or json (format : 'json').
+     * Unsubscribe the returned subscription to stop reporting.
+     */
+    public Subscription report(Map conf) {
+        MapWrap config = MapWrap.of(conf);
+        int interval = config.asInt("intervalSeconds", DEFAULT_INTERVAL_SECONDS);
+        boolean json = config.asString("format", "text").equals("json");
+        boolean reset = config.asBoolean("reset", false);
+        return Observable.interval(interval, interval, TimeUnit.SECONDS)
+                .subscribe(tick -> {
+                    for (StageMetrics.Snapshot snapshot : snapshot()) {
+                        LOGGER.info(json ? snapshot.toJsonEvent().toString(false) : snapshot.toString());
+                    }
+                    Map<String, Number> values = gauges();
+                    if (!values.isEmpty()) {
+                        LOGGER.info(json ? Json.OBJECT_MAPPER.valueToTree(values).toString() : "gauges " + values);
+                    }
+                    if (reset) {
+                        reset();
+                    }
+                }, throwable -> LOGGER.error("Metrics reporting failed", throwable));
+    }
+}
@@ -17,6 +17,7 @@ package lumbermill.api;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import lumbermill.internal.Json;
 import okio.ByteString;
 import rx.Observable;
 
@@ -42,7 +43,7 @@ public class AnyJsonEvent extends MetaDataEvent {
     public static AnyJsonEvent fromJsonEvents(List<JsonEvent> events) {
         return new AnyJsonEvent(Codecs.objectMapper.createArrayNode()
                 .addAll(events.stream()
-                .map(jsonEvent -> jsonEvent.jsonNode)
+                .map(jsonEvent -> jsonEvent.node())
                 .collect(toList())));
     }
 
@@ -72,6 +73,6 @@ public class AnyJsonEvent extends MetaDataEvent {
 
     @Override
     public ByteString raw() {
-        return ByteString.encodeUtf8(toString());
+        return Json.toByteString(objectNodeOrArrayNode);
     }
 }
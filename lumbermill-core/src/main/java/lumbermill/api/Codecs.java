@@ -23,15 +23,15 @@ import lumbermill.api.Codec;
 import lumbermill.api.Event;
 import lumbermill.api.AnyJsonEvent;
 import lumbermill.api.JsonEvent;
+import lumbermill.internal.Json;
 import lumbermill.internal.JsonParseException;
+import lumbermill.internal.Timestamps;
 import okio.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.time.format.DateTimeFormatter;
 
-import static java.time.ZonedDateTime.now;
 
 /**
  * Core codecs
@@ -58,6 +58,14 @@ public class Codecs {
      */
     public static Codec<JsonEvent>    JSON_OBJECT  = jsonObject();
 
+    /**
+     * Same as JSON_OBJECT but the json is not parsed until a field is used, events that are
+     * only forwarded keep their original bytes. Invalid json fails when the event is first used,
+     * which can be where a whole batch is processed (the Elasticsearch client validates the bytes
+     * before a bulk request), use JSON_OBJECT to fail on the single event when it is decoded.
+     */
+    public static Codec<JsonEvent>    JSON_OBJECT_LAZY = lazyJsonObject();
+
     /**
      * Reads anything
      */
@@ -103,6 +111,25 @@ public class Codecs {
         };
     }
 
+    private static Codec<JsonEvent> lazyJsonObject() {
+        return new AbstractCodec<JsonEvent>() {
+            @Override
+            public JsonEvent from(ByteString b) {
+                return JsonEvent.lazy(b);
+            }
+
+            @Override
+            public JsonEvent from(Event event) {
+                return from(event.raw()).withMetaData(event);
+            }
+
+            @Override
+            public String toString() {
+                return "LazyJsonObjectCodec";
+            }
+        };
+    }
+
     private static Codec<JsonEvent> textToJson() {
         return new AbstractCodec<JsonEvent>() {
             @Override
@@ -146,7 +173,7 @@ public class Codecs {
     private static AnyJsonEvent jsonArray(ByteString json) {
         try {
 
-            JsonNode node = objectMapper.readTree(json.utf8());
+            JsonNode node = objectMapper.readTree(Json.inputStream(json));
             return new AnyJsonEvent(node);
         } catch (IOException e) {
             LOGGER.warn("Failed to parse json array from: " + json.utf8());
@@ -158,14 +185,18 @@ public class Codecs {
     private static JsonEvent raw(ByteString raw) {
         ObjectNode objectNode = objectMapper.createObjectNode()
                 .put("message", raw.utf8())
-                .put("@timestamp", now().format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+                .put("@timestamp", Timestamps.now());
         return new JsonEvent(objectNode);
     }
 
 
     private static JsonEvent json(ByteString json) {
+        return new JsonEvent(parseObject(json));
+    }
+
+    static ObjectNode parseObject(ByteString json) {
         try {
-            return new JsonEvent((ObjectNode)objectMapper.readTree(json.utf8()));
+            return (ObjectNode)objectMapper.readTree(Json.inputStream(json));
         } catch (Exception e) {
             LOGGER.warn("Failed to parse json from: " + json.utf8());
             throw new JsonParseException(e);
@@ -37,6 +37,7 @@ public interface Event {
 
     /**
      * Same as above, first checks the internal structure (if any) before checking metadata.
+     * Returns null if the field does not exist.
      */
     String valueAsString(String field);
 
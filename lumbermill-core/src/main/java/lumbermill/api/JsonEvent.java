@@ -15,13 +15,16 @@
 package lumbermill.api;
 
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import lumbermill.internal.Json;
 import okio.ByteString;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -30,13 +33,27 @@ import java.util.*;
 /**
  * Represents a Json Object(!)
  *
+ * The serialized form returned by raw() is cached until the json is modified, so an event
+ * that is sent to several sinks is only serialized once.
+ *
+ * A JsonEvent can also be created lazily from bytes with JsonEvent.lazy(), parsing is then deferred
+ * until a field is read or written and raw() returns the original bytes until the event is modified.
+ *
  * @see AnyJsonEvent for handling Json arrays
  */
 public class JsonEvent extends MetaDataEvent {
 
     protected static ObjectMapper objectMapper = new ObjectMapper();
 
-    protected final ObjectNode jsonNode;
+    /**
+     * Null until parsed if the event was created lazily
+     */
+    private ObjectNode jsonNode;
+
+    /**
+     * Serialized json (or the original bytes of a lazy event), cleared when the event is modified.
+     */
+    private ByteString raw;
 
     public JsonEvent() {
         this.jsonNode = objectMapper.createObjectNode();
@@ -44,46 +61,87 @@ public class JsonEvent extends MetaDataEvent {
 
 
     public ObjectNode copyNode() {
-        return jsonNode.deepCopy();
+        return node().deepCopy();
     }
 
     public JsonEvent(ObjectNode jsonNode) {
         this.jsonNode = jsonNode;
     }
 
+    /**
+     * Lazy event, see lazy()
+     */
+    protected JsonEvent(ByteString raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * Creates a JsonEvent that is not parsed until it is used. If the bytes are not a valid json
+     * object, a JsonParseException is thrown when the event is first used.
+     */
+    public static JsonEvent lazy(ByteString json) {
+        return new JsonEvent(json);
+    }
+
+    /**
+     * Returns true if the json has been parsed, false if the event is lazy and no field has been used yet.
+     */
+    public boolean isParsed() {
+        return jsonNode != null;
+    }
+
+    /**
+     * The json structure for reading, parses it if required.
+     */
+    protected ObjectNode node() {
+        if (jsonNode == null) {
+            jsonNode = Codecs.parseObject(raw);
+        }
+        return jsonNode;
+    }
+
+    /**
+     * The json structure for modification, this invalidates the serialized form.
+     */
+    protected ObjectNode mutableNode() {
+        ObjectNode node = node();
+        raw = null;
+        return node;
+    }
+
 
     public JsonEvent put(String fieldName, String value) {
-        jsonNode.put(fieldName, value);
+        mutableNode().put(fieldName, value);
         return this;
     }
 
     public JsonEvent put(String fieldName, int value) {
-        jsonNode.put(fieldName, value);
+        mutableNode().put(fieldName, value);
         return this;
     }
 
     public JsonEvent put(String fieldName, long value) {
-        jsonNode.put(fieldName, value);
+        mutableNode().put(fieldName, value);
         return this;
     }
 
     public JsonEvent put(String fieldName, double value) {
-        jsonNode.put(fieldName, value);
+        mutableNode().put(fieldName, value);
         return this;
     }
 
     public JsonEvent put(String fieldName, float value) {
-        jsonNode.put(fieldName, value);
+        mutableNode().put(fieldName, value);
         return this;
     }
 
     public JsonEvent put(String fieldName, boolean value) {
-        jsonNode.put(fieldName, value);
+        mutableNode().put(fieldName, value);
         return this;
     }
 
     public JsonEvent put(String fieldName, BigDecimal value) {
-        jsonNode.put(fieldName, value);
+        mutableNode().put(fieldName, value);
         return this;
     }
 
@@ -156,24 +214,34 @@ public class JsonEvent extends MetaDataEvent {
     public String toString(boolean pretty)
     {
         try {
-            return pretty ? objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonNode)
-                    : objectMapper.writeValueAsString(jsonNode);
+            return pretty ? objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(node())
+                    : objectMapper.writeValueAsString(node());
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Writes the json to the generator, unlike unsafe() this does not regard the event as modified.
+     */
+    public void writeTo(JsonGenerator generator) throws IOException {
+        objectMapper.writeTree(generator, node());
+    }
+
     public JsonEvent merge(JsonEvent event) {
-        Iterator<String> stringIterator = event.jsonNode.fieldNames();
+        ObjectNode jsonNode = mutableNode();
+        ObjectNode other = event.node();
+        Iterator<String> stringIterator = other.fieldNames();
         while(stringIterator.hasNext()) {
             String field = stringIterator.next();
-            jsonNode.set(field, event.jsonNode.get(field));
+            jsonNode.set(field, other.get(field));
         }
         return this;
     }
 
     public void eachField(FieldProcessor processor) {
 
+        ObjectNode jsonNode = node();
         ArrayList<String> list = new ArrayList<String >();
         Iterator<String> stringIterator = jsonNode.fieldNames();
         while(stringIterator.hasNext()) {
@@ -185,26 +253,33 @@ public class JsonEvent extends MetaDataEvent {
         }
     }
 
+    /**
+     * Returns the serialized json, this is cached until the event is modified. Lazy events that has not
+     * been modified returns the original bytes.
+     */
     @Override
     public ByteString raw() {
-        return ByteString.encodeUtf8(toString(false));
+        if (raw == null) {
+            raw = Json.toByteString(node());
+        }
+        return raw;
     }
 
     public JsonEvent remove(String... fields) {
 
         for(String field : fields) {
-            if (jsonNode.has(field)) {
-                jsonNode.remove(field);
+            if (node().has(field)) {
+                mutableNode().remove(field);
             }
         }
         return this;
     }
 
     public boolean contains(String field, String value) {
-        if (!jsonNode.has(field)) {
+        if (!node().has(field)) {
             return false;
         }
-        JsonNode jsonNode = this.jsonNode.get(field);
+        JsonNode jsonNode = node().get(field);
         if (jsonNode instanceof ArrayNode) {
             for (JsonNode  node : jsonNode) {
                 if (node.asText().equals(value)) {
@@ -216,9 +291,10 @@ public class JsonEvent extends MetaDataEvent {
     }
 
     public JsonEvent add(String field, String... values) {
+        ObjectNode jsonNode = mutableNode();
         for (String value : values) {
             if (jsonNode.has(field)) {
-                ArrayNode arrayNode = (ArrayNode) this.jsonNode.get(field);
+                ArrayNode arrayNode = (ArrayNode) jsonNode.get(field);
                 arrayNode.add(value);
             } else {
                 jsonNode.set(field, jsonNode.arrayNode().add(value));
@@ -228,7 +304,8 @@ public class JsonEvent extends MetaDataEvent {
     }
 
     public JsonEvent rename(String from, String to) {
-        if (jsonNode.has (from)) {
+        if (node().has (from)) {
+            ObjectNode jsonNode = mutableNode();
             jsonNode.set (to, jsonNode.get (from));
             jsonNode.remove (from);
         }
@@ -237,10 +314,10 @@ public class JsonEvent extends MetaDataEvent {
 
     public List<String> getTags() {
 
-        if (!jsonNode.has ("tags")) {
+        if (!node().has ("tags")) {
            return Collections.EMPTY_LIST;
         }
-        ArrayNode node = (ArrayNode)jsonNode.get ("tags");
+        ArrayNode node = (ArrayNode)node().get ("tags");
         List<String> tags = new ArrayList<> ();
         for (JsonNode jNode : node) {
             tags.add (jNode.asText ());
@@ -250,7 +327,7 @@ public class JsonEvent extends MetaDataEvent {
 
     @Override
     public int hashCode() {
-        return jsonNode.hashCode();
+        return node().hashCode();
     }
 
     @Override
@@ -259,13 +336,13 @@ public class JsonEvent extends MetaDataEvent {
         if (o == null || getClass() != o.getClass()) return false;
 
         JsonEvent jsonEvent = (JsonEvent) o;
-        return jsonNode != null ? jsonNode.equals(jsonEvent.jsonNode) : jsonEvent.jsonNode == null;
+        return node().equals(jsonEvent.node());
     }
 
     @Override
     public void addTags(List<String> tags) {
-        if (!jsonNode.has("tags")) {
-            jsonNode.putArray("tags");
+        if (!node().has("tags")) {
+            mutableNode().putArray("tags");
         }
         add("tags", tags.toArray(new String[0]));
     }
@@ -295,6 +372,7 @@ public class JsonEvent extends MetaDataEvent {
     }
 
     private void putObject(String key, Object o) {
+        ObjectNode jsonNode = mutableNode();
         if (o instanceof String) {
             jsonNode.put(key, (String) o);
         } else if (o instanceof Integer) {
@@ -317,23 +395,31 @@ public class JsonEvent extends MetaDataEvent {
     }
 
     private Optional<JsonNode> getNode(String nameOrJsonPointer)  {
-        JsonNode node =  nameOrJsonPointer.startsWith("/") ? jsonNode.at(nameOrJsonPointer) : jsonNode.get(nameOrJsonPointer);
+        JsonNode node =  nameOrJsonPointer.startsWith("/") ? node().at(nameOrJsonPointer) : node().get(nameOrJsonPointer);
         return (node != null && !node.isMissingNode()) ? Optional.of(node) : Optional.empty();
     }
 
+    /**
+     * The child shares its json with this event, see unsafe() regarding modifications.
+     */
     public AnyJsonEvent child(String field) {
-        return new AnyJsonEvent(this.jsonNode.get(field));
+        return new AnyJsonEvent(mutableNode().get(field));
     }
 
+    /**
+     * The child shares its json with this event, see unsafe() regarding modifications.
+     */
     public JsonEvent objectChild(String field) {
-        return new JsonEvent((ObjectNode) this.jsonNode.get(field));
+        return new JsonEvent((ObjectNode) mutableNode().get(field));
     }
 
     /**
      * Lets expose this until we have a decent API to work with JSON.
+     * Since the returned node can be modified, the event is regarded as modified. Modifications done
+     * to the returned node after raw() has been called are not seen by raw() until unsafe() is called again.
      */
     public ObjectNode unsafe() {
-        return this.jsonNode;
+        return mutableNode();
     }
 
     public interface FieldProcessor {
@@ -14,70 +14,250 @@
  */
 package lumbermill.api;
 
-import lumbermill.internal.MapWrap;
+import lumbermill.internal.StringTemplate;
 import rx.Observable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Holds metadata and tags that are not part of the contents of the event.
+ *
+ * Metadata is stored in a small array that is allocated first when needed and that is shared
+ * with events created withMetaData() until one of them is modified. Tags are interned and stored
+ * as bits, tags are always reported under the metadata field 'tags'.
+ */
 public abstract class MetaDataEvent implements Event {
 
-    protected final MapWrap map = MapWrap.of(new HashMap() {
-        {
-            put("tags", new ArrayList<>());
-        }
-    });
+    private static final String TAGS = "tags";
+
+    private static final Object[] NO_METADATA = new Object[0];
+
+    /**
+     * Alternating keys and values
+     */
+    private Object[] metadata = NO_METADATA;
+
+    private int metadataSize;
+
+    /**
+     * True if the metadata array is (or might be) used by another event and must be copied before it is modified.
+     */
+    private boolean sharedMetadata;
+
+    /**
+     * One bit per interned tag id
+     */
+    private long tagBits;
+
+    /**
+     * Tags that could not be interned, null until needed
+     */
+    private List<String> otherTags;
 
     @Override
     public boolean hasTag(String tag) {
-        List<String> tags = map.getObject("tags");
-        return tags.contains(tag);
+        int id = TagIds.lookup(tag);
+        if (id >= 0) {
+            return (tagBits & (1L << id)) != 0;
+        }
+        return otherTags != null && otherTags.contains(tag);
     }
 
     @Override
     public <T extends Event> T put(String key, Object value) {
-        map.toMap().put(key, value);
+        if (TAGS.equals(key) && value instanceof Collection) {
+            tagBits = 0;
+            otherTags = null;
+            for (Object tag : (Collection) value) {
+                addTag(String.valueOf(tag));
+            }
+            return (T)this;
+        }
+        int index = indexOf(key);
+        ensureWritable(index == -1 ? metadataSize + 1 : metadataSize);
+        if (index == -1) {
+            index = metadataSize++ * 2;
+            metadata[index] = key;
+        }
+        metadata[index + 1] = value;
         return (T)this;
     }
 
     @Override
     public boolean has(String field) {
-        return map.exists(field);
+        return TAGS.equals(field) || indexOf(field) != -1;
     }
 
     @Override
     public String valueAsString(String field) {
-        return has(field) ? map.asString(field) : null;
+        if (TAGS.equals(field)) {
+            return String.valueOf(tags());
+        }
+        int index = indexOf(field);
+        if (index == -1) {
+            return null;
+        }
+        String value = String.valueOf(metadata[index + 1]);
+        if (!StringTemplate.hasPattern(value)) {
+            return value;
+        }
+        // Same as configuration values, system properties and environment variables can be used
+        Optional<String> formatted = StringTemplate.compile(value).format();
+        return formatted.isPresent() ? formatted.get() : value;
     }
 
     @Override
     public <T> T get(String key) {
-        return (T)map.getObject(key);
+        if (TAGS.equals(key)) {
+            return (T)tags();
+        }
+        int index = indexOf(key);
+        return index == -1 ? null : (T)metadata[index + 1];
     }
 
     public Event addTag(String tag) {
-        List<String> tags = map.getObject("tags");
-        tags.add(tag);
+        int id = TagIds.idOf(tag);
+        if (id >= 0) {
+            tagBits |= 1L << id;
+        } else {
+            if (otherTags == null) {
+                otherTags = new ArrayList<>(2);
+            }
+            if (!otherTags.contains(tag)) {
+                otherTags.add(tag);
+            }
+        }
         return this;
     }
 
     public void addTags(List<String> tags) {
-        List<String> tagss = map.getObject("tags");
-        tagss.addAll(tags);
+        for (String tag : tags) {
+            addTag(tag);
+        }
     }
 
     public <T extends Event> T withMetaData(Event mde) {
         if (mde instanceof MetaDataEvent) {
             MetaDataEvent e = (MetaDataEvent)mde;
-            this.map.putAll(e.map);
+            tagBits |= e.tagBits;
+            if (e.otherTags != null) {
+                for (String tag : e.otherTags) {
+                    addTag(tag);
+                }
+            }
+            if (metadataSize == 0) {
+                metadata = e.metadata;
+                metadataSize = e.metadataSize;
+                sharedMetadata = true;
+                e.sharedMetadata = true;
+            } else {
+                for (int i = 0; i < e.metadataSize * 2; i += 2) {
+                    put((String) e.metadata[i], e.metadata[i + 1]);
+                }
+            }
         }
         return (T) this;
     }
 
+    /**
+     * A copy of all metadata, including tags
+     */
+    protected Map<String, Object> metaData() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put(TAGS, tags());
+        for (int i = 0; i < metadataSize * 2; i += 2) {
+            map.put((String) metadata[i], metadata[i + 1]);
+        }
+        return map;
+    }
+
     @Override
     public <T extends Event> Observable<T> toObservable() {
         return Observable.just((T)this);
     }
-}
 
+    private List<String> tags() {
+        List<String> tags = new ArrayList<>();
+        long bits = tagBits;
+        while (bits != 0) {
+            int id = Long.numberOfTrailingZeros(bits);
+            tags.add(TagIds.nameOf(id));
+            bits &= bits - 1;
+        }
+        if (otherTags != null) {
+            tags.addAll(otherTags);
+        }
+        return tags;
+    }
+
+    private int indexOf(String key) {
+        Object[] metadata = this.metadata;
+        for (int i = 0; i < metadataSize * 2; i += 2) {
+            if (key.equals(metadata[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Makes sure that the metadata can be modified and has room for the number of entries
+     */
+    private void ensureWritable(int entries) {
+        if (!sharedMetadata && metadata.length >= entries * 2) {
+            return;
+        }
+        Object[] copy = new Object[Math.max(entries, metadataSize + 2) * 2];
+        System.arraycopy(metadata, 0, copy, 0, metadataSize * 2);
+        metadata = copy;
+        sharedMetadata = false;
+    }
+
+    /**
+     * Tags are interned into ids that are used as bit positions. Only the first 64 distinct tags
+     * are interned, any other tag is stored as is.
+     */
+    private static final class TagIds {
+
+        private static final int MAX_IDS = 64;
+
+        private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+
+        private static final String[] NAMES = new String[MAX_IDS];
+
+        static int lookup(String tag) {
+            Integer id = IDS.get(tag);
+            return id == null ? -1 : id;
+        }
+
+        static int idOf(String tag) {
+            Integer id = IDS.get(tag);
+            return id != null ? id : register(tag);
+        }
+
+        static String nameOf(int id) {
+            return NAMES[id];
+        }
+
+        private static synchronized int register(String tag) {
+            Integer id = IDS.get(tag);
+            if (id != null) {
+                return id;
+            }
+            if (IDS.size() >= MAX_IDS) {
+                return -1;
+            }
+            int newId = IDS.size();
+            // Name must be set before the id is published
+            NAMES[newId] = tag;
+            IDS.put(tag, newId);
+            return newId;
+        }
+    }
+}
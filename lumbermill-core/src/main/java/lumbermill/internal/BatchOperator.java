@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import lumbermill.api.Event;
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.schedulers.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects events into batches (Lists) that are closed on whichever comes first of
+ *  maxEvents   - number of events in the batch, defaults to 500
+ *  maxBytes    - sum of raw().size() of the events in the batch, defaults to 5 MB
+ *  maxLingerMs - time since the first event was added to the batch, defaults to 1000
+ *
+ * Batches are only emitted when requested by downstream. If downstream is slow, the current
+ * batch keeps growing after maxLingerMs has passed until it is full, and upstream is only asked
+ * for more events when batches have been emitted, so at most maxEvents events are held in memory.
+ */
+public class BatchOperator<T extends Event> implements Observable.Operator<List<T>, T> {
+
+    private static final int DEFAULT_MAX_EVENTS = 500;
+    private static final long DEFAULT_MAX_BYTES = 5 * 1024 * 1024;
+    private static final long DEFAULT_MAX_LINGER_MS = 1000;
+
+    private final int maxEvents;
+    private final long maxBytes;
+    private final long maxLingerMs;
+    private final Scheduler scheduler;
+
+    public static <T extends Event> BatchOperator<T> of(MapWrap config) {
+        return new BatchOperator<>(
+                config.asInt("maxEvents", DEFAULT_MAX_EVENTS),
+                config.exists("maxBytes") ? config.asLong("maxBytes") : DEFAULT_MAX_BYTES,
+                config.exists("maxLingerMs") ? config.asLong("maxLingerMs") : DEFAULT_MAX_LINGER_MS,
+                Schedulers.computation());
+    }
+
+    BatchOperator(int maxEvents, long maxBytes, long maxLingerMs, Scheduler scheduler) {
+        if (maxEvents < 1 || maxBytes < 1 || maxLingerMs < 1) {
+            throw new IllegalStateException("maxEvents, maxBytes and maxLingerMs must be at least 1");
+        }
+        this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes;
+        this.maxLingerMs = maxLingerMs;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Subscriber<? super T> call(Subscriber<? super List<T>> child) {
+        BatchSubscriber parent = new BatchSubscriber(child, scheduler.createWorker());
+        child.add(parent);
+        child.setProducer(parent::requestBatches);
+        return parent;
+    }
+
+    private final class BatchSubscriber extends Subscriber<T> {
+
+        private final Subscriber<? super List<T>> child;
+        private final Scheduler.Worker worker;
+
+        // All fields below are guarded by this
+        private final Deque<List<T>> ready = new ArrayDeque<>();
+        private List<T> current = new ArrayList<>();
+        private long currentBytes;
+        private long generation;
+        private boolean lingerExpired;
+        private long requested;
+        private boolean done;
+        private Throwable error;
+        private boolean emitting;
+        private boolean missed;
+
+        BatchSubscriber(Subscriber<? super List<T>> child, Scheduler.Worker worker) {
+            this.child = child;
+            this.worker = worker;
+            add(worker);
+        }
+
+        @Override
+        public void onStart() {
+            request(maxEvents);
+        }
+
+        @Override
+        public void onNext(T event) {
+            long size = event.raw().size();
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (current.isEmpty()) {
+                    scheduleLinger(generation);
+                }
+                current.add(event);
+                currentBytes += size;
+                if (current.size() >= maxEvents || currentBytes >= maxBytes) {
+                    closeCurrent();
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                error = e;
+                done = true;
+                ready.clear();
+                current = new ArrayList<>();
+            }
+            drain();
+        }
+
+        @Override
+        public void onCompleted() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (!current.isEmpty()) {
+                    closeCurrent();
+                }
+                done = true;
+            }
+            drain();
+        }
+
+        void requestBatches(long n) {
+            if (n < 0) {
+                throw new IllegalArgumentException("n >= 0 required but it was " + n);
+            }
+            if (n == 0) {
+                return;
+            }
+            synchronized (this) {
+                requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+            }
+            drain();
+        }
+
+        private void scheduleLinger(long forGeneration) {
+            worker.schedule(() -> {
+                synchronized (this) {
+                    if (generation != forGeneration || current.isEmpty()) {
+                        return;
+                    }
+                    lingerExpired = true;
+                }
+                drain();
+            }, maxLingerMs, TimeUnit.MILLISECONDS);
+        }
+
+        // Must hold lock
+        private void closeCurrent() {
+            ready.add(current);
+            current = new ArrayList<>();
+            currentBytes = 0;
+            lingerExpired = false;
+            generation++;
+        }
+
+        private void drain() {
+            synchronized (this) {
+                if (emitting) {
+                    missed = true;
+                    return;
+                }
+                emitting = true;
+            }
+            for (;;) {
+                List<T> batch = null;
+                boolean terminate = false;
+                Throwable terminalError = null;
+                synchronized (this) {
+                    if (lingerExpired && requested > ready.size()) {
+                        closeCurrent();
+                    }
+                    if (error != null) {
+                        terminate = true;
+                        terminalError = error;
+                    } else if (requested > 0 && !ready.isEmpty()) {
+                        batch = ready.poll();
+                        if (requested != Long.MAX_VALUE) {
+                            requested--;
+                        }
+                    } else if (done && ready.isEmpty()) {
+                        terminate = true;
+                    }
+                    if (batch == null && !terminate) {
+                        if (!missed) {
+                            emitting = false;
+                            return;
+                        }
+                        missed = false;
+                        continue;
+                    }
+                }
+                if (child.isUnsubscribed()) {
+                    return;
+                }
+                if (terminate) {
+                    worker.unsubscribe();
+                    if (terminalError != null) {
+                        child.onError(terminalError);
+                    } else {
+                        child.onCompleted();
+                    }
+                    return;
+                }
+                child.onNext(batch);
+                request(batch.size());
+            }
+        }
+    }
+}
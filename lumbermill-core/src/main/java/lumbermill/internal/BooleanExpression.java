@@ -1,6 +1,8 @@
 package lumbermill.internal;
 
 import lumbermill.api.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
@@ -8,8 +10,17 @@ import javax.script.ScriptException;
 import java.util.Optional;
 
 
+/**
+ * Boolean expressions are compiled once into a tree that is evaluated directly against
+ * each event. Expressions that use javascript features not supported by the compiler
+ * falls back to being evaluated by the javascript engine.
+ *
+ * @see ExpressionCompiler for the supported syntax
+ */
 public abstract class BooleanExpression {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(BooleanExpression.class);
+
     protected final StringTemplate expressionPattern;
 
     public BooleanExpression(String pattern) {
@@ -17,6 +28,20 @@ public abstract class BooleanExpression {
     }
 
     public static BooleanExpression fromString(String expression) {
+        try {
+            return new BooleanCompiledExpression(expression);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("Expression is not supported by the expression compiler and will be evaluated " +
+                    "as javascript, this is a lot slower: {}", e.getMessage());
+            return fromJavaScript(expression);
+        }
+    }
+
+    /**
+     * Forces the expression to be evaluated by the javascript engine, every event is then formatted
+     * into a javascript string which is evaluated by a single shared engine.
+     */
+    public static BooleanExpression fromJavaScript(String expression) {
         return new BooleanJavaScriptExpression(expression);
     }
 
@@ -25,6 +50,37 @@ public abstract class BooleanExpression {
     public abstract boolean eval(Event event);
 
 
+    static class BooleanCompiledExpression extends BooleanExpression {
+
+        private final ExpressionCompiler.Compiled compiled;
+
+        BooleanCompiledExpression(String expression) {
+            super(expression);
+            this.compiled = ExpressionCompiler.compile(expression);
+        }
+
+        @Override
+        public BooleanExpression init(String script) {
+            throw new IllegalStateException("Scripts can only be used with javascript expressions, " +
+                    "use BooleanExpression.fromJavaScript()");
+        }
+
+        @Override
+        public boolean eval(Event event) {
+            ExpressionCompiler.Slot[] slots = compiled.slots;
+            Object[] values = new Object[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                Object value = slots[i].resolve(event);
+                // Same as javascript expressions, any missing field means false
+                if (value == ExpressionCompiler.Slot.MISSING) {
+                    return false;
+                }
+                values[i] = value;
+            }
+            return ExpressionCompiler.truthy(compiled.root.eval(event, values));
+        }
+    }
+
     static class BooleanJavaScriptExpression extends BooleanExpression {
 
         private static final ScriptEngine se =
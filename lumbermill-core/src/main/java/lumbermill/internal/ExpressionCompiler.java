@@ -0,0 +1,599 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import lumbermill.api.Event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Compiles the subset of JavaScript that is used in boolean expressions into a tree
+ * of nodes that is evaluated directly against the event.
+ *
+ * Supported are string, number, boolean and null literals, field references ({field} or '{field}'),
+ * the operators ! - == != === !== &lt; &gt; &lt;= &gt;= &amp;&amp; || and parentheses, the methods
+ * contains, indexOf, startsWith, endsWith, toLowerCase, toUpperCase, trim and the property length.
+ * The functions hasTag('tag') and exists('field') are evaluated against the event itself.
+ *
+ * Anything else is rejected with an IllegalArgumentException when compiling.
+ */
+final class ExpressionCompiler {
+
+    /**
+     * A single node in the compiled expression, values are one of String, Double, Boolean, List or null.
+     */
+    interface Node {
+        Object eval(Event event, Object[] values);
+    }
+
+    /**
+     * A value that is resolved from the event once per evaluation, before the tree is evaluated.
+     */
+    static final class Slot {
+
+        static final Object MISSING = new Object();
+
+        private final StringTemplate template;
+
+        /**
+         * Quoted fields are always strings, unquoted fields are interpreted as literals.
+         */
+        private final boolean quoted;
+
+        private Slot(StringTemplate template, boolean quoted) {
+            this.template = template;
+            this.quoted = quoted;
+        }
+
+        /**
+         * Returns MISSING if a field is missing
+         */
+        Object resolve(Event event) {
+            Optional<String> value = template.format(event);
+            if (!value.isPresent()) {
+                return MISSING;
+            }
+            return quoted ? value.get() : literalOf(value.get());
+        }
+
+        @Override
+        public String toString() {
+            return template.original();
+        }
+    }
+
+    static final class Compiled {
+        final Node root;
+        final Slot[] slots;
+
+        private Compiled(Node root, List<Slot> slots) {
+            this.root = root;
+            this.slots = slots.toArray(new Slot[slots.size()]);
+        }
+    }
+
+    private final String expression;
+    private final List<Slot> slots = new ArrayList<>();
+    private int pos;
+
+    private ExpressionCompiler(String expression) {
+        this.expression = expression;
+    }
+
+    static Compiled compile(String expression) {
+        ExpressionCompiler compiler = new ExpressionCompiler(expression);
+        Node root = compiler.or();
+        compiler.skipWhitespace();
+        if (compiler.pos != expression.length()) {
+            throw compiler.error("Unexpected input");
+        }
+        return new Compiled(root, compiler.slots);
+    }
+
+    static boolean truthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Double) {
+            double d = (Double) value;
+            return d != 0 && !Double.isNaN(d);
+        }
+        if (value instanceof String) {
+            return !((String) value).isEmpty();
+        }
+        return true;
+    }
+
+    private Node or() {
+        Node left = and();
+        while (consume("||")) {
+            Node l = left;
+            Node r = and();
+            left = (e, v) -> truthy(l.eval(e, v)) || truthy(r.eval(e, v));
+        }
+        return left;
+    }
+
+    private Node and() {
+        Node left = equality();
+        while (consume("&&")) {
+            Node l = left;
+            Node r = equality();
+            left = (e, v) -> truthy(l.eval(e, v)) && truthy(r.eval(e, v));
+        }
+        return left;
+    }
+
+    private Node equality() {
+        Node left = relational();
+        while (true) {
+            Node l = left;
+            if (consume("===")) {
+                Node r = relational();
+                left = (e, v) -> strictEquals(l.eval(e, v), r.eval(e, v));
+            } else if (consume("!==")) {
+                Node r = relational();
+                left = (e, v) -> !strictEquals(l.eval(e, v), r.eval(e, v));
+            } else if (consume("==")) {
+                Node r = relational();
+                left = (e, v) -> looseEquals(l.eval(e, v), r.eval(e, v));
+            } else if (consume("!=")) {
+                Node r = relational();
+                left = (e, v) -> !looseEquals(l.eval(e, v), r.eval(e, v));
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Node relational() {
+        Node left = unary();
+        while (true) {
+            Node l = left;
+            if (consume("<=")) {
+                Node r = unary();
+                left = (e, v) -> compare(l.eval(e, v), r.eval(e, v), c -> c <= 0);
+            } else if (consume(">=")) {
+                Node r = unary();
+                left = (e, v) -> compare(l.eval(e, v), r.eval(e, v), c -> c >= 0);
+            } else if (consume("<")) {
+                Node r = unary();
+                left = (e, v) -> compare(l.eval(e, v), r.eval(e, v), c -> c < 0);
+            } else if (consume(">")) {
+                Node r = unary();
+                left = (e, v) -> compare(l.eval(e, v), r.eval(e, v), c -> c > 0);
+            } else {
+                return left;
+            }
+        }
+    }
+
+    private Node unary() {
+        skipWhitespace();
+        if (peek() == '!' && !lookingAt("!=")) {
+            pos++;
+            Node operand = unary();
+            return (e, v) -> !truthy(operand.eval(e, v));
+        }
+        if (peek() == '-') {
+            pos++;
+            Node operand = unary();
+            return (e, v) -> -toNumber(operand.eval(e, v));
+        }
+        return postfix();
+    }
+
+    private Node postfix() {
+        Node node = primary();
+        while (consume(".")) {
+            String name = identifier();
+            node = member(node, name);
+        }
+        return node;
+    }
+
+    private Node member(Node target, String name) {
+        if (name.equals("length")) {
+            return (e, v) -> {
+                Object value = target.eval(e, v);
+                if (value instanceof String) {
+                    return (double) ((String) value).length();
+                }
+                return (double) asList(value, name).size();
+            };
+        }
+        List<Node> args = arguments();
+        switch (name) {
+            case "contains":
+                Node contains = single(args, name);
+                return (e, v) -> {
+                    Object value = target.eval(e, v);
+                    Object arg = contains.eval(e, v);
+                    if (value instanceof String) {
+                        return ((String) value).contains(toStr(arg));
+                    }
+                    return asList(value, name).contains(arg);
+                };
+            case "indexOf":
+                Node indexOf = single(args, name);
+                return (e, v) -> {
+                    Object value = target.eval(e, v);
+                    Object arg = indexOf.eval(e, v);
+                    if (value instanceof String) {
+                        return (double) ((String) value).indexOf(toStr(arg));
+                    }
+                    return (double) asList(value, name).indexOf(arg);
+                };
+            case "startsWith":
+                Node prefix = single(args, name);
+                return (e, v) -> asString(target.eval(e, v), name).startsWith(toStr(prefix.eval(e, v)));
+            case "endsWith":
+                Node suffix = single(args, name);
+                return (e, v) -> asString(target.eval(e, v), name).endsWith(toStr(suffix.eval(e, v)));
+            case "toLowerCase":
+                none(args, name);
+                return (e, v) -> asString(target.eval(e, v), name).toLowerCase();
+            case "toUpperCase":
+                none(args, name);
+                return (e, v) -> asString(target.eval(e, v), name).toUpperCase();
+            case "trim":
+                none(args, name);
+                return (e, v) -> asString(target.eval(e, v), name).trim();
+            default:
+                throw error("Unsupported method " + name);
+        }
+    }
+
+    private Node primary() {
+        skipWhitespace();
+        char c = peek();
+        if (c == '(') {
+            pos++;
+            Node node = or();
+            expect(')');
+            return node;
+        }
+        if (c == '\'' || c == '"') {
+            return string(c);
+        }
+        if (c == '{') {
+            int end = expression.indexOf('}', pos);
+            if (end == -1) {
+                throw error("Missing }");
+            }
+            Slot slot = new Slot(StringTemplate.compile(expression.substring(pos, end + 1)), false);
+            pos = end + 1;
+            return slot(slot);
+        }
+        if (Character.isDigit(c) || c == '.') {
+            return number();
+        }
+        if (Character.isJavaIdentifierStart(c)) {
+            String name = identifier();
+            switch (name) {
+                case "true":
+                    return (e, v) -> Boolean.TRUE;
+                case "false":
+                    return (e, v) -> Boolean.FALSE;
+                case "null":
+                case "undefined":
+                    return (e, v) -> null;
+                case "hasTag":
+                    Node tag = single(arguments(), name);
+                    return (e, v) -> e.hasTag(toStr(tag.eval(e, v)));
+                case "exists":
+                    Node field = single(arguments(), name);
+                    return (e, v) -> e.has(toStr(field.eval(e, v)));
+                default:
+                    throw error("Unsupported identifier " + name);
+            }
+        }
+        throw error("Unexpected character");
+    }
+
+    private Node string(char quote) {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (pos < expression.length() && expression.charAt(pos) != quote) {
+            char c = expression.charAt(pos++);
+            if (c == '\\' && pos < expression.length()) {
+                c = expression.charAt(pos++);
+                switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    default: break;
+                }
+            }
+            sb.append(c);
+        }
+        expect(quote);
+        String value = sb.toString();
+        if (!StringTemplate.hasPattern(value)) {
+            return (e, v) -> value;
+        }
+        return slot(new Slot(StringTemplate.compile(value), true));
+    }
+
+    private Node number() {
+        int start = pos;
+        while (pos < expression.length()) {
+            char c = expression.charAt(pos);
+            if (Character.isDigit(c) || c == '.' ) {
+                pos++;
+            } else if ((c == 'e' || c == 'E') && pos + 1 < expression.length()) {
+                pos++;
+                if (expression.charAt(pos) == '+' || expression.charAt(pos) == '-') {
+                    pos++;
+                }
+            } else {
+                break;
+            }
+        }
+        try {
+            Double value = Double.parseDouble(expression.substring(start, pos));
+            return (e, v) -> value;
+        } catch (NumberFormatException ex) {
+            throw error("Invalid number");
+        }
+    }
+
+    private Node slot(Slot slot) {
+        int index = slots.size();
+        slots.add(slot);
+        return (e, v) -> v[index];
+    }
+
+    private List<Node> arguments() {
+        expect('(');
+        List<Node> args = new ArrayList<>();
+        skipWhitespace();
+        if (peek() == ')') {
+            pos++;
+            return args;
+        }
+        do {
+            args.add(or());
+        } while (consume(","));
+        expect(')');
+        return args;
+    }
+
+    private Node single(List<Node> args, String name) {
+        if (args.size() != 1) {
+            throw error(name + " expects a single argument");
+        }
+        return args.get(0);
+    }
+
+    private void none(List<Node> args, String name) {
+        if (!args.isEmpty()) {
+            throw error(name + " expects no arguments");
+        }
+    }
+
+    private String identifier() {
+        skipWhitespace();
+        int start = pos;
+        while (pos < expression.length() && Character.isJavaIdentifierPart(expression.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("Expected identifier");
+        }
+        return expression.substring(start, pos);
+    }
+
+    private boolean consume(String token) {
+        skipWhitespace();
+        if (!lookingAt(token)) {
+            return false;
+        }
+        // Do not mistake the start of a longer operator for a shorter one
+        if ((token.equals("==") || token.equals("!=")) && lookingAt(token + "=")) {
+            return false;
+        }
+        if ((token.equals("<") || token.equals(">")) && lookingAt(token + "=")) {
+            return false;
+        }
+        pos += token.length();
+        return true;
+    }
+
+    private void expect(char c) {
+        skipWhitespace();
+        if (peek() != c) {
+            throw error("Expected " + c);
+        }
+        pos++;
+    }
+
+    private boolean lookingAt(String token) {
+        return expression.startsWith(token, pos);
+    }
+
+    private char peek() {
+        return pos < expression.length() ? expression.charAt(pos) : '\0';
+    }
+
+    private void skipWhitespace() {
+        while (pos < expression.length() && Character.isWhitespace(expression.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " in expression: " + expression);
+    }
+
+    private interface Comparison {
+        boolean test(int result);
+    }
+
+    private static boolean compare(Object a, Object b, Comparison comparison) {
+        if (a instanceof String && b instanceof String) {
+            return comparison.test(((String) a).compareTo((String) b));
+        }
+        double x = toNumber(a);
+        double y = toNumber(b);
+        if (Double.isNaN(x) || Double.isNaN(y)) {
+            return false;
+        }
+        return comparison.test(Double.compare(x, y));
+    }
+
+    private static boolean strictEquals(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a instanceof Double && b instanceof Double) {
+            return ((Double) a).doubleValue() == (Double) b;
+        }
+        return a.getClass() == b.getClass() && a.equals(b);
+    }
+
+    /**
+     * Same as javascript ==, booleans and strings are converted to numbers when compared with numbers.
+     */
+    private static boolean looseEquals(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a instanceof Boolean && b instanceof Boolean) {
+            return a.equals(b);
+        }
+        if (a instanceof List || b instanceof List) {
+            return a == b;
+        }
+        if (a instanceof String && b instanceof String) {
+            return a.equals(b);
+        }
+        return toNumber(a) == toNumber(b);
+    }
+
+    private static double toNumber(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        if (value instanceof String) {
+            String s = ((String) value).trim();
+            if (s.isEmpty()) {
+                return 0;
+            }
+            try {
+                return Double.parseDouble(s);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static String toStr(Object value) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && !Double.isInfinite(d)) {
+                return String.valueOf((long) d);
+            }
+        }
+        return String.valueOf(value);
+    }
+
+    private static String asString(Object value, String method) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        throw new IllegalStateException("Cannot invoke " + method + " on " + value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> asList(Object value, String method) {
+        if (value instanceof List) {
+            return (List<Object>) value;
+        }
+        throw new IllegalStateException("Cannot invoke " + method + " on " + value);
+    }
+
+    /**
+     * Interprets the value of an unquoted field the same way as javascript would interpret it
+     * as source code. Only literals are supported.
+     */
+    private static Object literalOf(String value) {
+        String s = value.trim();
+        if (s.equals("true")) {
+            return Boolean.TRUE;
+        }
+        if (s.equals("false")) {
+            return Boolean.FALSE;
+        }
+        if (s.equals("null") || s.equals("undefined")) {
+            return null;
+        }
+        if (s.startsWith("[") && s.endsWith("]")) {
+            return arrayOf(s);
+        }
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("BooleanExpression is invalid, unquoted field value is not a " +
+                    "number, boolean or array: " + value);
+        }
+    }
+
+    /**
+     * Parses ['a','b'] as produced by JsonEvent.valueAsString() but also [a, b] from metadata.
+     */
+    private static List<Object> arrayOf(String s) {
+        String content = s.substring(1, s.length() - 1).trim();
+        if (content.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> values = new ArrayList<>();
+        int i = 0;
+        while (i < content.length()) {
+            char c = content.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = content.indexOf(c, i + 1);
+                end = end == -1 ? content.length() : end;
+                values.add(content.substring(i + 1, end));
+                i = content.indexOf(',', end);
+            } else {
+                int end = content.indexOf(',', i);
+                values.add(content.substring(i, end == -1 ? content.length() : end).trim());
+                i = end;
+            }
+            if (i == -1) {
+                break;
+            }
+            i++;
+            while (i < content.length() && content.charAt(i) == ' ') {
+                i++;
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Hash functions for fingerprints. Bytes are written to a {@link Sink} so event contents and field
+ * values can be hashed without building an intermediate string. All functions use fixed seeds so
+ * the same contents get the same hash in every process.
+ */
+public enum HashAlgorithm {
+
+    MD5(Hashing.md5()),
+    MURMUR3_128(Hashing.murmur3_128()),
+    SIPHASH24(Hashing.sipHash24()),
+    XXHASH64(null) {
+        @Override
+        public Sink newSink() {
+            return new XxHash64(0);
+        }
+    };
+
+    private final HashFunction function;
+
+    HashAlgorithm(HashFunction function) {
+        this.function = function;
+    }
+
+    /**
+     * Name in any case, underscores are optional, e.g. murmur3_128, sipHash24 or xxhash64
+     */
+    public static HashAlgorithm of(String name) {
+        String normalized = name.replace("_", "").toUpperCase(Locale.ROOT);
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.name().replace("_", "").equals(normalized)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalStateException("Unknown hash algorithm " + name + ", expected one of md5, murmur3_128, " +
+                "sipHash24 or xxhash64");
+    }
+
+    public Sink newSink() {
+        return new HasherSink(function.newHasher());
+    }
+
+    /**
+     * Receives the bytes to hash, a new Sink is needed per hash
+     */
+    public abstract static class Sink extends OutputStream {
+
+        @Override
+        public abstract void write(int b);
+
+        @Override
+        public abstract void write(byte[] bytes, int offset, int length);
+
+        public abstract HashCode hash();
+    }
+
+    private static final class HasherSink extends Sink {
+
+        private final Hasher hasher;
+
+        HasherSink(Hasher hasher) {
+            this.hasher = hasher;
+        }
+
+        @Override
+        public void write(int b) {
+            hasher.putByte((byte) b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            hasher.putBytes(bytes, offset, length);
+        }
+
+        @Override
+        public HashCode hash() {
+            return hasher.hash();
+        }
+    }
+}
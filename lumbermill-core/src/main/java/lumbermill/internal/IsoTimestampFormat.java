@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Formats timestamps the same as DateTimeFormatter.ISO_OFFSET_DATE_TIME. The text up to the seconds
+ * is reused while timestamps are within the same second, only the fraction is appended.
+ *
+ * Instances are thread safe, use one per stream of timestamps that are close in time.
+ */
+public final class IsoTimestampFormat {
+
+    private volatile Second second;
+
+    public String format(ZonedDateTime date) {
+        if (date.getYear() < 0 || date.getYear() > 9999) {
+            return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(date);
+        }
+        long epochSecond = date.toEpochSecond();
+        ZoneOffset offset = date.getOffset();
+        Second second = this.second;
+        if (second == null || second.epochSecond != epochSecond || !second.offset.equals(offset)) {
+            second = new Second(epochSecond, null, date);
+            this.second = second;
+        }
+        return second.withFraction(date.getNano());
+    }
+
+    public String format(long epochMillis, ZoneId zone) {
+        long epochSecond = Math.floorDiv(epochMillis, 1000);
+        Second second = this.second;
+        if (second == null || second.epochSecond != epochSecond || !zone.equals(second.zone)) {
+            ZonedDateTime date = Instant.ofEpochSecond(epochSecond).atZone(zone);
+            if (date.getYear() < 0 || date.getYear() > 9999) {
+                return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(Instant.ofEpochMilli(epochMillis).atZone(zone));
+            }
+            second = new Second(epochSecond, zone, date);
+            this.second = second;
+        }
+        return second.withFraction((int) Math.floorMod(epochMillis, 1000) * 1_000_000);
+    }
+
+    private static final class Second {
+        final long epochSecond;
+
+        /**
+         * Zone when created from epoch millis, the offset alone decides the text
+         */
+        final ZoneId zone;
+        final ZoneOffset offset;
+
+        /**
+         * yyyy-MM-ddTHH:mm:ss followed by the offset id
+         */
+        final String text;
+
+        Second(long epochSecond, ZoneId zone, ZonedDateTime date) {
+            this.epochSecond = epochSecond;
+            this.zone = zone;
+            this.offset = date.getOffset();
+            char[] chars = new char[19];
+            putDigits(chars, 0, date.getYear(), 4);
+            chars[4] = '-';
+            putDigits(chars, 5, date.getMonthValue(), 2);
+            chars[7] = '-';
+            putDigits(chars, 8, date.getDayOfMonth(), 2);
+            chars[10] = 'T';
+            putDigits(chars, 11, date.getHour(), 2);
+            chars[13] = ':';
+            putDigits(chars, 14, date.getMinute(), 2);
+            chars[16] = ':';
+            putDigits(chars, 17, date.getSecond(), 2);
+            this.text = new String(chars).concat(offset.getId());
+        }
+
+        /**
+         * Fraction without trailing zeros as ISO_OFFSET_DATE_TIME prints it
+         */
+        String withFraction(int nano) {
+            if (nano == 0) {
+                return text;
+            }
+            int digits = 9;
+            while (nano % 10 == 0) {
+                nano /= 10;
+                digits--;
+            }
+            char[] fraction = new char[digits + 1];
+            fraction[0] = '.';
+            putDigits(fraction, 1, nano, digits);
+            return new StringBuilder(text.length() + fraction.length)
+                    .append(text, 0, 19)
+                    .append(fraction)
+                    .append(text, 19, text.length())
+                    .toString();
+        }
+
+        private static void putDigits(char[] chars, int pos, int value, int count) {
+            for (int i = pos + count - 1; i >= pos; i--) {
+                chars[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+        }
+    }
+}
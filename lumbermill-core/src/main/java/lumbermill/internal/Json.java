@@ -2,24 +2,51 @@ package lumbermill.internal;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import okio.Buffer;
 import okio.ByteString;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 
 public class Json {
 
     public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
+    private static final ObjectWriter WRITER = OBJECT_MAPPER.writer();
+
     public static JsonNode parse(ByteString string) {
         try {
-            return OBJECT_MAPPER.readTree(string.utf8());
+            return OBJECT_MAPPER.readTree(inputStream(string));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Reads the bytes without copying them, Jackson decodes utf-8 itself so there is
+     * no need to create a String first.
+     */
+    public static InputStream inputStream(ByteString bytes) {
+        return new ByteBufferBackedInputStream(bytes.asByteBuffer());
+    }
+
+    /**
+     * Serializes the node straight to utf-8 bytes
+     */
+    public static ByteString toByteString(JsonNode node) {
+        Buffer buffer = new Buffer();
+        try {
+            WRITER.writeValue(buffer.outputStream(), node);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.readByteString();
+    }
+
     public static ArrayNode createArrayNode(double... values) {
         ArrayNode arrayNode = OBJECT_MAPPER.createArrayNode();
         for (double value : values) {
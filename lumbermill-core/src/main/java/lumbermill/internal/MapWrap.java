@@ -73,6 +73,10 @@ public final class MapWrap {
        return asNumber(field).intValue();
     }
 
+    public long asLong(String field, long defaultV) {
+        return exists(field) ? asLong(field) : defaultV;
+    }
+
     public long asLong(String field) {
        return asNumber(field).longValue();
     }
@@ -116,13 +120,12 @@ public final class MapWrap {
         return (T) config.get(field);
     }
 
-    /*
     public <T> Optional<T> getIfExists(String field) {
         if (exists(field)) {
-            return Optional.of(get(field));
+            return Optional.ofNullable((T) config.get(field));
         }
         return Optional.empty();
-    }*/
+    }
 
     public boolean exists(String field) {
         return config.containsKey(field);
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Scheduler;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies a function to events in parallel on a dedicated, bounded thread pool.
+ *
+ * When all threads are busy and the queue is full, the calling thread runs the function itself
+ * which slows down the producer instead of queueing more work.
+ *
+ * Configuration:
+ *  parallelism - number of threads, defaults to the number of processors
+ *  queueSize   - number of queued calls before the caller has to run them, defaults to parallelism * 4
+ *  ordered     - if results are returned in the same order as the input, defaults to true
+ *
+ * A function returning null is regarded as returning the original event.
+ */
+public class ParallelMap<T, R> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelMap.class);
+
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private final Func1<T, R> func;
+    private final ThreadPoolExecutor executor;
+    private final Scheduler scheduler;
+    private final int parallelism;
+    private final boolean ordered;
+
+    public static <T, R> ParallelMap<T, R> of(MapWrap config, Func1<T, R> func) {
+        int parallelism = config.asInt("parallelism", Runtime.getRuntime().availableProcessors());
+        return new ParallelMap<>(func,
+                parallelism,
+                config.asInt("queueSize", parallelism * 4),
+                config.asBoolean("ordered", true));
+    }
+
+    public static <T, R> ParallelMap<T, R> of(Func1<T, R> func) {
+        return of(MapWrap.of(new HashMap<>()), func);
+    }
+
+    private ParallelMap(Func1<T, R> func, int parallelism, int queueSize, boolean ordered) {
+        if (parallelism < 1 || queueSize < 1) {
+            throw new IllegalStateException("parallelism and queueSize must be at least 1");
+        }
+        this.func = func;
+        this.parallelism = parallelism;
+        this.ordered = ordered;
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                daemonThreads("lumbermill-parallel-" + POOL_ID.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.scheduler = Schedulers.from(executor);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Created ParallelMap with parallelism {}, queueSize {}, ordered {}",
+                    parallelism, queueSize, ordered);
+        }
+    }
+
+    /**
+     * Applies the function to all events and waits for the result.
+     */
+    public List<R> apply(List<T> events) {
+        List<R> results = new ArrayList<>(events.size());
+        List<Future<R>> futures = new ArrayList<>(events.size());
+        try {
+            if (ordered) {
+                for (T event : events) {
+                    futures.add(executor.submit(() -> call(event)));
+                }
+                for (Future<R> future : futures) {
+                    results.add(future.get());
+                }
+            } else {
+                CompletionService<R> completionService = new ExecutorCompletionService<>(executor);
+                for (T event : events) {
+                    futures.add(completionService.submit(() -> call(event)));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    results.add(completionService.take().get());
+                }
+            }
+            return results;
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Applies the function to each event in the stream with at most 'parallelism' events in flight,
+     * upstream is only requested for more events when there is room.
+     */
+    public Observable<R> apply(Observable<T> events) {
+        Func1<T, Observable<R>> async = event -> Observable.fromCallable(() -> call(event)).subscribeOn(scheduler);
+        return ordered
+                ? events.concatMapEager(async, parallelism, parallelism)
+                : events.flatMap(async, parallelism);
+    }
+
+    @SuppressWarnings("unchecked")
+    private R call(T event) {
+        R result = func.call(event);
+        return result != null ? result : (R) event;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "ParallelMap{" +
+                "parallelism=" + parallelism +
+                ", ordered=" + ordered +
+                '}';
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import lumbermill.api.JsonEvent;
+import rx.Observable;
+import rx.Subscriber;
+import rx.functions.Func1;
+import rx.internal.util.ScalarSynchronousObservable;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Events in/out, errors and processing time of a named pipeline stage, see lumbermill.Metrics.
+ *
+ * A List (buffer) counts as its number of events. Processing time is measured from the call to
+ * the stage function until the returned Observable terminates, so it includes asynchronous work
+ * like http requests.
+ */
+public final class StageMetrics {
+
+    private final String name;
+    private final LongAdder in = new LongAdder();
+    private final LongAdder out = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Histogram processingTimeNanos = new Histogram();
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public <T, R> Func1<T, Observable<R>> instrument(Func1<T, Observable<R>> stage) {
+        return t -> {
+            long start = System.nanoTime();
+            in.add(sizeOf(t));
+            Observable<R> result;
+            try {
+                result = stage.call(t);
+            } catch (RuntimeException e) {
+                errors.increment();
+                processingTimeNanos.record(System.nanoTime() - start);
+                throw e;
+            }
+            // Keep Observable.just() results as they are, flatMap has a fast path for them
+            if (result instanceof ScalarSynchronousObservable) {
+                out.add(sizeOf(((ScalarSynchronousObservable<R>) result).get()));
+                processingTimeNanos.record(System.nanoTime() - start);
+                return result;
+            }
+            return result.lift(child -> new MeasuringSubscriber<>(child, start));
+        };
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(name, in.sum(), out.sum(), errors.sum(), processingTimeNanos.snapshot());
+    }
+
+    public void reset() {
+        in.reset();
+        out.reset();
+        errors.reset();
+        processingTimeNanos.reset();
+    }
+
+    private static long sizeOf(Object o) {
+        return o instanceof Collection ? ((Collection) o).size() : 1;
+    }
+
+    private final class MeasuringSubscriber<R> extends Subscriber<R> {
+
+        private final Subscriber<? super R> child;
+        private final long start;
+
+        MeasuringSubscriber(Subscriber<? super R> child, long start) {
+            super(child);
+            this.child = child;
+            this.start = start;
+        }
+
+        @Override
+        public void onNext(R r) {
+            out.add(sizeOf(r));
+            child.onNext(r);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            errors.increment();
+            processingTimeNanos.record(System.nanoTime() - start);
+            child.onError(e);
+        }
+
+        @Override
+        public void onCompleted() {
+            processingTimeNanos.record(System.nanoTime() - start);
+            child.onCompleted();
+        }
+    }
+
+    public static final class Snapshot {
+
+        private final String name;
+        private final long in;
+        private final long out;
+        private final long errors;
+        private final Histogram.Snapshot processingTime;
+
+        private Snapshot(String name, long in, long out, long errors, Histogram.Snapshot processingTime) {
+            this.name = name;
+            this.in = in;
+            this.out = out;
+            this.errors = errors;
+            this.processingTime = processingTime;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long in() {
+            return in;
+        }
+
+        public long out() {
+            return out;
+        }
+
+        public long errors() {
+            return errors;
+        }
+
+        /**
+         * Number of calls to the stage function
+         */
+        public long calls() {
+            return processingTime.count();
+        }
+
+        /**
+         * Processing time per call at percentile (0-100) in the specified unit
+         */
+        public double percentile(double percentile, TimeUnit unit) {
+            return toUnit(processingTime.percentile(percentile), unit);
+        }
+
+        public double max(TimeUnit unit) {
+            return toUnit(processingTime.max(), unit);
+        }
+
+        public double mean(TimeUnit unit) {
+            return processingTime.mean() / unit.toNanos(1);
+        }
+
+        /**
+         * Snapshot as json, times are in milliseconds
+         */
+        public JsonEvent toJsonEvent() {
+            return new JsonEvent()
+                    .put("stage", name)
+                    .put("in", in)
+                    .put("out", out)
+                    .put("errors", errors)
+                    .put("calls", calls())
+                    .put("mean_ms", mean(TimeUnit.MILLISECONDS))
+                    .put("p50_ms", percentile(50, TimeUnit.MILLISECONDS))
+                    .put("p90_ms", percentile(90, TimeUnit.MILLISECONDS))
+                    .put("p99_ms", percentile(99, TimeUnit.MILLISECONDS))
+                    .put("p999_ms", percentile(99.9, TimeUnit.MILLISECONDS))
+                    .put("max_ms", max(TimeUnit.MILLISECONDS));
+        }
+
+        private static double toUnit(long nanos, TimeUnit unit) {
+            return (double) nanos / unit.toNanos(1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s in=%d out=%d errors=%d calls=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms",
+                    name, in, out, errors, calls(), mean(TimeUnit.MILLISECONDS),
+                    percentile(50, TimeUnit.MILLISECONDS), percentile(99, TimeUnit.MILLISECONDS),
+                    max(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -33,17 +33,52 @@ import java.util.regex.Pattern;
  * StringTemplate.compile("'{host}' == '127.0.0.1'"}
  * StringTemplate.compile("application.status"} // Fields are not required
  *
+ * The pattern is compiled into literal segments and fields. System properties, environment
+ * variables and default values are resolved when the template is compiled and are used when
+ * a field does not exist in the event.
  */
 public class StringTemplate {
 
-    private final Logger LOGGER = LoggerFactory.getLogger(StringTemplate.class);
+    private static final Logger LOGGER = LoggerFactory.getLogger(StringTemplate.class);
+
+    /**
+     * Builders that have grown larger than this are not kept for reuse
+     */
+    private static final int MAX_REUSED_BUILDER_CAPACITY = 8192;
+
+    private static final ThreadLocal<StringBuilder> BUILDER =
+            ThreadLocal.withInitial(() -> new StringBuilder(256));
 
     private final String pattern;
-    private final List<Field> fields = new ArrayList<>();
+
+    /**
+     * Literal text before, between and after each field, always fields.length + 1 entries
+     */
+    private final String[] literals;
+
+    private final Field[] fields;
+
+    /**
+     * Set if the pattern is exactly one field, the value can then be returned as is.
+     */
+    private final Field singleField;
+
+    /**
+     * Value when the pattern has no fields
+     */
+    private final Optional<String> constant;
 
     public StringTemplate(String pattern) {
         this.pattern = pattern;
-        initializeFields(pattern, fields);
+        List<String> literals = new ArrayList<>();
+        List<Field> fields = new ArrayList<>();
+        initializeFields(pattern, literals, fields);
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.fields = fields.toArray(new Field[fields.size()]);
+        this.singleField = this.fields.length == 1 && this.literals[0].isEmpty() && this.literals[1].isEmpty()
+                ? this.fields[0]
+                : null;
+        this.constant = this.fields.length == 0 ? Optional.of(pattern) : null;
     }
 
     public String original() {
@@ -51,18 +86,12 @@ public class StringTemplate {
     }
 
     public static StringTemplate compile(String pattern) {
-        if (!hasPattern(pattern)) {
-            return new NoFieldsTemplate(pattern);
-        }
         return new StringTemplate(pattern);
     }
 
     public static boolean hasPattern(String pattern) {
-        return new StringTemplate(pattern).hasPattern();
-    }
-
-    private boolean hasPattern() {
-        return fields.size() > 0;
+        int first = pattern.indexOf('{');
+        return first != -1 && pattern.indexOf('}', first + 1) != -1;
     }
 
 
@@ -71,72 +100,42 @@ public class StringTemplate {
      * pattern. This will return Optional.empty() if a field is missing.
      */
     public Optional<String> format(Event event) {
-
-        if (fields.size() > 0) {
-
-            // For each Field, everything within {} will be replaced with the actual value but we start with
-            // the raw complete pattern that was supplied
-            String stringToReturn = pattern;
-
-            for( Field field : fields) {
-
-                boolean foundField = false;
-
-                if (event.has(field.nameOrPointer())) {
-                    stringToReturn = stringToReturn.replace (
-                            String.format("{%s}", field.originalExpression()),
-                            String.format("%s", event.valueAsString(field.nameOrPointer())));
-                    foundField = true;
-                    stringToReturn = field.valueOf(stringToReturn);
-
-                } else {
-                    String property = System.getProperty(field.nameOrPointer());
-                    if (property != null) {
-                        foundField = true;
-                        stringToReturn = stringToReturn.replace (
-                                String.format("{%s}", field.originalExpression()),
-                                String.format("%s", property));
-                        if (LOGGER.isTraceEnabled()) {
-                            LOGGER.trace("Value for field {} was found as system property", field.nameOrPointer());
-                        }
-                    } else {
-                        String env = System.getenv(field.nameOrPointer());
-                        if (env != null) {
-                            foundField = true;
-                            stringToReturn = stringToReturn.replace(
-                                    String.format("{%s}", field.originalExpression()),
-                                    String.format("%s", env));
-                            if (LOGGER.isTraceEnabled()) {
-                                LOGGER.trace("Value for field {} was found as system environment variable", field.nameOrPointer());
-                            }
-                            continue;
-                        }
-
-                        if (field.hasDefault()) {
-                            foundField = true;
-                            stringToReturn = stringToReturn.replace(
-                                    String.format("{%s}", field.originalExpression()),
-                                    String.format("%s", field.defaultValue()));
-                            if (LOGGER.isTraceEnabled()) {
-                                LOGGER.trace("Value for field {} got a default value", field.nameOrPointer());
-                            }
-
-                        }
-                    }
-                }
-
-                if (!foundField) {
-                    LOGGER.trace("Not all fields in pattern was found, returning an empty value");
-                    return Optional.empty();
-                }
+        if (constant != null) {
+            return constant;
+        }
+        if (singleField != null) {
+            String value = singleField.valueOf(event);
+            if (value == null) {
+                LOGGER.trace("Not all fields in pattern was found, returning an empty value");
+                return Optional.empty();
             }
+            return Optional.of(value);
+        }
 
-            return Optional.of(stringToReturn);
+        StringBuilder sb = BUILDER.get();
+        if (sb.capacity() > MAX_REUSED_BUILDER_CAPACITY) {
+            sb = new StringBuilder(256);
+            BUILDER.set(sb);
+        }
+        sb.setLength(0);
+        return appendTo(event, sb) ? Optional.of(sb.toString()) : Optional.empty();
+    }
 
-        } else {
-            // No fields in pattern, return the pattern.
-            return Optional.of(pattern);
+    /**
+     * Same as format(Event) but appends the result to the supplied StringBuilder. Returns false if
+     * a field is missing, the builder might then contain a partial result.
+     */
+    public boolean appendTo(Event event, StringBuilder sb) {
+        sb.append(literals[0]);
+        for (int i = 0; i < fields.length; i++) {
+            String value = fields[i].valueOf(event);
+            if (value == null) {
+                LOGGER.trace("Not all fields in pattern was found, returning an empty value");
+                return false;
+            }
+            sb.append(value).append(literals[i + 1]);
         }
+        return true;
     }
 
 
@@ -144,170 +143,103 @@ public class StringTemplate {
      * Format that will only check System.getProperty() and System.getenv()
      */
     public Optional<String> format() {
-
-        if (fields.size() == 0) {
-            return Optional.of(pattern);
+        if (constant != null) {
+            return constant;
         }
-
-        String valueToReturn = pattern;
-
-        for( Field field : fields) {
-
-            boolean foundField = false;
-
-            String property = System.getProperty(field.nameOrPointer());
-            if (property != null) {
-                foundField = true;
-                valueToReturn = valueToReturn.replace(
-                        String.format("{%s}", field.originalExpression()),
-                        String.format("%s", property));
-                if (LOGGER.isTraceEnabled()) {
-                    LOGGER.trace("Value for field {} was found as system property", field.nameOrPointer());
-                }
-                continue;
-            }
-
-            String env = System.getenv(field.nameOrPointer());
-
-            if (env != null) {
-                foundField = true;
-                valueToReturn = valueToReturn.replace(
-                        String.format("{%s}", field.originalExpression()),
-                        String.format("%s", env));
-                if (LOGGER.isTraceEnabled()) {
-                    LOGGER.trace("Value for field {} was found as system environment variable", field.nameOrPointer());
-                }
-                continue;
-            }
-
-            if (!foundField && field.hasDefault()) {
-                foundField = true;
-                valueToReturn = valueToReturn.replace(
-                        String.format("{%s}", field.originalExpression()),
-                        String.format("%s", field.defaultValue()));
-                if (LOGGER.isTraceEnabled()) {
-                    LOGGER.trace("Value for field {} got a default value", field.nameOrPointer());
-                }
-
-            }
-
-            if (!foundField) {
+        StringBuilder sb = new StringBuilder(pattern.length());
+        sb.append(literals[0]);
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].fallback == null) {
                 LOGGER.trace("Not all fields in pattern was found, returning an empty value");
                 return Optional.empty();
             }
-
+            sb.append(fields[i].fallback).append(literals[i + 1]);
         }
-        return Optional.of(valueToReturn);
-
+        return Optional.of(sb.toString());
     }
 
-    private void initializeFields(String expression, List<Field> fields) {
-
-        int first = expression.indexOf("{");
-        int next = expression.indexOf("}");
-
-        if( first != -1 && next != -1) {
-            String substring = expression.substring(++first, next);
-            fields.add(SimpleField.of(substring));
-            initializeFields(expression.substring(++next, expression.length()), fields);
+    private static void initializeFields(String expression, List<String> literals, List<Field> fields) {
+        int start = 0;
+        int first;
+        while ((first = expression.indexOf('{', start)) != -1) {
+            int next = expression.indexOf('}', first + 1);
+            if (next == -1) {
+                break;
+            }
+            literals.add(expression.substring(start, first));
+            fields.add(new Field(expression.substring(first + 1, next)));
+            start = next + 1;
         }
+        literals.add(expression.substring(start));
     }
 
     @Override
     public String toString() {
         return "StringTemplate{" +
                 "pattern='" + pattern + '\'' +
-                ", fields=" + Arrays.toString(fields.toArray()) +
+                ", fields=" + Arrays.toString(fields) +
                 '}';
     }
 
 
-    interface Field {
-        boolean hasDefault();
-        <T> String  valueOf(T value);
-
-
-        /**
-         * Used nameOrPointer, this is a single field value or a jsonPointer
-         */
-        String nameOrPointer();
-
+    private static final class Field {
 
         /**
-         * Original nameOrPointer, used for replacement
+         * Single field value or a jsonPointer
          */
-        String originalExpression();
+        private final String name;
 
         /**
-         * The default value IF any
+         * System property, environment variable or default value (in that order) if any.
          */
-        String defaultValue();
-
-
-        boolean in(Event event);
-    }
-
-    private static class SimpleField implements Field {
-
-        private final String expression;
-        private final String name;
-        private final String defaultValue;
-
-        static Field of(String field) {
-            return new SimpleField(field);
-        }
-
-        public String nameOrPointer() {
-            return name;
-        }
-
-        public String originalExpression() {
-            return expression;
-        }
-
-        public String defaultValue() {
-            return defaultValue;
-        }
-
-        @Override
-        public boolean in(Event event) {
-            return event.has(name);
-        }
-
-        private SimpleField(String name) {
-            this.expression = name;
-            name = name.trim();
+        private final String fallback;
 
+        private Field(String expression) {
+            String name = expression.trim();
+            String defaultValue = null;
             if (name.contains("||")) {
                 String[] split = name.split(Pattern.quote("||"));
-                this.name = split[0].trim();
-                this.defaultValue = split.length > 1 ? split[1].trim() : "";
-            } else {
-                this.name = name;
-                this.defaultValue = null;
+                name = split[0].trim();
+                defaultValue = split.length > 1 ? split[1].trim() : "";
             }
+            this.name = name;
+            this.fallback = fallback(name, defaultValue);
         }
 
-        public boolean hasDefault() {
-            return defaultValue != null;
-        }
-
-        public <T> String  valueOf(T value) {
-            return String.valueOf(value);
+        private static String fallback(String name, String defaultValue) {
+            if (name.isEmpty()) {
+                return defaultValue;
+            }
+            String property = System.getProperty(name);
+            if (property != null) {
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace("Value for field {} was found as system property", name);
+                }
+                return property;
+            }
+            String env = System.getenv(name);
+            if (env != null) {
+                if (LOGGER.isTraceEnabled()) {
+                    LOGGER.trace("Value for field {} was found as system environment variable", name);
+                }
+                return env;
+            }
+            return defaultValue;
         }
-    }
 
-   private static class NoFieldsTemplate extends StringTemplate {
-
-        private final Optional<String> pattern;
-        public NoFieldsTemplate(String pattern) {
-            super(pattern);
-            this.pattern = Optional.of(pattern);
+        /**
+         * Value from the event, or the fallback if the event does not have the field.
+         * Returns null if neither exists.
+         */
+        private String valueOf(Event event) {
+            // valueAsString() returns null when the field does not exist, saves a lookup compared to has()
+            String value = event.valueAsString(name);
+            return value != null ? value : fallback;
         }
 
         @Override
-        public Optional<String> format(Event event) {
-            return pattern;
+        public String toString() {
+            return fallback == null ? name : name + "||" + fallback;
         }
     }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/**
+ * Source of the current time for @timestamp and dated index names, millisecond resolution.
+ * Tests can replace the clock with {@link #useClock(Clock)}, e.g. with Clock.fixed.
+ */
+public final class Timestamps {
+
+    private static final IsoTimestampFormat FORMAT = new IsoTimestampFormat();
+
+    private static volatile Clock clock = Clock.systemDefaultZone();
+
+    private Timestamps() {}
+
+    /**
+     * The current time as ISO 8601 with offset, same as ZonedDateTime.now(clock) formatted with ISO_OFFSET_DATE_TIME
+     */
+    public static String now() {
+        Clock clock = Timestamps.clock;
+        return FORMAT.format(clock.millis(), clock.getZone());
+    }
+
+    public static LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    public static Clock clock() {
+        return clock;
+    }
+
+    public static void useClock(Clock clock) {
+        Timestamps.clock = clock;
+    }
+
+    public static void useSystemClock() {
+        useClock(Clock.systemDefaultZone());
+    }
+}
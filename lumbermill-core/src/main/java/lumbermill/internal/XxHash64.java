@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import com.google.common.hash.HashCode;
+import com.google.common.primitives.Longs;
+
+/**
+ * Streaming xxHash64, https://github.com/Cyan4973/xxHash. Input is processed in stripes of 32 bytes,
+ * bytes that do not fill a stripe are kept until the next write or the final hash. The hash bytes are
+ * big-endian (canonical xxHash representation) so the hex encoding is the same as other xxHash tools.
+ */
+final class XxHash64 extends HashAlgorithm.Sink {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private final byte[] stripe = new byte[32];
+    private int buffered;
+    private long total;
+
+    XxHash64(long seed) {
+        this.seed = seed;
+        this.v1 = seed + PRIME1 + PRIME2;
+        this.v2 = seed + PRIME2;
+        this.v3 = seed;
+        this.v4 = seed - PRIME1;
+    }
+
+    @Override
+    public void write(int b) {
+        total++;
+        stripe[buffered++] = (byte) b;
+        if (buffered == 32) {
+            process(stripe, 0);
+            buffered = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        total += length;
+        if (buffered + length < 32) {
+            System.arraycopy(bytes, offset, stripe, buffered, length);
+            buffered += length;
+            return;
+        }
+        if (buffered > 0) {
+            int fill = 32 - buffered;
+            System.arraycopy(bytes, offset, stripe, buffered, fill);
+            process(stripe, 0);
+            offset += fill;
+            length -= fill;
+            buffered = 0;
+        }
+        while (length >= 32) {
+            process(bytes, offset);
+            offset += 32;
+            length -= 32;
+        }
+        System.arraycopy(bytes, offset, stripe, 0, length);
+        buffered = length;
+    }
+
+    @Override
+    public HashCode hash() {
+        return HashCode.fromBytes(Longs.toByteArray(value()));
+    }
+
+    long value() {
+        long hash;
+        if (total >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+        hash += total;
+        int i = 0;
+        for (; i + 8 <= buffered; i += 8) {
+            hash ^= round(0, getLong(stripe, i));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+        }
+        if (i + 4 <= buffered) {
+            hash ^= (getInt(stripe, i) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            i += 4;
+        }
+        for (; i < buffered; i++) {
+            hash ^= (stripe[i] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+        }
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void process(byte[] bytes, int offset) {
+        v1 = round(v1, getLong(bytes, offset));
+        v2 = round(v2, getLong(bytes, offset + 8));
+        v3 = round(v3, getLong(bytes, offset + 16));
+        v4 = round(v4, getLong(bytes, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        return Long.rotateLeft(acc + input * PRIME2, 31) * PRIME1;
+    }
+
+    private static long merge(long hash, long v) {
+        return (hash ^ round(0, v)) * PRIME1 + PRIME4;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        return (getInt(bytes, offset) & 0xFFFFFFFFL) | ((long) getInt(bytes, offset + 4) << 32);
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
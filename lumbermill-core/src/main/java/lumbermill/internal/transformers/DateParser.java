@@ -0,0 +1,356 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import lumbermill.internal.IsoTimestampFormat;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+
+/**
+ * Parses dates with a list of formats, the format that matched last is tried first.
+ *
+ * Formats are DateTimeFormatter patterns or one of
+ * <ul>
+ *   <li>ISO8601 - yyyy-MM-dd, optionally followed by T or space and HH:mm[:ss[.S+]] and Z, +HH, +HHmm or +HH:mm</li>
+ *   <li>UNIX - seconds since epoch, optionally with a fraction</li>
+ *   <li>UNIX_MS - milliseconds since epoch</li>
+ * </ul>
+ * which are parsed by hand. Patterns are probed with a ParsePosition so a format that does not match
+ * costs no exception. The zone is used when the text has no offset or zone.
+ *
+ * Instances are thread safe.
+ */
+public final class DateParser {
+
+    public static final String ISO8601 = "ISO8601";
+    public static final String UNIX = "UNIX";
+    public static final String UNIX_MS = "UNIX_MS";
+
+    private final Format[] formats;
+    private final ZoneId zone;
+    private final IsoTimestampFormat isoFormat = new IsoTimestampFormat();
+
+    /**
+     * Index of the format that matched last, races only cost an extra attempt
+     */
+    private volatile int last;
+
+    private DateParser(Format[] formats, ZoneId zone) {
+        this.formats = formats;
+        this.zone = zone;
+    }
+
+    public static DateParser create(ZoneId zone, String... formats) {
+        if (formats.length == 0) {
+            throw new IllegalStateException("At least one date format is required");
+        }
+        Format[] parsers = new Format[formats.length];
+        for (int i = 0; i < formats.length; i++) {
+            parsers[i] = formatOf(formats[i]);
+        }
+        return new DateParser(parsers, zone);
+    }
+
+    private static Format formatOf(String format) {
+        switch (format) {
+            case ISO8601:
+                return DateParser::iso8601;
+            case UNIX:
+                return DateParser::unix;
+            case UNIX_MS:
+                return DateParser::unixMs;
+            default:
+                return new PatternFormat(format);
+        }
+    }
+
+    /**
+     * @return the date or null if no format matches
+     */
+    public ZonedDateTime parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        int first = last;
+        ZonedDateTime date = formats[first].parse(text, zone);
+        if (date != null) {
+            return date;
+        }
+        for (int i = 0; i < formats.length; i++) {
+            if (i != first && (date = formats[i].parse(text, zone)) != null) {
+                last = i;
+                return date;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same as DateTimeFormatter.ISO_OFFSET_DATE_TIME
+     */
+    public String format(ZonedDateTime date) {
+        return isoFormat.format(date);
+    }
+
+    private static ZonedDateTime iso8601(String text, ZoneId zone) {
+        int length = text.length();
+        if (length < 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return null;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = 0;
+        int minute = 0;
+        int second = 0;
+        int nano = 0;
+        int pos = 10;
+        if (pos < length && (text.charAt(pos) == 'T' || text.charAt(pos) == ' ')) {
+            if (pos + 6 > length || text.charAt(pos + 3) != ':') {
+                return null;
+            }
+            hour = digits(text, pos + 1, 2);
+            minute = digits(text, pos + 4, 2);
+            pos += 6;
+            if (pos < length && text.charAt(pos) == ':') {
+                second = digits(text, pos + 1, 2);
+                pos += 3;
+                if (pos < length && (text.charAt(pos) == '.' || text.charAt(pos) == ',')) {
+                    int fractionStart = ++pos;
+                    while (pos < length && pos < fractionStart + 9 && isDigit(text.charAt(pos))) {
+                        nano = nano * 10 + text.charAt(pos++) - '0';
+                    }
+                    if (pos == fractionStart) {
+                        return null;
+                    }
+                    for (int i = pos - fractionStart; i < 9; i++) {
+                        nano *= 10;
+                    }
+                }
+            }
+        }
+        ZoneId offset = zone;
+        if (pos < length) {
+            char sign = text.charAt(pos);
+            int offsetSeconds;
+            if (sign == 'Z' && pos + 1 == length) {
+                offsetSeconds = 0;
+            } else if (sign == '+' || sign == '-') {
+                int offsetMinutes;
+                switch (length - pos) {
+                    case 3:
+                        offsetMinutes = 0;
+                        break;
+                    case 5:
+                        offsetMinutes = digits(text, pos + 3, 2);
+                        break;
+                    case 6:
+                        offsetMinutes = text.charAt(pos + 3) == ':' ? digits(text, pos + 4, 2) : -1;
+                        break;
+                    default:
+                        return null;
+                }
+                int offsetHours = digits(text, pos + 1, 2);
+                if (!inRange(offsetHours, 0, 18) || !inRange(offsetMinutes, 0, 59)) {
+                    return null;
+                }
+                offsetSeconds = (sign == '-' ? -1 : 1) * (offsetHours * 3600 + offsetMinutes * 60);
+            } else {
+                return null;
+            }
+            offset = ZoneOffset.ofTotalSeconds(offsetSeconds);
+        }
+        return of(year, month, day, hour, minute, second, nano, offset);
+    }
+
+    private static ZonedDateTime unix(String text, ZoneId zone) {
+        int length = text.length();
+        int pos = 0;
+        long seconds = 0;
+        while (pos < length && pos < 12 && isDigit(text.charAt(pos))) {
+            seconds = seconds * 10 + text.charAt(pos++) - '0';
+        }
+        if (pos == 0) {
+            return null;
+        }
+        int nano = 0;
+        if (pos < length) {
+            int fractionStart = pos + 1;
+            if (text.charAt(pos) != '.' || fractionStart == length || length - fractionStart > 9) {
+                return null;
+            }
+            for (pos = fractionStart; pos < length; pos++) {
+                if (!isDigit(text.charAt(pos))) {
+                    return null;
+                }
+                nano = nano * 10 + text.charAt(pos) - '0';
+            }
+            for (int i = length - fractionStart; i < 9; i++) {
+                nano *= 10;
+            }
+        }
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nano), zone);
+    }
+
+    private static ZonedDateTime unixMs(String text, ZoneId zone) {
+        int length = text.length();
+        if (length == 0 || length > 15) {
+            return null;
+        }
+        long millis = 0;
+        for (int pos = 0; pos < length; pos++) {
+            if (!isDigit(text.charAt(pos))) {
+                return null;
+            }
+            millis = millis * 10 + text.charAt(pos) - '0';
+        }
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+    }
+
+    /**
+     * Validates the fields instead of letting LocalDateTime throw
+     */
+    private static ZonedDateTime of(int year, int month, int day, int hour, int minute, int second, int nano,
+                                    ZoneId zone) {
+        if (!inRange(year, 0, 9999) || !inRange(month, 1, 12) || !inRange(hour, 0, 23) || !inRange(minute, 0, 59)
+                || !inRange(second, 0, 59) || !inRange(nano, 0, 999_999_999)
+                || !inRange(day, 1, Month.of(month).length(Year.isLeap(year)))) {
+            return null;
+        }
+        return ZonedDateTime.of(year, month, day, hour, minute, second, nano, zone);
+    }
+
+    private static int digits(String text, int pos, int count) {
+        if (pos + count > text.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = pos; i < pos + count; i++) {
+            char c = text.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    private static boolean inRange(long value, long min, long max) {
+        return value >= min && value <= max;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private interface Format {
+        /**
+         * @return the date or null if the text does not match
+         */
+        ZonedDateTime parse(String text, ZoneId zone);
+    }
+
+    private static final class PatternFormat implements Format {
+
+        /**
+         * Pattern letters for year, month, day, time of day, fraction and zone. Patterns with only these
+         * are resolved from the parsed fields, others by the formatter
+         */
+        private static final String SIMPLE_LETTERS = "yuMLdHmsSnXxZzVO";
+
+        private final DateTimeFormatter formatter;
+        private final boolean simple;
+
+        PatternFormat(String pattern) {
+            this.formatter = DateTimeFormatter.ofPattern(pattern);
+            this.simple = isSimple(pattern);
+        }
+
+        @Override
+        public ZonedDateTime parse(String text, ZoneId zone) {
+            ParsePosition position = new ParsePosition(0);
+            TemporalAccessor parsed = formatter.parseUnresolved(text, position);
+            if (parsed == null || position.getErrorIndex() >= 0 || position.getIndex() != text.length()) {
+                return null;
+            }
+            ZoneId parsedZone = parsed.query(TemporalQueries.zoneId());
+            if (parsedZone == null && parsed.isSupported(ChronoField.OFFSET_SECONDS)) {
+                parsedZone = ZoneOffset.ofTotalSeconds((int) parsed.getLong(ChronoField.OFFSET_SECONDS));
+            }
+            ZoneId dateZone = parsedZone != null ? parsedZone : zone;
+            return simple ? resolve(parsed, dateZone) : resolveWithFormatter(text, dateZone);
+        }
+
+        private static ZonedDateTime resolve(TemporalAccessor parsed, ZoneId zone) {
+            long year = parsed.isSupported(ChronoField.YEAR_OF_ERA)
+                    ? parsed.getLong(ChronoField.YEAR_OF_ERA)
+                    : get(parsed, ChronoField.YEAR, -1);
+            return of((int) year,
+                    (int) get(parsed, ChronoField.MONTH_OF_YEAR, -1),
+                    (int) get(parsed, ChronoField.DAY_OF_MONTH, -1),
+                    (int) get(parsed, ChronoField.HOUR_OF_DAY, 0),
+                    (int) get(parsed, ChronoField.MINUTE_OF_HOUR, 0),
+                    (int) get(parsed, ChronoField.SECOND_OF_MINUTE, 0),
+                    (int) get(parsed, ChronoField.NANO_OF_SECOND, 0),
+                    zone);
+        }
+
+        /**
+         * Only reached by patterns with e.g. am/pm, day of year or week fields, after a successful probe
+         */
+        private ZonedDateTime resolveWithFormatter(String text, ZoneId zone) {
+            try {
+                TemporalAccessor resolved = formatter.parse(text);
+                LocalTime time = resolved.query(TemporalQueries.localTime());
+                return LocalDateTime.of(LocalDate.from(resolved), time != null ? time : LocalTime.MIDNIGHT)
+                        .atZone(zone);
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+
+        private static long get(TemporalAccessor parsed, ChronoField field, long defaultValue) {
+            return parsed.isSupported(field) ? parsed.getLong(field) : defaultValue;
+        }
+
+        private static boolean isSimple(String pattern) {
+            boolean quoted = false;
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (c == '\'') {
+                    quoted = !quoted;
+                } else if (!quoted && (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')
+                        && SIMPLE_LETTERS.indexOf(c) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits a value on the literal delimiters between the keys of a pattern, no regex is involved.
+ *
+ * <pre>{@code %{clientip} %{ident} %{auth} [%{timestamp}] "%{verb} %{request} HTTP/%{httpversion}" %{status:int}}</pre>
+ *
+ * Each key takes the text up to the next occurrence of the delimiter that follows it, the last key
+ * takes the rest of the value unless the pattern ends with a delimiter. Key modifiers:
+ * <ul>
+ *   <li>%{name:int} - converts the value, same types as grok (int, long, float, double, short, byte, boolean)</li>
+ *   <li>%{+name} - appends to the value of name with the append separator, %{+name/2} sets the append order</li>
+ *   <li>%{?name} or %{} - skips the value</li>
+ *   <li>%{*name} and %{&amp;name} - the value of *name is used as field name for the value of &amp;name</li>
+ *   <li>%{name->} - skips repeated delimiters after the value, e.g. padded columns</li>
+ * </ul>
+ *
+ * Instances are immutable and thread safe.
+ */
+public final class Dissect {
+
+    private final String pattern;
+    private final String prefix;
+    private final Key[] keys;
+    private final OutputField[] fields;
+    private final String appendSeparator;
+
+    private Dissect(String pattern, String prefix, Key[] keys, OutputField[] fields, String appendSeparator) {
+        this.pattern = pattern;
+        this.prefix = prefix;
+        this.keys = keys;
+        this.fields = fields;
+        this.appendSeparator = appendSeparator;
+    }
+
+    public static Dissect compile(String pattern, String appendSeparator) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalStateException("Dissect pattern must not be empty");
+        }
+        int start = pattern.indexOf("%{");
+        if (start < 0) {
+            throw new IllegalStateException("Dissect pattern has no %{key}: " + pattern);
+        }
+        String prefix = pattern.substring(0, start);
+        List<Key> keys = new ArrayList<>();
+        while (start >= 0) {
+            int end = pattern.indexOf('}', start);
+            if (end < 0) {
+                throw new IllegalStateException("Missing } in dissect pattern " + pattern);
+            }
+            int next = pattern.indexOf("%{", end + 1);
+            String delimiter = pattern.substring(end + 1, next < 0 ? pattern.length() : next);
+            if (delimiter.isEmpty() && next >= 0) {
+                throw new IllegalStateException("Dissect keys must be separated by a delimiter: " + pattern);
+            }
+            keys.add(Key.parse(pattern.substring(start + 2, end), delimiter, keys.size(), pattern));
+            start = next;
+        }
+        return new Dissect(pattern, prefix, keys.toArray(new Key[keys.size()]), outputFields(keys, pattern),
+                appendSeparator);
+    }
+
+    /**
+     * Keys with the same name are appended, ordered by append order and then position
+     */
+    private static OutputField[] outputFields(List<Key> keys, String pattern) {
+        Map<String, List<Key>> byName = new LinkedHashMap<>();
+        Map<String, Key> referenceNames = new LinkedHashMap<>();
+        Map<String, Key> referenceValues = new LinkedHashMap<>();
+        for (Key key : keys) {
+            switch (key.modifier) {
+                case SKIP:
+                    break;
+                case REFERENCE_NAME:
+                    referenceNames.put(key.name, key);
+                    break;
+                case REFERENCE_VALUE:
+                    referenceValues.put(key.name, key);
+                    break;
+                default:
+                    byName.computeIfAbsent(key.name, name -> new ArrayList<>()).add(key);
+            }
+        }
+        List<OutputField> fields = new ArrayList<>();
+        byName.forEach((name, parts) -> {
+            parts.sort(Comparator.comparingInt((Key key) -> key.appendOrder).thenComparingInt(key -> key.index));
+            fields.add(new OutputField(name, null, parts.stream().mapToInt(key -> key.index).toArray(),
+                    parts.stream().map(key -> key.type).filter(type -> type != null).findFirst().orElse(null)));
+        });
+        referenceNames.forEach((name, key) -> {
+            Key value = referenceValues.remove(name);
+            if (value == null) {
+                throw new IllegalStateException("Dissect key %{*" + name + "} has no %{&" + name + "} in " + pattern);
+            }
+            fields.add(new OutputField(null, key.index, new int[] {value.index}, value.type));
+        });
+        if (!referenceValues.isEmpty()) {
+            throw new IllegalStateException("Dissect keys " + referenceValues.keySet() + " have no %{*name} in " + pattern);
+        }
+        return fields.toArray(new OutputField[fields.size()]);
+    }
+
+    /**
+     * Splits value and sets the fields on target
+     * @return false if a delimiter was not found, target is not modified
+     */
+    public boolean match(String value, ObjectNode target) {
+        if (!value.startsWith(prefix)) {
+            return false;
+        }
+        String[] values = new String[keys.length];
+        int position = prefix.length();
+        for (Key key : keys) {
+            String delimiter = key.delimiter;
+            int end = delimiter.isEmpty() ? value.length() : value.indexOf(delimiter, position);
+            if (end < 0) {
+                return false;
+            }
+            values[key.index] = value.substring(position, end);
+            position = end + delimiter.length();
+            if (key.rightPadding) {
+                while (value.startsWith(delimiter, position)) {
+                    position += delimiter.length();
+                }
+            }
+        }
+        for (OutputField field : fields) {
+            field.writeTo(values, target, appendSeparator);
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private enum Modifier {
+        NONE, APPEND, SKIP, REFERENCE_NAME, REFERENCE_VALUE
+    }
+
+    private static final class Key {
+        private final String name;
+        private final Modifier modifier;
+        private final GrokPattern.Type type;
+        private final int appendOrder;
+        private final boolean rightPadding;
+        private final String delimiter;
+        private final int index;
+
+        private Key(String name, Modifier modifier, GrokPattern.Type type, int appendOrder, boolean rightPadding,
+                    String delimiter, int index) {
+            this.name = name;
+            this.modifier = modifier;
+            this.type = type;
+            this.appendOrder = appendOrder;
+            this.rightPadding = rightPadding;
+            this.delimiter = delimiter;
+            this.index = index;
+        }
+
+        /**
+         * [modifier]name[/order][:type][->]
+         */
+        static Key parse(String spec, String delimiter, int index, String pattern) {
+            boolean rightPadding = spec.endsWith("->");
+            if (rightPadding) {
+                spec = spec.substring(0, spec.length() - 2);
+            }
+            Modifier modifier = Modifier.NONE;
+            if (spec.isEmpty()) {
+                modifier = Modifier.SKIP;
+            } else {
+                switch (spec.charAt(0)) {
+                    case '+':
+                        modifier = Modifier.APPEND;
+                        break;
+                    case '?':
+                        modifier = Modifier.SKIP;
+                        break;
+                    case '*':
+                        modifier = Modifier.REFERENCE_NAME;
+                        break;
+                    case '&':
+                        modifier = Modifier.REFERENCE_VALUE;
+                        break;
+                    default:
+                }
+                if (modifier != Modifier.NONE) {
+                    spec = spec.substring(1);
+                }
+            }
+            GrokPattern.Type type = null;
+            int colon = spec.indexOf(':');
+            if (colon >= 0) {
+                GrokPattern.Type converted = GrokPattern.Type.of(spec.substring(colon + 1));
+                type = converted == GrokPattern.Type.STRING ? null : converted;
+                spec = spec.substring(0, colon);
+            }
+            int appendOrder = 0;
+            int slash = spec.indexOf('/');
+            if (slash >= 0) {
+                try {
+                    appendOrder = Integer.parseInt(spec.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    throw new IllegalStateException("Invalid append order in %{" + spec + "} of " + pattern);
+                }
+                spec = spec.substring(0, slash);
+            }
+            if (spec.isEmpty() && modifier != Modifier.SKIP) {
+                throw new IllegalStateException("Dissect key without name in " + pattern);
+            }
+            return new Key(spec, modifier, type, appendOrder, rightPadding, delimiter, index);
+        }
+    }
+
+    private static final class OutputField {
+        private final String name;
+        private final Integer nameIndex;
+        private final int[] valueIndexes;
+        private final GrokPattern.Type type;
+
+        OutputField(String name, Integer nameIndex, int[] valueIndexes, GrokPattern.Type type) {
+            this.name = name;
+            this.nameIndex = nameIndex;
+            this.valueIndexes = valueIndexes;
+            this.type = type;
+        }
+
+        void writeTo(String[] values, ObjectNode target, String appendSeparator) {
+            String fieldName = nameIndex != null ? values[nameIndex] : name;
+            String value;
+            if (valueIndexes.length == 1) {
+                value = values[valueIndexes[0]];
+            } else {
+                StringBuilder appended = new StringBuilder();
+                for (int i = 0; i < valueIndexes.length; i++) {
+                    if (i > 0) {
+                        appended.append(appendSeparator);
+                    }
+                    appended.append(values[valueIndexes[i]]);
+                }
+                value = appended.toString();
+            }
+            target.set(fieldName, convert(fieldName, value, target));
+        }
+
+        private JsonNode convert(String fieldName, String value, ObjectNode target) {
+            if (type == null) {
+                return JsonNodeFactory.instance.textNode(value);
+            }
+            try {
+                return type.convert(value);
+            } catch (NumberFormatException e) {
+                target.put(fieldName + "_dissectfailure", e.toString());
+                return JsonNodeFactory.instance.textNode(value);
+            }
+        }
+    }
+}
@@ -15,38 +15,37 @@
 package lumbermill.internal.transformers;
 
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import lumbermill.api.Event;
 import lumbermill.api.JsonEvent;
-import io.thekraken.grok.api.Match;
+import lumbermill.internal.MapWrap;
+import lumbermill.internal.ParallelMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import rx.Observable;
+import rx.functions.Func1;
 
-import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 
-import static java.util.stream.Collectors.toList;
 
 /**
  * Extracts fields from logs and adds them to json structure.
+ *
+ * The first of the configured patterns that matches is used, see {@link GrokPatternChain}.
  */
-public class Grok<E extends Event>  {
+public class Grok<E extends Event> implements Func1<E, Observable<E>> {
 
     private final Logger LOGGER = LoggerFactory.getLogger(Grok.class);
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
-
     /**
      * Json field to extract value from
      */
     private final String field;
 
     /**
-     * Grok patten to use
+     * Compiled grok patterns
      */
-    private final String pattern;
+    private final GrokPatternChain patterns;
 
     /**
      * Wether we should errorTagName if an parse fails
@@ -59,18 +58,17 @@ public class Grok<E extends Event>  {
     private final String errorTagName;
 
     /**
-     * Grok instance
+     * Created on first call to parse(List)
      */
-    private final io.thekraken.grok.api.Grok internal;
+    private volatile ParallelMap<E, E> defaultParallelMap;
 
 
     /**
      * Use GrokFactory to create
      */
-     Grok(io.thekraken.grok.api.Grok internal, String field, String pattern, boolean shouldtag, String errorTagName) {
-        this.internal = internal;
+     Grok(GrokPatternChain patterns, String field, boolean shouldtag, String errorTagName) {
         this.field = field;
-        this.pattern = pattern;
+        this.patterns = patterns;
         this.shouldTag = shouldtag;
         this.errorTagName = errorTagName;
     }
@@ -79,10 +77,44 @@ public class Grok<E extends Event>  {
         return Observable.just(doGrok(event));
     }
 
+    @Override
+    public Observable<E> call(E event) {
+        return parse(event);
+    }
+
+    /**
+     * Parses the events in parallel with default parallelism, see {@link ParallelMap}
+     */
     public Observable<List<E>> parse(List<E> events) {
-        return Observable.just(events.parallelStream()
-                .map(this::doGrok)
-                .collect(toList()));
+        ParallelMap<E, E> parallelMap = defaultParallelMap;
+        if (parallelMap == null) {
+            synchronized (this) {
+                parallelMap = defaultParallelMap;
+                if (parallelMap == null) {
+                    parallelMap = parallelMap(MapWrap.of(Collections.emptyMap()));
+                    defaultParallelMap = parallelMap;
+                }
+            }
+        }
+        return parse(events, parallelMap);
+    }
+
+    public Observable<List<E>> parse(List<E> events, ParallelMap<E, E> parallelMap) {
+        return Observable.just(parallelMap.apply(events));
+    }
+
+    /**
+     * Creates a ParallelMap running this grok with the specified parallelism configuration
+     */
+    public ParallelMap<E, E> parallelMap(MapWrap config) {
+        return ParallelMap.of(config, this::doGrok);
+    }
+
+    /**
+     * The patterns with their current order and match counters
+     */
+    public GrokPatternChain patterns() {
+        return patterns;
     }
 
 
@@ -105,48 +137,34 @@ public class Grok<E extends Event>  {
         }
 
         String value = jsonEvent.valueAsString(field);
-        Match gm = internal.match(value);
-        gm.captures();
-
-        if (gm.isNull()) {
+        GrokPattern matched;
+        try {
+            matched = patterns.match(value, jsonEvent.unsafe());
+        } catch (MatchBudget.ExceededException e) {
+            jsonEvent.addTag(GrokFactory.TIMEOUT_TAG);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{}, field {} = {}", e.getMessage(), field, value);
+            }
+            return event;
+        }
+        if (matched == null) {
             if (shouldTag) {
                 jsonEvent.addTag(errorTagName);
             }
             if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("Grok  did not match {}, {}", pattern, value);
+                LOGGER.trace("Grok  did not match {}, {}", patterns, value);
             }
             return event;
         }
-
-        try {
-            JsonEvent newEvent = new JsonEvent((ObjectNode) objectMapper.readTree(gm.toJson()));
-            fixUnsupportedGrokTypes(newEvent);
-            jsonEvent.merge(newEvent);
-            jsonEvent.removeIfExists(errorTagName);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        jsonEvent.removeIfExists(errorTagName);
         return event;
     }
 
-    /**
-     * Float is not supported in java-grok, fixing this here.
-     */
-    private void fixUnsupportedGrokTypes(final JsonEvent event) {
-        event.eachField((field1, value) -> {
-            if (field1.endsWith(":float")) {
-                String[] nameAndType = field1.split(":");
-                event.remove(field1);
-                event.put(nameAndType[0], Float.parseFloat(value));
-            }
-        });
-    }
-
     @Override
     public String toString() {
         return getClass().getSimpleName() + " {" +
                 "field='" + field + '\'' +
-                ", pattern=" + pattern +
+                ", patterns=" + patterns +
                 '}';
     }
 }
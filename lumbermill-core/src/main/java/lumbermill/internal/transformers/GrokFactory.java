@@ -14,67 +14,70 @@
  */
 package lumbermill.internal.transformers;
 
-import io.thekraken.grok.api.exception.GrokException;
-
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 
 
 public class GrokFactory {
 
     public static final String ERROR_TAG = "_grokparsefailure";
 
+    /**
+     * Added when the {@link MatchBudget} is exceeded
+     */
+    public static final String TIMEOUT_TAG = "_groktimeout";
+
+    /**
+     * Compiled patterns are shared by all grok stages, keyed by expression and custom patterns.
+     */
+    private static final ConcurrentMap<Object, GrokPattern> COMPILED = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a grok that uses the first of the patterns that matches
+     * @param reorder - if patterns are reordered by hit count, see {@link GrokPatternChain}
+     * @param prefilter - if patterns are skipped when the value does not contain a literal required by the pattern
+     * @param budget - limits the regex work per value, events exceeding it are tagged with {@link #TIMEOUT_TAG}
+     */
+    public static Grok create(String field, List<String> patterns, boolean shouldtag, String tag,
+                              Map<String, String> customPatterns, boolean reorder, boolean prefilter,
+                              MatchBudget budget) {
+        return new Grok(new GrokPatternChain(patterns.stream()
+                .map(pattern -> compile(pattern, customPatterns))
+                .collect(Collectors.toList()), reorder, prefilter, budget), field, shouldtag, tag);
+    }
+
+    public static Grok create(String field, List<String> patterns, boolean shouldtag, String tag,
+                              Map<String, String> customPatterns, boolean reorder, boolean prefilter) {
+        return create(field, patterns, shouldtag, tag, customPatterns, reorder, prefilter, MatchBudget.UNLIMITED);
+    }
+
+    public static Grok create(String field, String pattern, boolean shouldtag, String tag, Map<String, String> customPatterns) {
+        return create(field, Collections.singletonList(pattern), shouldtag, tag, customPatterns, false, true);
+    }
+
     public static Grok create(String field, String pattern, boolean shouldtag, String tag) {
-        return new Grok(internal(pattern), field, pattern, shouldtag, tag);
+        return create(field, pattern, shouldtag, tag, Collections.emptyMap());
     }
 
     public static Grok create(String field, String pattern, boolean shouldtag) {
-        return new Grok(internal(pattern), field, pattern, shouldtag, ERROR_TAG);
+        return create(field, pattern, shouldtag, ERROR_TAG);
     }
 
     public static Grok create(String field, String pattern) {
-        return new Grok(internal(pattern), field, pattern, true, ERROR_TAG);
-    }
-
-    private static io.thekraken.grok.api.Grok internal(String pattern) {
-        try {
-            io.thekraken.grok.api.Grok grok =  new io.thekraken.grok.api.Grok();
-            grok.copyPatterns(GROK_TEMPLATE.getPatterns());
-            grok.compile(pattern, true);
-            return grok;
-        } catch (GrokException e) {
-            throw new IllegalStateException(e);
-        }
+        return create(field, pattern, true, ERROR_TAG);
     }
 
     /**
-     * Template is created once and files are read, each parse instance is then having its patterns
-     * copied from template instead of reading files again.
+     * Returns the compiled pattern, it is only compiled the first time.
+     * @param customPatterns - pattern definitions (name to regex) that are used before the bundled ones
      */
-    private static final io.thekraken.grok.api.Grok GROK_TEMPLATE = new io.thekraken.grok.api.Grok();
-
-    static {
-        try {
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/patterns").openStream()));
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/aws").openStream()));
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/firewalls").openStream()));
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/haproxy").openStream()));
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/ruby").openStream()));
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/nagios").openStream()));
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/java").openStream()));
-            GROK_TEMPLATE.addPatternFromReader(new InputStreamReader(Thread.currentThread()
-                    .getContextClassLoader().getResource("patterns/linux-syslog").openStream()));
-        } catch (GrokException e) {
-            throw new IllegalStateException(e);
-        } catch (IOException e) {
-            throw new IllegalStateException(e);
-        }
+    public static GrokPattern compile(String pattern, Map<String, String> customPatterns) {
+        return COMPILED.computeIfAbsent(Arrays.asList(pattern, customPatterns),
+                key -> GrokPattern.compile(pattern, customPatterns));
     }
 }
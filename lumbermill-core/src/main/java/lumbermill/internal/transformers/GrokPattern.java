@@ -0,0 +1,329 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A grok expression compiled into a regex and the fields that are extracted from its named groups.
+ *
+ * Field names and types (%{NUMBER:bytes:long}) are resolved when compiled so a match copies
+ * the group values straight into the target json with the correct type. Supported types are
+ * int, long, float, double, short, byte and boolean, others are kept as strings. If a value cannot
+ * be converted it is kept as a string and a field named {name}_grokfailure describes the error.
+ *
+ * Instances are immutable and thread safe.
+ */
+public final class GrokPattern {
+
+    private static final Pattern REFERENCE = Pattern.compile("%\\{(?<name>(?<pattern>[A-z0-9]+)(?::(?<subname>[A-z0-9_:;\\/\\s\\.]+))?)(?:=(?<definition>(?:(?:[^{}]+|\\.+)+)+))?\\}");
+
+    private static final Pattern GROUP_NAME = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    private static final int MAX_ITERATIONS = 1000;
+
+    /**
+     * Captures with this name are dropped (same as java-grok)
+     */
+    private static final String UNWANTED = "UNWANTED";
+
+    private final String expression;
+    private final Pattern regex;
+    private final Field[] fields;
+    private final Optional<String> requiredLiteral;
+
+    private GrokPattern(String expression, Pattern regex, Field[] fields) {
+        this.expression = expression;
+        this.regex = regex;
+        this.fields = fields;
+        this.requiredLiteral = RequiredLiteral.longestOf(regex.pattern());
+    }
+
+    /**
+     * Expands %{NAME:field:type} references into a regex with named groups, the same way as
+     * java-grok compiles a pattern with named captures only. Custom patterns take precedence over
+     * the bundled patterns, %{NAME=regex} defines a pattern inline.
+     */
+    static GrokPattern compile(String expression, Map<String, String> customPatterns) {
+        if (expression == null || expression.trim().isEmpty()) {
+            throw new IllegalStateException("Grok pattern must not be empty");
+        }
+        Map<String, String> local = new HashMap<>(customPatterns);
+        Map<String, String> semantics = new HashMap<>();
+        String namedRegex = expression;
+        int index = 0;
+        for (int iterationsLeft = MAX_ITERATIONS; ; iterationsLeft--) {
+            Matcher reference = REFERENCE.matcher(namedRegex);
+            if (!reference.find()) {
+                break;
+            }
+            if (iterationsLeft == 0) {
+                throw new IllegalStateException("Deep recursion pattern compilation of " + expression);
+            }
+            String name = reference.group("name");
+            String patternName = reference.group("pattern");
+            String subName = reference.group("subname");
+            if (reference.group("definition") != null) {
+                local.put(patternName, reference.group("definition"));
+                name = name + "=" + reference.group("definition");
+            }
+            String definition = local.containsKey(patternName)
+                    ? local.get(patternName)
+                    : GrokPatterns.BUNDLED.get(patternName);
+            if (definition == null) {
+                throw new IllegalStateException("No grok pattern named " + patternName + " in " + expression);
+            }
+            String target = "%{" + name + "}";
+            for (int i = countOf(namedRegex, target); i > 0; i--) {
+                String replacement = subName == null
+                        ? definition
+                        : "(?<name" + index + ">" + definition + ")";
+                semantics.put("name" + index, subName);
+                int at = namedRegex.indexOf(target);
+                namedRegex = namedRegex.substring(0, at) + replacement + namedRegex.substring(at + target.length());
+                index++;
+            }
+        }
+        return of(expression, namedRegex, semantics);
+    }
+
+    private static int countOf(String s, String target) {
+        int count = 0;
+        for (int at = s.indexOf(target); at >= 0; at = s.indexOf(target, at + target.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    private static GrokPattern of(String expression, String namedRegex, Map<String, String> semantics) {
+        // Sorted by field name, same order as the java-grok captures
+        Map<String, List<String[]>> groupsByField = new TreeMap<>();
+        Matcher groupNames = GROUP_NAME.matcher(namedRegex);
+        while (groupNames.find()) {
+            String group = groupNames.group(1);
+            String semantic = semantics.get(group);
+            if (semantic == null) {
+                semantic = group;
+            }
+            String[] nameAndType = semantic.split(";|:", 3);
+            if (nameAndType[0].equals(UNWANTED)) {
+                continue;
+            }
+            groupsByField.computeIfAbsent(nameAndType[0], name -> new ArrayList<>())
+                    .add(new String[] {group, nameAndType.length > 1 ? nameAndType[1] : "string"});
+        }
+
+        List<Field> fields = new ArrayList<>();
+        groupsByField.forEach((name, groups) -> fields.add(new Field(name,
+                groups.stream().map(g -> g[0]).toArray(String[]::new),
+                groups.stream().map(g -> Type.of(g[1])).toArray(Type[]::new))));
+        return new GrokPattern(expression, Pattern.compile(namedRegex), fields.toArray(new Field[fields.size()]));
+    }
+
+    /**
+     * Finds the pattern in value and sets the extracted fields on target
+     * @return false if the pattern was not found, target is not modified
+     */
+    public boolean match(CharSequence value, ObjectNode target) {
+        Matcher matcher = regex.matcher(value);
+        if (!matcher.find()) {
+            return false;
+        }
+        for (Field field : fields) {
+            field.writeTo(matcher, target);
+        }
+        return true;
+    }
+
+    public String expression() {
+        return expression;
+    }
+
+    public Pattern regex() {
+        return regex;
+    }
+
+    /**
+     * A literal that every match contains, a value without it can be skipped without running the regex.
+     */
+    public Optional<String> requiredLiteral() {
+        return requiredLiteral;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static final class Field {
+
+        private final String name;
+        private final String failureName;
+        private final String[] groups;
+        private final Type[] types;
+
+        Field(String name, String[] groups, Type[] types) {
+            this.name = name;
+            this.failureName = name + "_grokfailure";
+            this.groups = groups;
+            this.types = types;
+        }
+
+        void writeTo(Matcher matcher, ObjectNode target) {
+            if (groups.length == 1) {
+                String value = matcher.group(groups[0]);
+                if (value != null) {
+                    target.set(name, convert(value, types[0], target));
+                }
+                return;
+            }
+            // The same field name occurs multiple times in the pattern
+            ArrayNode values = null;
+            JsonNode first = null;
+            for (int i = 0; i < groups.length; i++) {
+                String value = matcher.group(groups[i]);
+                if (value == null) {
+                    continue;
+                }
+                JsonNode converted = convert(value, types[i], target);
+                if (first == null) {
+                    first = converted;
+                } else {
+                    if (values == null) {
+                        values = target.arrayNode().add(first);
+                    }
+                    values.add(converted);
+                }
+            }
+            if (first != null) {
+                target.set(name, values != null ? values : first);
+            }
+        }
+
+        private JsonNode convert(String value, Type type, ObjectNode target) {
+            try {
+                return type.convert(value);
+            } catch (NumberFormatException e) {
+                target.put(failureName, e.toString());
+                return JsonNodeFactory.instance.textNode(unquote(value));
+            }
+        }
+    }
+
+    enum Type {
+        STRING {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.textNode(unquote(value));
+            }
+        },
+        INT {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.numberNode(Integer.parseInt(value));
+            }
+        },
+        LONG {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.numberNode(Long.parseLong(value));
+            }
+        },
+        FLOAT {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.numberNode(Float.parseFloat(value));
+            }
+        },
+        DOUBLE {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.numberNode(Double.parseDouble(value));
+            }
+        },
+        SHORT {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.numberNode((int) Short.parseShort(value));
+            }
+        },
+        BYTE {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.numberNode((int) Byte.parseByte(value));
+            }
+        },
+        BOOLEAN {
+            @Override
+            JsonNode convert(String value) {
+                return JsonNodeFactory.instance.booleanNode(Boolean.parseBoolean(value));
+            }
+        };
+
+        abstract JsonNode convert(String value);
+
+        static Type of(String name) {
+            switch (name) {
+                case "int":
+                    return INT;
+                case "long":
+                    return LONG;
+                case "float":
+                    return FLOAT;
+                case "double":
+                    return DOUBLE;
+                case "short":
+                    return SHORT;
+                case "byte":
+                    return BYTE;
+                case "boolean":
+                    return BOOLEAN;
+                default:
+                    return STRING;
+            }
+        }
+    }
+
+    /**
+     * Removes surrounding quotes, same as java-grok
+     */
+    private static String unquote(String value) {
+        int length = value.length();
+        if (length == 0) {
+            return value;
+        }
+        char first = value.charAt(0);
+        if (length == 1) {
+            return first == '"' || first == '\'' ? "" : value;
+        }
+        char last = value.charAt(length - 1);
+        if (first == last && (first == '"' || first == '\'')) {
+            return value.substring(1, length - 1);
+        }
+        return value;
+    }
+}
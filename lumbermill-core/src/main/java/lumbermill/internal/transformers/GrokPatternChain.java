@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * An ordered list of grok patterns where the first pattern that matches is used.
+ *
+ * With reorder enabled the patterns are sorted every {@link #REORDER_INTERVAL} values (counted per
+ * thread) by recent hit count divided by the average time of trying the pattern, so that common and
+ * cheap patterns are tried first (a pattern that is slow to fail on other values is tried later even
+ * if it is the most common).
+ * A pattern is only moved ahead of a pattern configured before it if neither pattern matches any of
+ * the values recently matched by the other, so a generic pattern (%{SYSLOGLINE}) is not moved ahead
+ * of a more specific one (%{HAPROXYHTTP}). The check is repeated on every reorder, but it is done on
+ * samples, so a value that both patterns match can be parsed by the wrong pattern until it shows up
+ * in the samples. Patterns that overlap for rare values should not be reordered.
+ *
+ * With prefilter enabled a pattern is skipped without running the regex if the value does not
+ * contain the {@link GrokPattern#requiredLiteral()} of the pattern.
+ *
+ * The {@link MatchBudget} is shared by all patterns tried on a value, if it is exceeded the remaining
+ * patterns are not tried.
+ *
+ * Match, miss, skip and abort counts are kept per pattern, see {@link #counters()}.
+ */
+public final class GrokPatternChain {
+
+    static final int REORDER_INTERVAL = 1024;
+
+    /**
+     * Values recently matched by each pattern, used to find overlapping patterns
+     */
+    private static final int SAMPLES = 8;
+
+    private final Entry[] entries;
+    private final boolean reorder;
+    private final boolean prefilter;
+    private final MatchBudget budget;
+
+    /**
+     * Current order, replaced on reorder
+     */
+    private volatile Entry[] order;
+
+    /**
+     * Values left until the next reorder, counted per thread to not contend on a shared counter
+     */
+    private final ThreadLocal<int[]> untilReorder = ThreadLocal.withInitial(() -> new int[] {REORDER_INTERVAL});
+    private final AtomicBoolean reordering = new AtomicBoolean();
+
+    // [earlier][later], only accessed while reordering
+    private final boolean[][] overlaps;
+
+    GrokPatternChain(List<GrokPattern> patterns, boolean reorder, boolean prefilter, MatchBudget budget) {
+        if (patterns.isEmpty()) {
+            throw new IllegalStateException("At least one grok pattern is required");
+        }
+        this.entries = new Entry[patterns.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = new Entry(patterns.get(i), i);
+        }
+        this.order = entries.clone();
+        this.reorder = reorder && entries.length > 1;
+        this.prefilter = prefilter;
+        this.budget = budget;
+        this.overlaps = new boolean[entries.length][entries.length];
+    }
+
+    /**
+     * Tries the patterns until one matches and sets the extracted fields on target
+     * @return the pattern that matched or null if no pattern matched
+     * @throws MatchBudget.ExceededException if the budget was exceeded, target is not modified
+     */
+    public GrokPattern match(String value, ObjectNode target) {
+        CharSequence input = budget.start(value);
+        GrokPattern matched = null;
+        for (Entry entry : order) {
+            if (prefilter && entry.literal != null && !value.contains(entry.literal)) {
+                entry.skipped.increment();
+                continue;
+            }
+            if (!reorder) {
+                if (entry.match(input, target)) {
+                    entry.matches.increment();
+                    matched = entry.pattern;
+                    break;
+                }
+                entry.misses.increment();
+                continue;
+            }
+            long start = System.nanoTime();
+            boolean found = entry.match(input, target);
+            entry.nanos.add(System.nanoTime() - start);
+            if (found) {
+                entry.matches.increment();
+                entry.samples.lazySet(ThreadLocalRandom.current().nextInt(SAMPLES), value);
+                matched = entry.pattern;
+                break;
+            }
+            entry.misses.increment();
+        }
+        if (reorder) {
+            int[] remaining = untilReorder.get();
+            if (--remaining[0] == 0) {
+                remaining[0] = REORDER_INTERVAL;
+                reorder();
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Sorts by hits per average nanos of an attempt, older hits count half as much for each reorder.
+     * Ties and overlapping patterns keep the configured order.
+     */
+    private void reorder() {
+        if (!reordering.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            for (Entry entry : entries) {
+                long hits = entry.matches.sum();
+                entry.hits = entry.hits / 2 + (hits - entry.hitsAtReorder);
+                entry.hitsAtReorder = hits;
+                long attempts = hits + entry.misses.sum();
+                entry.score = attempts == 0 ? 0 : entry.hits / Math.max(1.0, (double) entry.nanos.sum() / attempts);
+            }
+            Entry[] sorted = sortByScore();
+            while (findOverlaps(sorted)) {
+                sorted = sortByScore();
+            }
+            order = sorted;
+        } finally {
+            reordering.set(false);
+        }
+    }
+
+    /**
+     * Picks the entry with highest score among those whose overlapping predecessors are already placed
+     */
+    private Entry[] sortByScore() {
+        Entry[] sorted = new Entry[entries.length];
+        boolean[] placed = new boolean[entries.length];
+        for (int position = 0; position < sorted.length; position++) {
+            Entry best = null;
+            for (Entry candidate : entries) {
+                if (!placed[candidate.index] && predecessorsPlaced(candidate, placed)
+                        && (best == null || candidate.score > best.score)) {
+                    best = candidate;
+                }
+            }
+            sorted[position] = best;
+            placed[best.index] = true;
+        }
+        return sorted;
+    }
+
+    private boolean predecessorsPlaced(Entry entry, boolean[] placed) {
+        for (int earlier = 0; earlier < entry.index; earlier++) {
+            if (overlaps[earlier][entry.index] && !placed[earlier]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the entries that are moved ahead of an entry configured before them against the samples
+     * of that entry and the other way around
+     * @return true if a new overlap was found
+     */
+    private boolean findOverlaps(Entry[] sorted) {
+        boolean found = false;
+        for (int i = 0; i < sorted.length; i++) {
+            Entry later = sorted[i];
+            for (int j = i + 1; j < sorted.length; j++) {
+                Entry earlier = sorted[j];
+                if (earlier.index > later.index) {
+                    continue;
+                }
+                if (matchesSample(later, earlier) || matchesSample(earlier, later)) {
+                    overlaps[earlier.index][later.index] = true;
+                    found = true;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Tries the pattern on the samples the same way as {@link #match(String, ObjectNode)}, a sample where the
+     * budget is exceeded counts as a match so that the configured order is kept.
+     */
+    private boolean matchesSample(Entry entry, Entry samplesOf) {
+        for (int i = 0; i < SAMPLES; i++) {
+            String sample = samplesOf.samples.get(i);
+            if (sample == null || (prefilter && entry.literal != null && !sample.contains(entry.literal))) {
+                continue;
+            }
+            try {
+                if (entry.pattern.regex().matcher(budget.start(sample)).find()) {
+                    return true;
+                }
+            } catch (MatchBudget.ExceededException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the patterns in the order they are currently tried
+     */
+    public List<GrokPattern> order() {
+        return Arrays.stream(order).map(entry -> entry.pattern).collect(Collectors.toList());
+    }
+
+    /**
+     * @return counters per pattern in configured order
+     */
+    public List<Counter> counters() {
+        return Arrays.stream(entries).map(Counter::new).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return entries.length == 1 ? entries[0].pattern.toString() : order().toString();
+    }
+
+    private static final class Entry {
+        private final GrokPattern pattern;
+        private final String literal;
+        private final int index;
+        private final LongAdder matches = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder aborted = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicReferenceArray<String> samples = new AtomicReferenceArray<>(SAMPLES);
+
+        // Only accessed while reordering
+        private long hits;
+        private long hitsAtReorder;
+        private double score;
+
+        Entry(GrokPattern pattern, int index) {
+            this.pattern = pattern;
+            this.literal = pattern.requiredLiteral().orElse(null);
+            this.index = index;
+        }
+
+        boolean match(CharSequence input, ObjectNode target) {
+            try {
+                return pattern.match(input, target);
+            } catch (MatchBudget.ExceededException e) {
+                aborted.increment();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Point in time counts for a pattern
+     */
+    public static final class Counter {
+        private final String pattern;
+        private final long matches;
+        private final long misses;
+        private final long skipped;
+        private final long aborted;
+
+        private Counter(Entry entry) {
+            this.pattern = entry.pattern.expression();
+            this.matches = entry.matches.sum();
+            this.misses = entry.misses.sum();
+            this.skipped = entry.skipped.sum();
+            this.aborted = entry.aborted.sum();
+        }
+
+        public String pattern() {
+            return pattern;
+        }
+
+        /**
+         * Values where this pattern was the first to match
+         */
+        public long matches() {
+            return matches;
+        }
+
+        /**
+         * Values where the regex was tried but did not match
+         */
+        public long misses() {
+            return misses;
+        }
+
+        /**
+         * Values where the regex was not tried since the required literal was missing
+         */
+        public long skipped() {
+            return skipped;
+        }
+
+        /**
+         * Values where the match budget was exceeded while trying this pattern
+         */
+        public long aborted() {
+            return aborted;
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " {matches=" + matches + ", misses=" + misses + ", skipped=" + skipped +
+                    ", aborted=" + aborted + '}';
+        }
+    }
+}
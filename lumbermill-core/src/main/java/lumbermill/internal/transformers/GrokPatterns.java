@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Shared dictionary of the grok pattern files bundled under patterns/.
+ *
+ * Files are read first when a pattern is referenced that has not been loaded yet, in the same
+ * order as they were loaded before, so a stage only using %{AWS_FLOW_LOG} never reads the java
+ * or nagios patterns. Loaded definitions never change.
+ */
+final class GrokPatterns {
+
+    static final GrokPatterns BUNDLED = new GrokPatterns("patterns/",
+            "patterns", "aws", "firewalls", "haproxy", "ruby", "nagios", "java", "linux-syslog");
+
+    private static final Pattern DEFINITION = Pattern.compile("^([A-z0-9_]+)\\s+(.*)$");
+
+    private final ConcurrentMap<String, String> definitions = new ConcurrentHashMap<>();
+    private final String directory;
+    private final String[] files;
+
+    // Guarded by this
+    private int loadedFiles;
+
+    private GrokPatterns(String directory, String... files) {
+        this.directory = directory;
+        this.files = files;
+    }
+
+    /**
+     * Returns the definition of the pattern or null if no file defines it
+     */
+    String get(String name) {
+        String definition = definitions.get(name);
+        if (definition != null) {
+            return definition;
+        }
+        synchronized (this) {
+            while ((definition = definitions.get(name)) == null && loadedFiles < files.length) {
+                load(files[loadedFiles++]);
+            }
+        }
+        return definition;
+    }
+
+    private void load(String file) {
+        InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(directory + file);
+        if (in == null) {
+            throw new IllegalStateException("Grok pattern file not found: " + directory + file);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher matcher = DEFINITION.matcher(line);
+                if (matcher.matches()) {
+                    definitions.put(matcher.group(1), matcher.group(2));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
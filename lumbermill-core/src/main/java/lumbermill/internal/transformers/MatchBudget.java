@@ -0,0 +1,135 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the work a backtracking regex may do for a single value, a pathological value can otherwise
+ * keep a thread busy for seconds.
+ *
+ * Steps are the number of characters the regex reads from the value, which is proportional to the
+ * work done. The time limit is checked every {@link #CHECK_INTERVAL} steps. When the budget is
+ * exceeded {@link ExceededException} is thrown from the regex.
+ */
+public final class MatchBudget {
+
+    public static final MatchBudget UNLIMITED = new MatchBudget(0, 0);
+
+    static final int CHECK_INTERVAL = 4096;
+
+    private final long maxSteps;
+    private final long timeoutNanos;
+
+    private MatchBudget(long maxSteps, long timeoutNanos) {
+        this.maxSteps = maxSteps;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * @param maxSteps - max characters read by the regex for a value, 0 is unlimited
+     * @param timeout - max time spent on a value, 0 is unlimited
+     */
+    public static MatchBudget of(long maxSteps, long timeout, TimeUnit unit) {
+        if (maxSteps < 0 || timeout < 0) {
+            throw new IllegalStateException("Match budget must not be negative, maxSteps=" + maxSteps
+                    + ", timeout=" + timeout);
+        }
+        return maxSteps == 0 && timeout == 0 ? UNLIMITED : new MatchBudget(maxSteps, unit.toNanos(timeout));
+    }
+
+    public boolean isLimited() {
+        return this != UNLIMITED;
+    }
+
+    /**
+     * Wraps the value so that the budget is consumed when the regex reads it. Use the same instance
+     * for all patterns tried on a value.
+     */
+    CharSequence start(String value) {
+        return isLimited() ? new Budgeted(value, this) : value;
+    }
+
+    @Override
+    public String toString() {
+        return "MatchBudget {maxSteps=" + maxSteps + ", timeoutMs=" + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + '}';
+    }
+
+    private static final class Budgeted implements CharSequence {
+
+        private final String value;
+        private final MatchBudget budget;
+        private final long deadline;
+        private long steps;
+        private long nextCheck;
+
+        Budgeted(String value, MatchBudget budget) {
+            this.value = value;
+            this.budget = budget;
+            this.deadline = budget.timeoutNanos > 0 ? System.nanoTime() + budget.timeoutNanos : 0;
+            this.nextCheck = nextCheck();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++steps >= nextCheck) {
+                check();
+            }
+            return value.charAt(index);
+        }
+
+        private void check() {
+            if (budget.maxSteps > 0 && steps > budget.maxSteps) {
+                throw new ExceededException(budget);
+            }
+            if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                throw new ExceededException(budget);
+            }
+            nextCheck = nextCheck();
+        }
+
+        private long nextCheck() {
+            return budget.maxSteps > 0
+                    ? Math.min(steps + CHECK_INTERVAL, budget.maxSteps + 1)
+                    : steps + CHECK_INTERVAL;
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return value.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * Thrown by the regex when the budget is exceeded, the value is left unmodified.
+     */
+    public static final class ExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExceededException(MatchBudget budget) {
+            super("Grok exceeded " + budget, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Finds a literal string that every match of a regex must contain, it is used as a cheap
+ * prefilter (String.indexOf) before the regex is tried.
+ *
+ * The analysis is conservative, anything that is not understood (alternations, inline flags,
+ * quoting, character escapes) only means that less literals are found. Literals inside
+ * groups are only used if the group is mandatory.
+ */
+final class RequiredLiteral {
+
+    /**
+     * Single characters are found in almost every line and are not worth the lookup
+     */
+    static final int MIN_LENGTH = 2;
+
+    private final String regex;
+    private int pos;
+
+    private RequiredLiteral(String regex) {
+        this.regex = regex;
+    }
+
+    /**
+     * @return the longest literal that must be part of any match of the regex
+     */
+    static Optional<String> longestOf(String regex) {
+        List<String> literals;
+        try {
+            RequiredLiteral parser = new RequiredLiteral(regex);
+            literals = parser.alternation();
+            if (parser.pos != regex.length()) {
+                return Optional.empty();
+            }
+        } catch (Unsupported e) {
+            return Optional.empty();
+        }
+        String longest = null;
+        for (String literal : literals) {
+            if (literal.length() >= MIN_LENGTH && (longest == null || literal.length() > longest.length())) {
+                longest = literal;
+            }
+        }
+        return Optional.ofNullable(longest);
+    }
+
+    /**
+     * Parses until end of regex or an unmatched ')', only a single alternative has required literals
+     */
+    private List<String> alternation() {
+        List<String> literals = sequence();
+        boolean alternatives = false;
+        while (pos < regex.length() && regex.charAt(pos) == '|') {
+            pos++;
+            alternatives = true;
+            sequence();
+        }
+        return alternatives ? new ArrayList<>() : literals;
+    }
+
+    private List<String> sequence() {
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '|' || c == ')') {
+                break;
+            }
+            if (c == '(') {
+                flush(run, literals);
+                pos++;
+                boolean consumes = group();
+                List<String> inner = alternation();
+                if (pos >= regex.length() || regex.charAt(pos) != ')') {
+                    throw new Unsupported();
+                }
+                pos++;
+                if (quantifier() && consumes) {
+                    literals.addAll(inner);
+                }
+                continue;
+            }
+            if (c == '[') {
+                flush(run, literals);
+                characterClass();
+                quantifier();
+                continue;
+            }
+            if (c == '.' || c == '^' || c == '$') {
+                flush(run, literals);
+                pos++;
+                quantifier();
+                continue;
+            }
+            if (isQuantifier(c)) {
+                throw new Unsupported();
+            }
+            char literal;
+            if (c == '\\') {
+                if (pos + 1 >= regex.length()) {
+                    throw new Unsupported();
+                }
+                char escaped = regex.charAt(pos + 1);
+                if (Character.isLetterOrDigit(escaped)) {
+                    // Character classes, anchors, back references and character escapes
+                    flush(run, literals);
+                    escapeSequence(escaped);
+                    quantifier();
+                    continue;
+                }
+                literal = escaped;
+                pos += 2;
+            } else {
+                literal = c;
+                pos++;
+            }
+            run.append(literal);
+            if (pos < regex.length() && isQuantifier(regex.charAt(pos))) {
+                if (!quantifier()) {
+                    run.setLength(run.length() - 1);
+                }
+                flush(run, literals);
+            }
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    /**
+     * Consumes the group type after '('
+     * @return false if the group does not consume input (lookaround)
+     */
+    private boolean group() {
+        if (pos >= regex.length() || regex.charAt(pos) != '?') {
+            return true;
+        }
+        char type = charAt(pos + 1);
+        if (type == ':' || type == '>') {
+            pos += 2;
+            return true;
+        }
+        if (type == '=' || type == '!') {
+            pos += 2;
+            return false;
+        }
+        if (type == '<') {
+            char next = charAt(pos + 2);
+            if (next == '=' || next == '!') {
+                pos += 3;
+                return false;
+            }
+            int end = regex.indexOf('>', pos);
+            if (end < 0) {
+                throw new Unsupported();
+            }
+            pos = end + 1;
+            return true;
+        }
+        // Inline flags such as (?i) change how literals match
+        throw new Unsupported();
+    }
+
+    private void characterClass() {
+        int depth = 0;
+        pos++;
+        if (charAt(pos) == '^') {
+            pos++;
+        }
+        if (charAt(pos) == ']') {
+            pos++;
+        }
+        while (pos < regex.length()) {
+            char c = regex.charAt(pos);
+            if (c == '\\') {
+                escapeSequence(charAt(pos + 1));
+                continue;
+            }
+            pos++;
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                if (depth == 0) {
+                    return;
+                }
+                depth--;
+            }
+        }
+        throw new Unsupported();
+    }
+
+    /**
+     * Consumes a complete escape sequence, including the hex digits of x and u escapes, the octal
+     * digits of \0, the group number of back references and the control character of \cX
+     */
+    private void escapeSequence(char escaped) {
+        if (escaped == 'Q' || escaped == 'E') {
+            throw new Unsupported();
+        }
+        pos += 2;
+        if ((escaped == 'p' || escaped == 'P' || escaped == 'x') && charAt(pos) == '{') {
+            skipPast('}');
+        } else if (escaped == 'k' && charAt(pos) == '<') {
+            skipPast('>');
+        } else if (escaped == 'x') {
+            skipDigits(2, 2, 16);
+        } else if (escaped == 'u') {
+            skipDigits(4, 4, 16);
+        } else if (escaped == '0') {
+            // \0mnn is only octal if m is at most 3
+            skipDigits(1, charAt(pos) <= '3' ? 3 : 2, 8);
+        } else if (escaped >= '1' && escaped <= '9') {
+            skipDigits(0, Integer.MAX_VALUE, 10);
+        } else if (escaped == 'c') {
+            if (pos >= regex.length()) {
+                throw new Unsupported();
+            }
+            pos++;
+        }
+    }
+
+    private void skipDigits(int min, int max, int radix) {
+        int count = 0;
+        while (count < max && pos < regex.length() && Character.digit(regex.charAt(pos), radix) >= 0) {
+            pos++;
+            count++;
+        }
+        if (count < min) {
+            throw new Unsupported();
+        }
+    }
+
+    private void skipPast(char c) {
+        int end = regex.indexOf(c, pos);
+        if (end < 0) {
+            throw new Unsupported();
+        }
+        pos = end + 1;
+    }
+
+    /**
+     * Consumes an optional quantifier after an atom
+     * @return true if the atom is still required (no quantifier or a minimum of at least one)
+     */
+    private boolean quantifier() {
+        if (pos >= regex.length()) {
+            return true;
+        }
+        char c = regex.charAt(pos);
+        boolean required;
+        if (c == '?' || c == '*') {
+            pos++;
+            required = false;
+        } else if (c == '+') {
+            pos++;
+            required = true;
+        } else if (c == '{') {
+            int end = regex.indexOf('}', pos);
+            if (end < 0) {
+                throw new Unsupported();
+            }
+            String min = regex.substring(pos + 1, end).split(",", -1)[0];
+            if (min.isEmpty() || !min.chars().allMatch(Character::isDigit)) {
+                throw new Unsupported();
+            }
+            pos = end + 1;
+            required = Integer.parseInt(min) > 0;
+        } else {
+            return true;
+        }
+        // Lazy and possessive modifiers
+        if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+            pos++;
+        }
+        return required;
+    }
+
+    private static boolean isQuantifier(char c) {
+        return c == '?' || c == '*' || c == '+' || c == '{';
+    }
+
+    private char charAt(int index) {
+        return index < regex.length() ? regex.charAt(index) : 0;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() > 0) {
+            literals.add(run.toString());
+            run.setLength(0);
+        }
+    }
+
+    private static final class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,446 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+
+/**
+ * Parses RFC 3164 (BSD) and RFC 5424 syslog lines in a single pass, no regex is involved.
+ *
+ * <pre>{@code
+ * <34>Oct 11 22:14:15 mymachine su[230]: 'su root' failed for lonvick on /dev/pts/8
+ * <165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut="3"] An application event
+ * }</pre>
+ *
+ * Fields are named as by the SYSLOGLINE grok pattern and the same for both formats:
+ * <ul>
+ *   <li>priority, facility, severity, facility_label and severity_label - if the line starts with &lt;PRI&gt;</li>
+ *   <li>timestamp - as written, @timestamp is set to the ISO 8601 form. RFC 3164 timestamps have no year
+ *   and no zone so the current year, or the previous for December lines read in January, and the configured
+ *   zone are used</li>
+ *   <li>logsource, program, pid and message</li>
+ *   <li>version, msgid and structured_data - RFC 5424 only, structured_data is an object of
+ *   SD-ID to an object of the params</li>
+ * </ul>
+ *
+ * RFC 5424 nil values (-) are left out. Lines that can not be parsed leave the target unmodified.
+ * Instances are immutable and thread safe.
+ */
+public final class Syslog {
+
+    public static final String ERROR_TAG = "_syslogparsefailure";
+
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    private static final String[] FACILITY_LABELS = {
+            "kernel", "user-level", "mail", "system", "security/authorization", "syslogd", "line printer",
+            "network news", "UUCP", "clock", "security/authorization", "FTP", "NTP", "log audit", "log alert",
+            "clock", "local0", "local1", "local2", "local3", "local4", "local5", "local6", "local7"};
+
+    private static final String[] SEVERITY_LABELS = {
+            "Emergency", "Alert", "Critical", "Error", "Warning", "Notice", "Informational", "Debug"};
+
+    private final ZoneId zone;
+    private final Clock clock;
+
+    /**
+     * Offset of the zone if it has no daylight saving, avoids a rules lookup per line
+     */
+    private final String fixedOffset;
+
+    Syslog(ZoneId zone, Clock clock) {
+        this.zone = zone;
+        this.clock = clock;
+        this.fixedOffset = zone.getRules().isFixedOffset() ? zone.getRules().getOffset(Instant.EPOCH).getId() : null;
+    }
+
+    /**
+     * @param zone used for RFC 3164 timestamps
+     */
+    public static Syslog create(ZoneId zone) {
+        return new Syslog(zone, Clock.system(zone));
+    }
+
+    public boolean parse(String line, ObjectNode target) {
+        int length = line.length();
+        int priority = -1;
+        int pos = 0;
+        if (length > 0 && line.charAt(0) == '<') {
+            priority = 0;
+            pos = 1;
+            while (pos < length && pos < 4 && isDigit(line.charAt(pos))) {
+                priority = priority * 10 + line.charAt(pos++) - '0';
+            }
+            if (pos == 1 || pos == length || line.charAt(pos) != '>' || priority > 191) {
+                return false;
+            }
+            pos++;
+        }
+        // A version directly after PRI means RFC 5424, RFC 3164 starts with a month name or a year
+        if (priority >= 0) {
+            int version = 0;
+            int end = pos;
+            while (end < length && end < pos + 2 && isDigit(line.charAt(end))) {
+                version = version * 10 + line.charAt(end++) - '0';
+            }
+            if (end > pos && end < length && line.charAt(end) == ' ') {
+                return rfc5424(line, end + 1, priority, version, target);
+            }
+        }
+        return rfc3164(line, pos, priority, target);
+    }
+
+    private boolean rfc3164(String line, int pos, int priority, ObjectNode target) {
+        int length = line.length();
+        int timestampEnd;
+        String isoTimestamp = null;
+        if (pos < length && isDigit(line.charAt(pos))) {
+            // High precision timestamp as written by rsyslog
+            timestampEnd = line.indexOf(' ', pos);
+            int iso = timestampEnd < 0 ? -1 : iso8601(line, pos, timestampEnd);
+            if (iso < 0) {
+                return false;
+            }
+            if (iso == 1) {
+                isoTimestamp = line.substring(pos, timestampEnd);
+            }
+        } else {
+            int month = month(line, pos);
+            int p = pos + 3;
+            if (month == 0 || p >= length || line.charAt(p) != ' ') {
+                return false;
+            }
+            while (p < length && line.charAt(p) == ' ') {
+                p++;
+            }
+            int dayStart = p;
+            int day = 0;
+            while (p < length && p < dayStart + 2 && isDigit(line.charAt(p))) {
+                day = day * 10 + line.charAt(p++) - '0';
+            }
+            if (p == dayStart || p + 9 > length || line.charAt(p) != ' '
+                    || line.charAt(p + 3) != ':' || line.charAt(p + 6) != ':') {
+                return false;
+            }
+            int hour = twoDigits(line, p + 1);
+            int minute = twoDigits(line, p + 4);
+            int second = twoDigits(line, p + 7);
+            if (day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+                return false;
+            }
+            timestampEnd = p + 9;
+            isoTimestamp = isoTimestamp(month, day, hour, minute, second);
+        }
+        if (timestampEnd >= length || line.charAt(timestampEnd) != ' ') {
+            return false;
+        }
+        int hostStart = timestampEnd + 1;
+        int hostEnd = line.indexOf(' ', hostStart);
+        if (hostEnd <= hostStart) {
+            return false;
+        }
+
+        // TAG is program[pid]: and optional, without it the message follows the host
+        int tagStart = hostEnd + 1;
+        int programEnd = tagStart;
+        while (programEnd < length && isProgramChar(line.charAt(programEnd))) {
+            programEnd++;
+        }
+        int pidStart = -1;
+        int pidEnd = -1;
+        int tagEnd = programEnd;
+        if (tagEnd < length && line.charAt(tagEnd) == '[') {
+            pidStart = tagEnd + 1;
+            pidEnd = line.indexOf(']', pidStart);
+            tagEnd = pidEnd < 0 ? length : pidEnd + 1;
+        }
+        int messageStart;
+        if (programEnd > tagStart && tagEnd < length && line.charAt(tagEnd) == ':') {
+            messageStart = tagEnd + 1 < length && line.charAt(tagEnd + 1) == ' ' ? tagEnd + 2 : tagEnd + 1;
+        } else {
+            programEnd = tagStart;
+            pidStart = -1;
+            messageStart = tagStart;
+        }
+
+        putPriority(target, priority);
+        target.put("timestamp", line.substring(pos, timestampEnd));
+        if (isoTimestamp != null) {
+            target.put("@timestamp", isoTimestamp);
+        }
+        target.put("logsource", line.substring(hostStart, hostEnd));
+        if (programEnd > tagStart) {
+            target.put("program", line.substring(tagStart, programEnd));
+        }
+        if (pidStart >= 0 && pidEnd > pidStart) {
+            target.put("pid", line.substring(pidStart, pidEnd));
+        }
+        target.put("message", line.substring(messageStart));
+        return true;
+    }
+
+    private static boolean rfc5424(String line, int pos, int priority, int version, ObjectNode target) {
+        int length = line.length();
+        int timestampEnd = tokenEnd(line, pos);
+        int hostEnd = tokenEnd(line, timestampEnd + 1);
+        int appEnd = tokenEnd(line, hostEnd + 1);
+        int procEnd = tokenEnd(line, appEnd + 1);
+        int msgIdEnd = tokenEnd(line, procEnd + 1);
+        if (msgIdEnd < 0 || msgIdEnd + 1 == length) {
+            return false;
+        }
+        boolean hasTimestamp = !isNil(line, pos, timestampEnd);
+        if (hasTimestamp && iso8601(line, pos, timestampEnd) != 1) {
+            return false;
+        }
+
+        int sdStart = msgIdEnd + 1;
+        ObjectNode structuredData = null;
+        int sdEnd;
+        if (line.charAt(sdStart) == '-') {
+            sdEnd = sdStart + 1;
+        } else {
+            structuredData = target.objectNode();
+            sdEnd = structuredData(line, sdStart, structuredData);
+        }
+        int messageStart;
+        if (sdEnd == length) {
+            messageStart = length;
+        } else if (sdEnd > 0 && line.charAt(sdEnd) == ' ') {
+            messageStart = sdEnd + 1;
+            // Skip the BOM of a UTF-8 message
+            if (messageStart < length && line.charAt(messageStart) == '\uFEFF') {
+                messageStart++;
+            }
+        } else {
+            return false;
+        }
+
+        putPriority(target, priority);
+        target.put("version", version);
+        if (hasTimestamp) {
+            String timestamp = line.substring(pos, timestampEnd);
+            target.put("timestamp", timestamp);
+            target.put("@timestamp", timestamp);
+        }
+        putUnlessNil(target, "logsource", line, timestampEnd + 1, hostEnd);
+        putUnlessNil(target, "program", line, hostEnd + 1, appEnd);
+        putUnlessNil(target, "pid", line, appEnd + 1, procEnd);
+        putUnlessNil(target, "msgid", line, procEnd + 1, msgIdEnd);
+        if (structuredData != null) {
+            target.set("structured_data", structuredData);
+        }
+        target.put("message", line.substring(messageStart));
+        return true;
+    }
+
+    /**
+     * Parses [id name="value" ...][id ...] into target, returns the index after the last ] or -1 if invalid
+     */
+    private static int structuredData(String line, int pos, ObjectNode target) {
+        int length = line.length();
+        if (line.charAt(pos) != '[') {
+            return -1;
+        }
+        while (pos < length && line.charAt(pos) == '[') {
+            int idStart = ++pos;
+            while (pos < length && isSdNameChar(line.charAt(pos))) {
+                pos++;
+            }
+            if (pos == idStart || pos == length) {
+                return -1;
+            }
+            ObjectNode element = target.putObject(line.substring(idStart, pos));
+            while (line.charAt(pos) == ' ') {
+                int nameStart = ++pos;
+                while (pos < length && isSdNameChar(line.charAt(pos))) {
+                    pos++;
+                }
+                if (pos == nameStart || pos + 1 >= length || line.charAt(pos) != '=' || line.charAt(pos + 1) != '"') {
+                    return -1;
+                }
+                String name = line.substring(nameStart, pos);
+                pos += 2;
+                int valueStart = pos;
+                StringBuilder unescaped = null;
+                while (pos < length && line.charAt(pos) != '"') {
+                    if (line.charAt(pos) == '\\' && pos + 1 < length && isEscaped(line.charAt(pos + 1))) {
+                        if (unescaped == null) {
+                            unescaped = new StringBuilder();
+                        }
+                        unescaped.append(line, valueStart, pos);
+                        valueStart = ++pos;
+                    }
+                    pos++;
+                }
+                if (pos + 1 >= length) {
+                    return -1;
+                }
+                element.put(name, unescaped == null
+                        ? line.substring(valueStart, pos)
+                        : unescaped.append(line, valueStart, pos).toString());
+                pos++;
+            }
+            if (line.charAt(pos) != ']') {
+                return -1;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private String isoTimestamp(int month, int day, int hour, int minute, int second) {
+        LocalDate today = LocalDate.now(clock);
+        int year = month > today.getMonthValue() + 1 ? today.getYear() - 1 : today.getYear();
+        if (day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        String offset = fixedOffset != null
+                ? fixedOffset
+                : zone.getRules().getOffset(LocalDateTime.of(year, month, day, hour, minute, second)).getId();
+        char[] chars = new char[19];
+        chars[0] = (char) ('0' + year / 1000);
+        chars[1] = (char) ('0' + year / 100 % 10);
+        chars[2] = (char) ('0' + year / 10 % 10);
+        chars[3] = (char) ('0' + year % 10);
+        chars[4] = '-';
+        putTwoDigits(chars, 5, month);
+        chars[7] = '-';
+        putTwoDigits(chars, 8, day);
+        chars[10] = 'T';
+        putTwoDigits(chars, 11, hour);
+        chars[13] = ':';
+        putTwoDigits(chars, 14, minute);
+        chars[16] = ':';
+        putTwoDigits(chars, 17, second);
+        return new StringBuilder(19 + offset.length()).append(chars).append(offset).toString();
+    }
+
+    /**
+     * Checks the shape of yyyy-MM-ddTHH:mm:ss[.fraction][Z|+HH:mm], returns 1 with an offset,
+     * 0 without and -1 if it is not a timestamp
+     */
+    static int iso8601(String s, int start, int end) {
+        if (end - start < 19 || s.charAt(start + 4) != '-' || s.charAt(start + 7) != '-' || s.charAt(start + 10) != 'T'
+                || s.charAt(start + 13) != ':' || s.charAt(start + 16) != ':'
+                || twoDigits(s, start) < 0 || twoDigits(s, start + 2) < 0
+                || !inRange(twoDigits(s, start + 5), 1, 12) || !inRange(twoDigits(s, start + 8), 1, 31)
+                || !inRange(twoDigits(s, start + 11), 0, 23) || !inRange(twoDigits(s, start + 14), 0, 59)
+                || !inRange(twoDigits(s, start + 17), 0, 60)) {
+            return -1;
+        }
+        int pos = start + 19;
+        if (pos < end && s.charAt(pos) == '.') {
+            int fractionStart = ++pos;
+            while (pos < end && isDigit(s.charAt(pos))) {
+                pos++;
+            }
+            if (pos == fractionStart) {
+                return -1;
+            }
+        }
+        if (pos == end) {
+            return 0;
+        }
+        char c = s.charAt(pos);
+        if (c == 'Z') {
+            return pos + 1 == end ? 1 : -1;
+        }
+        return (c == '+' || c == '-') && pos + 6 == end && s.charAt(pos + 3) == ':'
+                && inRange(twoDigits(s, pos + 1), 0, 23) && inRange(twoDigits(s, pos + 4), 0, 59) ? 1 : -1;
+    }
+
+    private static void putPriority(ObjectNode target, int priority) {
+        if (priority < 0) {
+            return;
+        }
+        int facility = priority >> 3;
+        int severity = priority & 7;
+        target.put("priority", priority);
+        target.put("facility", facility);
+        target.put("severity", severity);
+        target.put("facility_label", FACILITY_LABELS[facility]);
+        target.put("severity_label", SEVERITY_LABELS[severity]);
+    }
+
+    private static void putUnlessNil(ObjectNode target, String field, String line, int start, int end) {
+        if (!isNil(line, start, end)) {
+            target.put(field, line.substring(start, end));
+        }
+    }
+
+    /**
+     * End of the space terminated token at start or -1, start is 0 when a previous token was missing
+     */
+    private static int tokenEnd(String line, int start) {
+        if (start <= 0) {
+            return -1;
+        }
+        int end = line.indexOf(' ', start);
+        return end > start ? end : -1;
+    }
+
+    private static boolean isNil(String line, int start, int end) {
+        return end == start + 1 && line.charAt(start) == '-';
+    }
+
+    private static int month(String s, int pos) {
+        for (int i = 0; i < 12; i++) {
+            if (s.regionMatches(pos, MONTHS, i * 3, 3)) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int twoDigits(String s, int pos) {
+        char high = s.charAt(pos);
+        char low = s.charAt(pos + 1);
+        return isDigit(high) && isDigit(low) ? (high - '0') * 10 + low - '0' : -1;
+    }
+
+    private static void putTwoDigits(char[] chars, int pos, int value) {
+        chars[pos] = (char) ('0' + value / 10);
+        chars[pos + 1] = (char) ('0' + value % 10);
+    }
+
+    private static boolean inRange(int value, int min, int max) {
+        return value >= min && value <= max;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isProgramChar(char c) {
+        return c != ':' && c != '[' && c != ' ';
+    }
+
+    private static boolean isSdNameChar(char c) {
+        return c > ' ' && c <= '~' && c != '=' && c != ']' && c != '"';
+    }
+
+    private static boolean isEscaped(char c) {
+        return c == '"' || c == '\\' || c == ']';
+    }
+}
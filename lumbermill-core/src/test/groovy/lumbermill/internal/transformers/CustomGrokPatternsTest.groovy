@@ -117,4 +117,19 @@ class CustomGrokPatternsTest extends GroovyTestCase {
         } ).subscribe()
     }
 
+    @Test
+    def void test_mixed_logs_with_pattern_list() {
+        def stage = Core.grok.parse(
+                field: 'message',
+                pattern: ['%{AWS_FLOW_LOG}', '%{AWS_ELB_LOG}'])
+
+        stage.call(TEXT_TO_JSON.from(ELB_ROW))
+            .doOnNext( { JsonEvent event ->
+                assertThat(event.valueAsString('loadbalancer')).isEqualTo('prod-apig-LoadBala-W1C506EG6RQ4')
+                assertThat(event.hasTag(GrokFactory.ERROR_TAG)).isFalse()
+        } ).subscribe()
+
+        assertThat(stage.patterns().counters()*.matches()).containsExactly(0L, 1L)
+    }
+
 }
@@ -14,12 +14,16 @@
  */
 package lumbermill;
 
+import com.google.common.hash.Hashing;
 import lumbermill.api.Codecs;
 import lumbermill.api.Event;
 import lumbermill.api.JsonEvent;
 import org.junit.Test;
+import rx.Observable;
 import rx.Subscriber;
+import rx.functions.Func1;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -43,6 +47,31 @@ public class CoreTest {
     }
 
 
+    @Test
+    public void testDissect() {
+        JsonEvent event = Codecs.TEXT_TO_JSON.from("2016-10-11 INFO started");
+        dissect("message", "%{date} %{level} %{text}").call(event);
+        assertThat(event.valueAsString("level")).isEqualTo("INFO");
+        assertThat(event.valueAsString("text")).isEqualTo("started");
+
+        event = Codecs.TEXT_TO_JSON.from("no delimiters");
+        dissect(of("field", "message", "pattern", "%{a} [%{b}]").toMap()).call(event);
+        assertThat(event.hasTag("_dissectfailure")).isTrue();
+    }
+
+    @Test
+    public void testSyslog() {
+        JsonEvent event = Codecs.TEXT_TO_JSON.from("<13>Oct 11 22:14:15 host app[1]: started");
+        syslog().call(event);
+        assertThat(event.valueAsString("program")).isEqualTo("app");
+        assertThat(event.valueAsString("message")).isEqualTo("started");
+
+        event = Codecs.TEXT_TO_JSON.from("not syslog");
+        syslog(of("timezone", "Europe/Stockholm").toMap()).call(event);
+        assertThat(event.hasTag("_syslogparsefailure")).isTrue();
+        assertThat(event.valueAsString("message")).isEqualTo("not syslog");
+    }
+
     @Test
     public void testConditionalSanityFromJava() {
 
@@ -131,6 +160,39 @@ public class CoreTest {
         assertThat(rawCopy.has("fingerprint")).isFalse();
     }
 
+    @Test
+    public void test_fingerprint_hash() {
+        JsonEvent event = Codecs.TEXT_TO_JSON.from("Hello").put("@timestamp", "2016-06-15T13:26:52.485Z");
+        fingerprint.hash().call(event);
+        assertThat(event.valueAsString("fingerprint")).hasSize(32);
+
+        fingerprint.hash(of("algorithm", "md5", "fields", asList("message")).toMap()).call(event);
+        assertThat(event.valueAsString("fingerprint")).isEqualTo(Hashing.md5().newHasher()
+                .putString("Hello", StandardCharsets.UTF_8).putByte((byte) 0).hash().toString());
+
+        fingerprint.hash(of("algorithm", "md5", "source", "{message}", "field", "id").toMap()).call(event);
+        assertThat(event.valueAsString("id")).isEqualTo("8b1a9953c4611296a827abf8c47804d7");
+
+        fingerprint.hash(of("algorithm", "xxhash64", "fields", asList("message", "@timestamp"),
+                "encoding", "base64url").toMap()).call(event);
+        assertThat(event.valueAsString("fingerprint")).matches("[A-Za-z0-9_-]{11}");
+
+        fingerprint.hash(of("algorithm", "sipHash24", "encoding", "long").toMap()).call(event);
+        assertThat((Object) event.get("fingerprint")).isInstanceOf(Long.class);
+
+        // Fields are separated so values can not shift into each other
+        JsonEvent first = Codecs.TEXT_TO_JSON.from("ab").put("data", "c");
+        JsonEvent second = Codecs.TEXT_TO_JSON.from("a").put("data", "bc");
+        Func1<JsonEvent, Observable<JsonEvent>> hash = fingerprint.hash(of("fields", asList("message", "data")).toMap());
+        assertThat(hash.call(first).toBlocking().single().valueAsString("fingerprint"))
+                .isNotEqualTo(hash.call(second).toBlocking().single().valueAsString("fingerprint"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_fingerprint_hash_fails_on_missing_field() {
+        fingerprint.hash(of("fields", asList("message", "missing")).toMap()).call(Codecs.TEXT_TO_JSON.from("Hello"));
+    }
+
     @Test
     public void test_checksum_exception_is_thrown_when_field_is_missing_in_one() {
 
@@ -1,6 +1,11 @@
 package lumbermill.api;
 
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lumbermill.internal.JsonParseException;
+import okio.Buffer;
+import okio.ByteString;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -31,4 +36,67 @@ public class JsonEventTest {
       .subscribe ();
   }
 
+  @Test
+  public void test_lazy_event_returns_original_bytes_until_modified() {
+    ByteString json = ByteString.encodeUtf8 ("{ \"message\" : \"hello\" }");
+    JsonEvent event = Codecs.JSON_OBJECT_LAZY.from (json);
+    assertThat (event.isParsed ()).isFalse ();
+    assertThat (event.raw ()).isSameAs (json);
+
+    assertThat (event.valueAsString ("message")).isEqualTo ("hello");
+    assertThat (event.isParsed ()).isTrue ();
+    assertThat (event.raw ()).isSameAs (json);
+
+    event.put ("level", "INFO");
+    assertThat (event.raw ().utf8 ()).isEqualTo ("{\"message\":\"hello\",\"level\":\"INFO\"}");
+  }
+
+  @Test
+  public void test_lazy_event_metadata_does_not_parse() {
+    JsonEvent event = Codecs.JSON_OBJECT_LAZY.from ("{\"message\":\"hello\"}").putMetaData ("key", "value");
+    assertThat (event.isParsed ()).isFalse ();
+  }
+
+  @Test (expected = JsonParseException.class)
+  public void test_lazy_event_with_invalid_json_fails_when_used() {
+    JsonEvent event = Codecs.JSON_OBJECT_LAZY.from ("not json");
+    event.has ("message");
+  }
+
+  @Test
+  public void test_raw_is_cached_until_modified() {
+    JsonEvent event = Codecs.TEXT_TO_JSON.from ("hello").put ("value", 1);
+    ByteString raw = event.raw ();
+    assertThat (event.raw ()).isSameAs (raw);
+
+    event.putMetaData ("metadata", "is not part of raw");
+    assertThat (event.raw ()).isSameAs (raw);
+
+    event.put ("value", 2);
+    assertThat (event.raw ()).isNotEqualTo (raw);
+    assertThat (event.raw ().utf8 ()).contains ("\"value\":2");
+
+    raw = event.raw ();
+    event.unsafe ().put ("value", 3);
+    assertThat (event.raw ()).isNotSameAs (raw);
+    assertThat (event.raw ().utf8 ()).contains ("\"value\":3");
+
+    raw = event.raw ();
+    event.addTag ("tag");
+    assertThat (event.raw ()).isNotSameAs (raw);
+    assertThat (event.raw ().utf8 ()).contains ("\"tags\":[\"tag\"]");
+  }
+
+  @Test
+  public void test_write_to_generator_does_not_modify_event() throws Exception {
+    JsonEvent event = Codecs.JSON_OBJECT_LAZY.from ("{\n  \"message\" : \"hello\"\n}");
+    ByteString raw = event.raw ();
+    Buffer buffer = new Buffer ();
+    try (JsonGenerator generator = new ObjectMapper ().getFactory ().createGenerator (buffer.outputStream ())) {
+      event.writeTo (generator);
+    }
+    assertThat (buffer.readUtf8 ()).isEqualTo ("{\"message\":\"hello\"}");
+    assertThat (event.raw ()).isSameAs (raw);
+  }
+
 }
@@ -0,0 +1,68 @@
+package lumbermill.api;
+
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetaDataEventTest {
+
+  @Test
+  public void test_tags() {
+    BytesEvent event = Codecs.BYTES.from ("hello");
+    assertThat (event.hasTag ("first")).isFalse ();
+    assertThat (event.has ("tags")).isTrue ();
+    assertThat (event.valueAsString ("tags")).isEqualTo ("[]");
+
+    event.addTag ("first");
+    event.addTags (asList ("second", "first"));
+    assertThat (event.hasTag ("first")).isTrue ();
+    assertThat (event.hasTag ("second")).isTrue ();
+    assertThat (event.hasTag ("third")).isFalse ();
+    assertThat (event.<List<String>>get ("tags")).containsExactlyInAnyOrder ("first", "second");
+  }
+
+  @Test
+  public void test_more_tags_than_can_be_interned() {
+    BytesEvent event = Codecs.BYTES.from ("hello");
+    for (int i = 0; i < 100; i++) {
+      event.addTag ("many_tags_" + i);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertThat (event.hasTag ("many_tags_" + i)).isTrue ();
+    }
+    assertThat (event.<List<String>>get ("tags")).hasSize (100);
+  }
+
+  @Test
+  public void test_metadata() {
+    BytesEvent event = Codecs.BYTES.from ("hello");
+    assertThat (event.has ("key")).isFalse ();
+    assertThat (event.valueAsString ("key")).isNull ();
+
+    event.put ("key", "value").put ("number", 1).put ("key", "value2");
+    assertThat (event.valueAsString ("key")).isEqualTo ("value2");
+    assertThat (event.<Integer>get ("number")).isEqualTo (1);
+  }
+
+  @Test
+  public void test_copied_metadata_is_not_shared_when_modified() {
+    BytesEvent parent = Codecs.BYTES.from ("hello").put ("key", "parent");
+    parent.addTag ("parent_tag");
+
+    BytesEvent child = Codecs.BYTES.from ("child").withMetaData (parent);
+    assertThat (child.valueAsString ("key")).isEqualTo ("parent");
+    assertThat (child.hasTag ("parent_tag")).isTrue ();
+
+    child.put ("key", "child").addTag ("child_tag");
+    parent.put ("other", "parent");
+
+    assertThat (parent.valueAsString ("key")).isEqualTo ("parent");
+    assertThat (parent.hasTag ("child_tag")).isFalse ();
+    assertThat (child.valueAsString ("key")).isEqualTo ("child");
+    assertThat (child.has ("other")).isFalse ();
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.Event;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchOperatorTest {
+
+    private final TestScheduler scheduler = new TestScheduler();
+
+    @Test
+    public void test_closes_on_max_events() {
+        TestSubscriber<List<Event>> subscriber = new TestSubscriber<>();
+        events(5).lift(new BatchOperator<>(2, Long.MAX_VALUE, 1000, scheduler))
+                .subscribe(subscriber);
+        subscriber.assertCompleted();
+        assertThat(subscriber.getOnNextEvents()).extracting(List::size).containsExactly(2, 2, 1);
+    }
+
+    @Test
+    public void test_closes_on_max_bytes() {
+        TestSubscriber<List<Event>> subscriber = new TestSubscriber<>();
+        // Each event is 10 bytes
+        events(5).lift(new BatchOperator<>(100, 25, 1000, scheduler))
+                .subscribe(subscriber);
+        assertThat(subscriber.getOnNextEvents()).extracting(List::size).containsExactly(3, 2);
+    }
+
+    @Test
+    public void test_closes_on_linger_when_requested() {
+        PublishSubject<Event> subject = PublishSubject.create();
+        TestSubscriber<List<Event>> subscriber = new TestSubscriber<>();
+        subject.lift(new BatchOperator<>(100, Long.MAX_VALUE, 1000, scheduler)).subscribe(subscriber);
+
+        subject.onNext(event(0));
+        scheduler.advanceTimeBy(999, TimeUnit.MILLISECONDS);
+        subscriber.assertNoValues();
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(subscriber.getOnNextEvents()).extracting(List::size).containsExactly(1);
+    }
+
+    @Test
+    public void test_batch_grows_until_requested() {
+        TestSubscriber<List<Event>> subscriber = new TestSubscriber<>(0);
+        BatchOperator<Event> operator = new BatchOperator<>(3, Long.MAX_VALUE, 1000, scheduler);
+        TestSubscriber<Event> upstreamRequests = new TestSubscriber<>();
+        Observable.range(0, 10)
+                .map(BatchOperatorTest::event)
+                .doOnNext(upstreamRequests::onNext)
+                .lift(operator)
+                .subscribe(subscriber);
+
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS);
+        subscriber.assertNoValues();
+        // Only one full batch is pulled from upstream until downstream requests
+        assertThat(upstreamRequests.getOnNextEvents()).hasSize(3);
+
+        subscriber.requestMore(1);
+        assertThat(subscriber.getOnNextEvents()).extracting(List::size).containsExactly(3);
+        subscriber.requestMore(Long.MAX_VALUE);
+        assertThat(subscriber.getOnNextEvents()).extracting(List::size).containsExactly(3, 3, 3, 1);
+        subscriber.assertCompleted();
+    }
+
+    @Test
+    public void test_error_is_propagated() {
+        TestSubscriber<List<Event>> subscriber = new TestSubscriber<>();
+        events(1).concatWith(Observable.error(new IllegalStateException()))
+                .lift(new BatchOperator<>(2, Long.MAX_VALUE, 1000, scheduler))
+                .subscribe(subscriber);
+        subscriber.assertError(IllegalStateException.class);
+    }
+
+    private static Observable<Event> events(int count) {
+        return Observable.range(0, count).map(BatchOperatorTest::event);
+    }
+
+    private static Event event(int i) {
+        return Codecs.BYTES.from(String.format("event-%04d", i));
+    }
+}
@@ -143,4 +143,42 @@ public class BooleanExpressionTest {
         assertThat(booleanExpression.eval(TEXT_TO_JSON.from("one two three four"))).isTrue();
         assertThat(booleanExpression.eval(TEXT_TO_JSON.from("one two three four five"))).isFalse();
     }
+
+    @Test
+    public void testHasTagAndExists() {
+        BooleanExpression booleanExpression = fromString("hasTag('apa') && !exists('missing')");
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("pelle").addTag("apa"))).isTrue();
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("pelle"))).isFalse();
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("pelle").addTag("apa").put("missing", 1))).isFalse();
+    }
+
+    @Test
+    public void testOperatorPrecedenceAndComparisons() {
+        BooleanExpression booleanExpression = fromString("({code} >= 500 || {code} == 404) && '{method}' !== 'HEAD'");
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("a").put("code", 503).put("method", "GET"))).isTrue();
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("a").put("code", 404).put("method", "GET"))).isTrue();
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("a").put("code", 404).put("method", "HEAD"))).isFalse();
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("a").put("code", 200).put("method", "GET"))).isFalse();
+    }
+
+    @Test
+    public void testCompiledAndJavaScriptAgree() {
+        String expression = "'{message}'.toLowerCase().startsWith('error') && {code} != 2";
+        BooleanExpression compiled = fromString(expression);
+        BooleanExpression javaScript = BooleanExpression.fromJavaScript(expression);
+        assertThat(compiled).isInstanceOf(BooleanExpression.BooleanCompiledExpression.class);
+        for (String message : new String[] {"ERROR x", "WARN x"}) {
+            for (int code : new int[] {1, 2}) {
+                assertThat(compiled.eval(TEXT_TO_JSON.from(message).put("code", code)))
+                        .isEqualTo(javaScript.eval(TEXT_TO_JSON.from(message).put("code", code)));
+            }
+        }
+    }
+
+    @Test
+    public void testUnsupportedExpressionFallsBackToJavaScript() {
+        BooleanExpression booleanExpression = fromString("/^ERROR/.test('{message}')");
+        assertThat(booleanExpression).isInstanceOf(BooleanExpression.BooleanJavaScriptExpression.class);
+        assertThat(booleanExpression.eval(TEXT_TO_JSON.from("ERROR Nullpointer"))).isTrue();
+    }
 }
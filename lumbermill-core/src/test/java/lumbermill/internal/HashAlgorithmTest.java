@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashAlgorithmTest {
+
+    @Test
+    public void test_xxhash64_reference_values() {
+        assertThat(xxhash64("")).isEqualTo(0xEF46DB3751D8E999L);
+        assertThat(xxhash64("a")).isEqualTo(0xD24EC4F1A98C6E5BL);
+        assertThat(xxhash64("abc")).isEqualTo(0x44BC2CF5AD770999L);
+        assertThat(xxhash64("Nobody inspects the spammish repetition")).isEqualTo(0xFBCEA83C8A378BF1L);
+    }
+
+    @Test
+    public void test_chunked_writes_give_same_hash() {
+        Random random = new Random(1);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            for (int length : new int[] {0, 7, 31, 32, 33, 100, 1000}) {
+                byte[] bytes = new byte[length];
+                random.nextBytes(bytes);
+                HashAlgorithm.Sink whole = algorithm.newSink();
+                whole.write(bytes, 0, length);
+                HashAlgorithm.Sink chunked = algorithm.newSink();
+                int offset = 0;
+                while (offset < length) {
+                    int chunk = Math.min(length - offset, random.nextInt(40));
+                    if (chunk == 1) {
+                        chunked.write(bytes[offset]);
+                    } else {
+                        chunked.write(bytes, offset, chunk);
+                    }
+                    offset += chunk;
+                }
+                assertThat(chunked.hash()).as(algorithm + " " + length).isEqualTo(whole.hash());
+            }
+        }
+    }
+
+    @Test
+    public void test_xxhash64_canonical_hex() {
+        assertThat(HashAlgorithm.XXHASH64.newSink().hash().toString()).isEqualTo("ef46db3751d8e999");
+    }
+
+    @Test
+    public void test_same_as_guava() {
+        byte[] bytes = "Hello".getBytes(StandardCharsets.UTF_8);
+        HashAlgorithm.Sink sink = HashAlgorithm.MURMUR3_128.newSink();
+        sink.write(bytes, 0, bytes.length);
+        assertThat(sink.hash()).isEqualTo(Hashing.murmur3_128().hashBytes(bytes));
+    }
+
+    @Test
+    public void test_names() {
+        assertThat(HashAlgorithm.of("murmur3_128")).isEqualTo(HashAlgorithm.MURMUR3_128);
+        assertThat(HashAlgorithm.of("sipHash24")).isEqualTo(HashAlgorithm.SIPHASH24);
+        assertThat(HashAlgorithm.of("xxhash64")).isEqualTo(HashAlgorithm.XXHASH64);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_unknown_name_fails() {
+        HashAlgorithm.of("crc32");
+    }
+
+    private static long xxhash64(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        HashAlgorithm.Sink sink = HashAlgorithm.XXHASH64.newSink();
+        sink.write(bytes, 0, bytes.length);
+        return Longs.fromByteArray(sink.hash().asBytes());
+    }
+}
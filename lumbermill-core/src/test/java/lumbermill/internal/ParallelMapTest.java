@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import org.junit.Test;
+import rx.Observable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ParallelMapTest {
+
+    private static final List<Integer> NUMBERS = IntStream.range(0, 200).boxed().collect(Collectors.toList());
+
+    @Test
+    public void test_results_are_returned_in_order() {
+        ParallelMap<Integer, Integer> parallelMap = ParallelMap.of(MapWrap.of(Collections.singletonMap("parallelism", 4)),
+                i -> {
+                    sleepRandom();
+                    return i * 2;
+                });
+        assertThat(parallelMap.apply(NUMBERS))
+                .isEqualTo(NUMBERS.stream().map(i -> i * 2).collect(Collectors.toList()));
+        assertThat(parallelMap.apply(Observable.from(NUMBERS)).toList().toBlocking().single())
+                .isEqualTo(NUMBERS.stream().map(i -> i * 2).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test_unordered_returns_all_results() {
+        ParallelMap<Integer, Integer> parallelMap = ParallelMap.of(MapWrap.of(Collections.singletonMap("ordered", false)),
+                i -> {
+                    sleepRandom();
+                    return i;
+                });
+        assertThat(parallelMap.apply(NUMBERS)).containsOnlyElementsOf(NUMBERS).hasSize(NUMBERS.size());
+        assertThat(parallelMap.apply(Observable.from(NUMBERS)).toList().toBlocking().single())
+                .containsOnlyElementsOf(NUMBERS).hasSize(NUMBERS.size());
+    }
+
+    @Test
+    public void test_never_more_than_parallelism_in_flight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger max = new AtomicInteger();
+        ParallelMap<Integer, Integer> parallelMap = ParallelMap.of(MapWrap.of(Collections.singletonMap("parallelism", 2)),
+                i -> {
+                    max.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    sleepRandom();
+                    inFlight.decrementAndGet();
+                    return i;
+                });
+        parallelMap.apply(Observable.from(NUMBERS)).toBlocking().last();
+        assertThat(max.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test
+    public void test_exception_is_propagated() {
+        ParallelMap<Integer, Integer> parallelMap = ParallelMap.of(i -> {
+            if (i == 100) {
+                throw new IllegalArgumentException("boom");
+            }
+            return i;
+        });
+        try {
+            parallelMap.apply(NUMBERS);
+            fail("Expected exception");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).isEqualTo("boom");
+        }
+    }
+
+    @Test
+    public void test_parallelize_returns_transformed_events() {
+        List<JsonEvent> events = asList(Codecs.TEXT_TO_JSON.from("a"), Codecs.TEXT_TO_JSON.from("b"));
+        List<JsonEvent> result = Observable.just(events)
+                .flatMap(Core.<JsonEvent, JsonEvent>parallelize(e -> Codecs.TEXT_TO_JSON.from(e.valueAsString("message") + "!")))
+                .toBlocking().single();
+        assertThat(result).extracting(e -> e.valueAsString("message")).containsExactly("a!", "b!");
+    }
+
+    private static void sleepRandom() {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.Event;
+import org.junit.Test;
+import rx.Observable;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class StageMetricsTest {
+
+    @Test
+    public void test_histogram_percentiles_are_within_precision() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.count()).isEqualTo(100_000);
+        assertThat((double) snapshot.max()).isCloseTo(100_000_000, within(100_000_000 / 64.0));
+        assertThat(snapshot.mean()).isCloseTo(50_000_500, within(50_000_500 / 64.0));
+        assertThat((double) snapshot.percentile(50)).isCloseTo(50_000_000, within(50_000_000 / 64.0));
+        assertThat((double) snapshot.percentile(99)).isCloseTo(99_000_000, within(99_000_000 / 64.0));
+        assertThat(snapshot.percentile(100)).isEqualTo(snapshot.max());
+    }
+
+    @Test
+    public void test_histogram_bucket_boundaries() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() & Long.MAX_VALUE) >>> random.nextInt(63);
+            int index = Histogram.indexOf(value);
+            assertThat(Histogram.highestValueOf(index)).isGreaterThanOrEqualTo(value);
+            assertThat(Histogram.lowestValueOf(index)).isLessThanOrEqualTo(value);
+            if (index > 0) {
+                assertThat(Histogram.highestValueOf(index - 1)).isEqualTo(Histogram.lowestValueOf(index) - 1);
+            }
+        }
+        assertThat(Histogram.highestValueOf(Histogram.indexOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void test_counts_events_and_buffers() {
+        StageMetrics single = new StageMetrics("single");
+        StageMetrics buffered = new StageMetrics("buffered");
+
+        Observable.range(0, 10)
+                .<Event>map(i -> Codecs.TEXT_TO_JSON.from("event " + i))
+                .flatMap(single.instrument(e -> Observable.just(e)))
+                .buffer(4)
+                .flatMap(buffered.instrument((List<Event> events) -> Observable.just(events.subList(0, 1))))
+                .toBlocking().last();
+
+        StageMetrics.Snapshot snapshot = single.snapshot();
+        assertThat(asList(snapshot.in(), snapshot.out(), snapshot.calls(), snapshot.errors())).containsExactly(10L, 10L, 10L, 0L);
+        snapshot = buffered.snapshot();
+        assertThat(asList(snapshot.in(), snapshot.out(), snapshot.calls())).containsExactly(10L, 3L, 3L);
+        assertThat(snapshot.percentile(99, TimeUnit.NANOSECONDS)).isGreaterThan(0);
+        assertThat(snapshot.toJsonEvent().valueAsString("stage")).isEqualTo("buffered");
+    }
+
+    @Test
+    public void test_counts_errors() {
+        StageMetrics stage = new StageMetrics("failing");
+        Observable.just(Codecs.TEXT_TO_JSON.from("event"))
+                .flatMap(stage.instrument(e -> Observable.<Event>error(new IllegalStateException())))
+                .onErrorResumeNext(Observable.empty())
+                .subscribe();
+        assertThat(stage.snapshot().errors()).isEqualTo(1);
+        assertThat(stage.snapshot().out()).isEqualTo(0);
+    }
+}
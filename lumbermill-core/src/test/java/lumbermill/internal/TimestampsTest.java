@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal;
+
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimestampsTest {
+
+    @After
+    public void reset() {
+        Timestamps.useSystemClock();
+    }
+
+    @Test
+    public void test_fixed_clock_is_used_by_codecs_and_stages() {
+        Timestamps.useClock(Clock.fixed(Instant.parse("2016-06-15T13:26:52.480Z"), ZoneId.of("Europe/Stockholm")));
+        assertThat(Timestamps.now()).isEqualTo("2016-06-15T15:26:52.48+02:00");
+        assertThat(Timestamps.today()).isEqualTo(LocalDate.of(2016, 6, 15));
+        assertThat(Codecs.TEXT_TO_JSON.from("hello").valueAsString("@timestamp")).isEqualTo("2016-06-15T15:26:52.48+02:00");
+        JsonEvent event = Core.timestampNow().call(new JsonEvent()).toBlocking().single();
+        assertThat(event.valueAsString("@timestamp")).isEqualTo("2016-06-15T15:26:52.48+02:00");
+    }
+
+    @Test
+    public void test_same_as_iso_offset_date_time() {
+        IsoTimestampFormat format = new IsoTimestampFormat();
+        Random random = new Random(1);
+        long millis = Instant.parse("2016-03-27T00:00:00Z").toEpochMilli();
+        for (ZoneId zone : new ZoneId[] {ZoneId.of("UTC"), ZoneId.of("Europe/Stockholm"), ZoneId.of("Asia/Kolkata")}) {
+            for (int i = 0; i < 10000; i++) {
+                millis += random.nextInt(3000);
+                ZonedDateTime date = Instant.ofEpochMilli(millis).atZone(zone);
+                String expected = DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(date);
+                assertThat(format.format(millis, zone)).isEqualTo(expected);
+                assertThat(format.format(date)).isEqualTo(expected);
+            }
+        }
+        assertThat(format.format(-1, ZoneId.of("UTC"))).isEqualTo("1969-12-31T23:59:59.999Z");
+    }
+}
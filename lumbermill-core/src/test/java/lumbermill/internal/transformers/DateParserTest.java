@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DateParserTest {
+
+    private static final ZoneId UTC = ZoneId.of("UTC");
+
+    @Test
+    public void test_iso8601() {
+        DateParser parser = DateParser.create(UTC, DateParser.ISO8601);
+        assertThat(format(parser, "2016-06-15T13:26:52.485Z")).isEqualTo("2016-06-15T13:26:52.485Z");
+        assertThat(format(parser, "2016-06-15T13:26:52,485123+02:00")).isEqualTo("2016-06-15T13:26:52.485123+02:00");
+        assertThat(format(parser, "2016-06-15 13:26:52-0330")).isEqualTo("2016-06-15T13:26:52-03:30");
+        assertThat(format(parser, "2016-06-15T13:26+01")).isEqualTo("2016-06-15T13:26:00+01:00");
+        assertThat(format(parser, "2016-06-15")).isEqualTo("2016-06-15T00:00:00Z");
+        assertThat(parser.parse("2016-02-30T13:26:52Z")).isNull();
+        assertThat(parser.parse("2016-06-15T25:26:52Z")).isNull();
+        assertThat(parser.parse("2016-06-15T13:26:52+0")).isNull();
+        assertThat(parser.parse("2016-06-15T13:26:52.Z")).isNull();
+        assertThat(parser.parse("15/06/2016")).isNull();
+    }
+
+    @Test
+    public void test_unix() {
+        DateParser parser = DateParser.create(UTC, DateParser.UNIX, DateParser.UNIX_MS);
+        assertThat(format(parser, "1466001612")).isEqualTo("2016-06-15T14:40:12Z");
+        assertThat(format(parser, "1466001612.5")).isEqualTo("2016-06-15T14:40:12.5Z");
+        assertThat(format(parser, "1466001612485")).isEqualTo("2016-06-15T14:40:12.485Z");
+        assertThat(parser.parse("1466001612x")).isNull();
+        assertThat(parser.parse("-1")).isNull();
+    }
+
+    @Test
+    public void test_patterns_use_parsed_offset_or_zone() {
+        DateParser parser = DateParser.create(ZoneId.of("Europe/Stockholm"),
+                "dd/MMM/yyyy:HH:mm:ss Z", "yyyy-MM-dd HH:mm:ss.SSS", "yyyy-MM-dd HH:mm:ss VV");
+        assertThat(format(parser, "10/Oct/2000:13:55:36 -0700")).isEqualTo("2000-10-10T13:55:36-07:00");
+        assertThat(format(parser, "2016-01-01 22:00:00.120")).isEqualTo("2016-01-01T22:00:00.12+01:00");
+        assertThat(format(parser, "2016-07-01 22:00:00 America/New_York")).isEqualTo("2016-07-01T22:00:00-04:00");
+        assertThat(parser.parse("2016-01-01 22:00:00")).isNull();
+        assertThat(parser.parse("2016-13-01 22:00:00.120")).isNull();
+    }
+
+    @Test
+    public void test_patterns_resolved_by_formatter() {
+        DateParser parser = DateParser.create(UTC, "yyyy-MM-dd hh:mm a", "yyyy-DDD");
+        assertThat(format(parser, "2016-01-01 10:15 PM")).isEqualTo("2016-01-01T22:15:00Z");
+        assertThat(format(parser, "2016-032")).isEqualTo("2016-02-01T00:00:00Z");
+        assertThat(parser.parse("2016-01-01 13:15 PM")).isNull();
+    }
+
+    @Test
+    public void test_last_matching_format_is_tried_first() {
+        DateParser parser = DateParser.create(UTC, DateParser.UNIX, DateParser.ISO8601);
+        assertThat(format(parser, "2016-06-15T13:26:52Z")).isEqualTo("2016-06-15T13:26:52Z");
+        assertThat(format(parser, "2016-06-15T13:26:53Z")).isEqualTo("2016-06-15T13:26:53Z");
+        assertThat(format(parser, "1466001612")).isEqualTo("2016-06-15T14:40:12Z");
+    }
+
+    @Test
+    public void test_format_same_as_iso_offset_date_time() {
+        DateParser parser = DateParser.create(UTC, DateParser.ISO8601);
+        ZonedDateTime date = ZonedDateTime.parse("2016-06-15T13:26:52.000100+05:30");
+        for (int i = 0; i < 3; i++) {
+            assertThat(parser.format(date)).isEqualTo("2016-06-15T13:26:52.0001+05:30");
+            assertThat(parser.format(date.withNano(0))).isEqualTo("2016-06-15T13:26:52+05:30");
+            assertThat(parser.format(date.plusSeconds(1))).isEqualTo("2016-06-15T13:26:53.0001+05:30");
+        }
+        assertThat(parser.format(date.withYear(12016))).isEqualTo("+12016-06-15T13:26:52.0001+05:30");
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_no_formats_fails() {
+        DateParser.create(UTC);
+    }
+
+    private static String format(DateParser parser, String text) {
+        ZonedDateTime date = parser.parse(text);
+        assertThat(date).as(text).isNotNull();
+        return parser.format(date);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DissectTest {
+
+    private static final String APACHE = "127.0.0.1 - frank [10/Oct/2000:13:55:36 -0700] \"GET /apache_pb.gif HTTP/1.0\" 200 2326";
+
+    @Test
+    public void test_delimited_fields_and_types() {
+        ObjectNode target = dissect("%{clientip} %{ident} %{auth} [%{timestamp}] \"%{verb} %{request} HTTP/%{httpversion}\" %{status:int} %{bytes:long}",
+                APACHE);
+        assertThat(target.get("clientip").asText()).isEqualTo("127.0.0.1");
+        assertThat(target.get("auth").asText()).isEqualTo("frank");
+        assertThat(target.get("timestamp").asText()).isEqualTo("10/Oct/2000:13:55:36 -0700");
+        assertThat(target.get("request").asText()).isEqualTo("/apache_pb.gif");
+        assertThat(target.get("httpversion").asText()).isEqualTo("1.0");
+        assertThat(target.get("status").isInt()).isTrue();
+        assertThat(target.get("bytes").isLong()).isTrue();
+    }
+
+    @Test
+    public void test_prefix_suffix_and_skip() {
+        ObjectNode target = dissect("<%{?pri}>%{} %{host}: %{message}.", "<34>2016-10-11T12:00:01Z server: something happened.");
+        assertThat(target.get("host").asText()).isEqualTo("server");
+        assertThat(target.get("message").asText()).isEqualTo("something happened");
+        assertThat(target.has("pri")).isFalse();
+        assertThat(target.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void test_append_with_order() {
+        ObjectNode target = dissect("%{+ts/2} %{+ts/1} %{level}", "12:00:01 2016-10-11 INFO");
+        assertThat(target.get("ts").asText()).isEqualTo("2016-10-11 12:00:01");
+    }
+
+    @Test
+    public void test_reference_and_right_padding() {
+        ObjectNode target = dissect("%{level->} %{*key}=%{&key:int}", "INFO     count=42");
+        assertThat(target.get("level").asText()).isEqualTo("INFO");
+        assertThat(target.get("count").intValue()).isEqualTo(42);
+    }
+
+    @Test
+    public void test_failed_conversion_keeps_string() {
+        ObjectNode target = dissect("%{status} %{bytes:int}", "200 -");
+        assertThat(target.get("bytes").asText()).isEqualTo("-");
+        assertThat(target.has("bytes_dissectfailure")).isTrue();
+    }
+
+    @Test
+    public void test_missing_delimiter_does_not_modify_target() {
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+        assertThat(Dissect.compile("%{a} [%{b}]", " ").match("one two", target)).isFalse();
+        assertThat(Dissect.compile("[%{a}]", " ").match("one]", target)).isFalse();
+        assertThat(target.size()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_keys_without_delimiter_fails() {
+        Dissect.compile("%{a}%{b}", " ");
+    }
+
+    private static ObjectNode dissect(String pattern, String value) {
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+        assertThat(Dissect.compile(pattern, " ").match(value, target)).isTrue();
+        return target;
+    }
+}
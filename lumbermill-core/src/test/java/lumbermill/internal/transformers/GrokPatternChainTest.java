@@ -0,0 +1,218 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lumbermill.Core;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.MapWrap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("unchecked")
+public class GrokPatternChainTest {
+
+    private static final String JAVA = "%{JAVACLASS:class}: %{GREEDYDATA:text}";
+    private static final String LAMBDA = "%{AWS_LAMBDA_REQUEST_REPORT}";
+    private static final String PATHOLOGICAL = "%{EVIL:evil=(a+)+b}";
+    private static final String REPORT = "REPORT RequestId: 1f6ac1f8-36a6-11e6-a2e8-4d6b2f6b3e8a\tDuration: 1.58 ms\t" +
+            "Billed Duration: 100 ms \tMemory Size: 128 MB\tMax Memory Used: 35 MB";
+
+    @Test
+    public void test_first_matching_pattern_is_used() {
+        GrokPatternChain chain = chain(false, false, "%{NUMBER:number}", "%{WORD:word}");
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+
+        assertThat(chain.match("hello", target).expression()).isEqualTo("%{WORD:word}");
+        assertThat(target.get("word").asText()).isEqualTo("hello");
+        assertThat(target.has("number")).isFalse();
+        assertThat(chain.match("???", target)).isNull();
+
+        List<GrokPatternChain.Counter> counters = chain.counters();
+        assertThat(counters.get(0).misses()).isEqualTo(2);
+        assertThat(counters.get(1).matches()).isEqualTo(1);
+        assertThat(counters.get(1).misses()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_patterns_are_reordered_by_hit_count() {
+        GrokPatternChain chain = chain(true, false, JAVA, LAMBDA);
+        for (int i = 0; i < GrokPatternChain.REORDER_INTERVAL; i++) {
+            chain.match(i % 4 == 0 ? "java.lang.IllegalStateException: failed" : REPORT,
+                    JsonNodeFactory.instance.objectNode());
+        }
+        assertThat(chain.order()).extracting("expression").containsExactly(LAMBDA, JAVA);
+
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+        assertThat(chain.match(REPORT, target).expression()).isEqualTo(LAMBDA);
+        assertThat(chain.counters().get(1).matches()).isEqualTo(GrokPatternChain.REORDER_INTERVAL * 3 / 4 + 1);
+    }
+
+    @Test
+    public void test_overlapping_pattern_is_not_moved_ahead() {
+        GrokPatternChain chain = chain(true, false, "%{WORD:word} %{NUMBER:number}", "%{WORD:word}");
+        for (int i = 0; i < GrokPatternChain.REORDER_INTERVAL * 2; i++) {
+            chain.match(i % 4 == 0 ? "hello 42" : "hello", JsonNodeFactory.instance.objectNode());
+        }
+        assertThat(chain.order()).extracting("expression")
+                .containsExactly("%{WORD:word} %{NUMBER:number}", "%{WORD:word}");
+
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+        chain.match("hello 42", target);
+        assertThat(target.get("number").asText()).isEqualTo("42");
+    }
+
+    @Test
+    public void test_overlap_in_samples_of_moved_pattern_restores_order() {
+        String specific = "^%{WORD:w} %{INT:n}$";
+        String generic = "^foo%{GREEDYDATA:rest}";
+        GrokPatternChain chain = chain(true, false, specific, generic);
+        for (int i = 0; i < GrokPatternChain.REORDER_INTERVAL * 4; i++) {
+            chain.match(i % 10 == 0 ? "bar " + i : "foo zzz " + i, JsonNodeFactory.instance.objectNode());
+        }
+        assertThat(chain.order()).extracting("expression").containsExactly(generic, specific);
+
+        for (int i = 0; i < GrokPatternChain.REORDER_INTERVAL; i++) {
+            chain.match("foo " + i, JsonNodeFactory.instance.objectNode());
+        }
+        assertThat(chain.order()).extracting("expression").containsExactly(specific, generic);
+
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+        chain.match("foo 5", target);
+        assertThat(target.get("n").asText()).isEqualTo("5");
+        assertThat(target.has("rest")).isFalse();
+    }
+
+    @Test
+    public void test_grok_stage_keeps_configured_order_by_default() {
+        Grok<JsonEvent> grok = (Grok<JsonEvent>) Core.grok.parse(MapWrap.of("field", "message",
+                "pattern", Arrays.asList("%{NUMBER:number}", "%{WORD:word}")).toMap());
+        for (int i = 0; i < GrokPatternChain.REORDER_INTERVAL; i++) {
+            grok.parse(Codecs.TEXT_TO_JSON.from("hello"));
+        }
+        assertThat(grok.patterns().order()).extracting("expression")
+                .containsExactly("%{NUMBER:number}", "%{WORD:word}");
+    }
+
+    @Test
+    public void test_exceeded_budget_on_sample_keeps_order() {
+        String anchored = "%{ANCHORED:anchored=^a+!}";
+        GrokPatternChain chain = new GrokPatternChain(Arrays.asList(
+                GrokFactory.compile(anchored, Collections.emptyMap()),
+                GrokFactory.compile(PATHOLOGICAL, Collections.emptyMap())),
+                true, true, MatchBudget.of(100_000, 0, TimeUnit.SECONDS));
+        for (int i = 0; i < GrokPatternChain.REORDER_INTERVAL; i++) {
+            chain.match(i % 4 == 0 ? "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!" : "aaab",
+                    JsonNodeFactory.instance.objectNode());
+        }
+        assertThat(chain.order()).extracting("expression").containsExactly(anchored, PATHOLOGICAL);
+        assertThat(chain.counters().get(1).aborted()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_configured_order_is_kept_without_reorder() {
+        GrokPatternChain chain = chain(false, false, JAVA, LAMBDA);
+        for (int i = 0; i < GrokPatternChain.REORDER_INTERVAL; i++) {
+            chain.match(REPORT, JsonNodeFactory.instance.objectNode());
+        }
+        assertThat(chain.order()).extracting("expression").containsExactly(JAVA, LAMBDA);
+    }
+
+    @Test
+    public void test_prefilter_skips_regex() {
+        GrokPatternChain chain = chain(false, true, LAMBDA, JAVA);
+        assertThat(chain.match("java.lang.IllegalStateException: failed", JsonNodeFactory.instance.objectNode())
+                .expression()).isEqualTo(JAVA);
+        assertThat(chain.counters().get(0).skipped()).isEqualTo(1);
+        assertThat(chain.counters().get(0).misses()).isEqualTo(0);
+    }
+
+    @Test
+    public void test_exceeded_step_budget_tags_event() {
+        Grok<JsonEvent> grok = GrokFactory.create("message", Collections.singletonList(PATHOLOGICAL), true,
+                GrokFactory.ERROR_TAG, Collections.emptyMap(), false, true, MatchBudget.of(100_000, 0, TimeUnit.SECONDS));
+
+        JsonEvent event = grok.parse(Codecs.TEXT_TO_JSON.from("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!"))
+                .toBlocking().single();
+        assertThat(event.hasTag(GrokFactory.TIMEOUT_TAG)).isTrue();
+        assertThat(event.has("evil")).isFalse();
+        assertThat(grok.patterns().counters().get(0).aborted()).isEqualTo(1);
+
+        event = grok.parse(Codecs.TEXT_TO_JSON.from("aaab")).toBlocking().single();
+        assertThat(event.valueAsString("evil")).isEqualTo("aaab");
+        assertThat(event.hasTag(GrokFactory.TIMEOUT_TAG)).isFalse();
+    }
+
+    @Test
+    public void test_exceeded_time_budget_tags_event() {
+        Grok<JsonEvent> grok = GrokFactory.create("message", Collections.singletonList(PATHOLOGICAL), true,
+                GrokFactory.ERROR_TAG, Collections.emptyMap(), false, true, MatchBudget.of(0, 10, TimeUnit.MILLISECONDS));
+
+        JsonEvent event = grok.parse(Codecs.TEXT_TO_JSON.from("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!"))
+                .toBlocking().single();
+        assertThat(event.hasTag(GrokFactory.TIMEOUT_TAG)).isTrue();
+    }
+
+    @Test
+    public void test_required_literals() {
+        assertThat(RequiredLiteral.longestOf("REPORT RequestId: (?<id>\\S+)")).contains("REPORT RequestId: ");
+        assertThat(RequiredLiteral.longestOf("\\[(?<date>\\d+)\\] \"GET")).contains("] \"GET");
+        assertThat(RequiredLiteral.longestOf("abcd?ef")).contains("abc");
+        assertThat(RequiredLiteral.longestOf("x(?:abcdef)?y")).isEmpty();
+        assertThat(RequiredLiteral.longestOf("x(?:abcdef)+y")).contains("abcdef");
+        assertThat(RequiredLiteral.longestOf("abc|defgh")).isEmpty();
+        assertThat(RequiredLiteral.longestOf("(?=lookahead)[a-z]{0,3}")).isEmpty();
+        assertThat(RequiredLiteral.longestOf("(?i)literal")).isEmpty();
+        assertThat(RequiredLiteral.longestOf("[abc\\]def]+ghi")).contains("ghi");
+    }
+
+    @Test
+    public void test_required_literals_skip_complete_escapes() {
+        assertThat(RequiredLiteral.longestOf("ab\\x2Dcdef")).contains("cdef");
+        assertThat(RequiredLiteral.longestOf("ab\\x{2D}cdef")).contains("cdef");
+        assertThat(RequiredLiteral.longestOf("ab\\u002Dcdef")).contains("cdef");
+        assertThat(RequiredLiteral.longestOf("ab\\055cdef")).contains("cdef");
+        assertThat(RequiredLiteral.longestOf("ab\\0377cdef")).contains("cdef");
+        assertThat(RequiredLiteral.longestOf("ab\\cMcdef")).contains("cdef");
+        assertThat(RequiredLiteral.longestOf("(x)ab\\1234")).contains("ab");
+        assertThat(RequiredLiteral.longestOf("[\\x5D]+abc")).contains("abc");
+        assertThat(RequiredLiteral.longestOf("ab\\x2")).isEmpty();
+    }
+
+    @Test
+    public void test_prefilter_matches_escapes() {
+        for (String escape : Arrays.asList("\\x2D", "\\u002D", "\\055", "\\0055")) {
+            GrokPatternChain chain = chain(false, true, "%{DASHED:dashed=foo" + escape + "bar}");
+            assertThat(chain.match("foo-bar", JsonNodeFactory.instance.objectNode())).as(escape).isNotNull();
+        }
+        GrokPatternChain chain = chain(false, true, "%{CONTROL:control=foo\\cMbar}");
+        assertThat(chain.match("foo\rbar", JsonNodeFactory.instance.objectNode())).isNotNull();
+    }
+
+    private static GrokPatternChain chain(boolean reorder, boolean prefilter, String... patterns) {
+        return new GrokPatternChain(Arrays.stream(patterns)
+                .map(pattern -> GrokFactory.compile(pattern, Collections.emptyMap()))
+                .collect(Collectors.toList()), reorder, prefilter, MatchBudget.UNLIMITED);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GrokPatternTest {
+
+    @Test
+    public void test_types_are_converted() {
+        JsonEvent event = grok("%{WORD:word} %{NUMBER:int:int} %{NUMBER:long:long} %{NUMBER:float:float} %{WORD:bool:boolean}",
+                "hello 42 12345678901 0.5 true");
+        assertThat(event.unsafe().get("word").isTextual()).isTrue();
+        assertThat(event.unsafe().get("int").isInt()).isTrue();
+        assertThat(event.unsafe().get("long").isLong()).isTrue();
+        assertThat(event.unsafe().get("float").floatValue()).isEqualTo(0.5f);
+        assertThat(event.unsafe().get("bool").booleanValue()).isTrue();
+    }
+
+    @Test
+    public void test_failed_conversion_keeps_string() {
+        JsonEvent event = grok("%{NOTSPACE:bytes:int}", "-");
+        assertThat(event.valueAsString("bytes")).isEqualTo("-");
+        assertThat(event.has("bytes_grokfailure")).isTrue();
+    }
+
+    @Test
+    public void test_repeated_names_become_array_and_missing_groups_are_skipped() {
+        JsonEvent event = grok("%{WORD:word} %{WORD:word}(?: %{NUMBER:optional})?", "hello world");
+        assertThat(event.unsafe().get("word").size()).isEqualTo(2);
+        assertThat(event.has("optional")).isFalse();
+    }
+
+    @Test
+    public void test_no_match_tags_event() {
+        JsonEvent event = grok("%{NUMBER:number}", "hello");
+        assertThat(event.hasTag(GrokFactory.ERROR_TAG)).isTrue();
+    }
+
+    @Test
+    public void test_compiled_patterns_are_shared() {
+        assertThat(GrokFactory.compile("%{WORD:word}", Collections.emptyMap()))
+                .isSameAs(GrokFactory.compile("%{WORD:word}", Collections.emptyMap()));
+        assertThat(GrokFactory.compile("%{WORD:word}", Collections.singletonMap("WORD", "\\d+")))
+                .isNotSameAs(GrokFactory.compile("%{WORD:word}", Collections.emptyMap()));
+    }
+
+    @Test
+    public void test_custom_and_inline_patterns() {
+        JsonEvent event = (JsonEvent) GrokFactory.create("message", "%{MYAPP:level} %{ID:id:int=\\d+}", true,
+                GrokFactory.ERROR_TAG, Collections.singletonMap("MYAPP", "%{LOGLEVEL}"))
+                .parse(Codecs.TEXT_TO_JSON.from("WARN 42"))
+                .toBlocking().single();
+        assertThat(event.valueAsString("level")).isEqualTo("WARN");
+        assertThat(event.unsafe().get("id").intValue()).isEqualTo(42);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void test_unknown_pattern_fails() {
+        GrokFactory.compile("%{NO_SUCH_PATTERN:x}", Collections.emptyMap());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JsonEvent grok(String pattern, String message) {
+        return (JsonEvent) GrokFactory.create("message", pattern)
+                .parse(Codecs.TEXT_TO_JSON.from(message))
+                .toBlocking().single();
+    }
+}
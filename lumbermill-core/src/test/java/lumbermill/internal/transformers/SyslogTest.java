@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.transformers;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SyslogTest {
+
+    private static final Clock NOW = Clock.fixed(Instant.parse("2016-10-18T12:00:00Z"), ZoneId.of("UTC"));
+
+    @Test
+    public void test_rfc3164() {
+        ObjectNode target = parse("<34>Oct 11 22:14:15 mymachine su[230]: 'su root' failed for lonvick on /dev/pts/8");
+        assertThat(target.get("priority").intValue()).isEqualTo(34);
+        assertThat(target.get("facility").intValue()).isEqualTo(4);
+        assertThat(target.get("severity").intValue()).isEqualTo(2);
+        assertThat(target.get("facility_label").asText()).isEqualTo("security/authorization");
+        assertThat(target.get("severity_label").asText()).isEqualTo("Critical");
+        assertThat(target.get("timestamp").asText()).isEqualTo("Oct 11 22:14:15");
+        assertThat(target.get("@timestamp").asText()).isEqualTo("2016-10-11T22:14:15Z");
+        assertThat(target.get("logsource").asText()).isEqualTo("mymachine");
+        assertThat(target.get("program").asText()).isEqualTo("su");
+        assertThat(target.get("pid").asText()).isEqualTo("230");
+        assertThat(target.get("message").asText()).isEqualTo("'su root' failed for lonvick on /dev/pts/8");
+    }
+
+    @Test
+    public void test_rfc3164_without_priority_and_pid() {
+        ObjectNode target = parse("Jul  2 00:05:13 ip-10-119-13-144 kernel: eth0: link up");
+        assertThat(target.has("priority")).isFalse();
+        assertThat(target.get("timestamp").asText()).isEqualTo("Jul  2 00:05:13");
+        assertThat(target.get("@timestamp").asText()).isEqualTo("2016-07-02T00:05:13Z");
+        assertThat(target.get("program").asText()).isEqualTo("kernel");
+        assertThat(target.has("pid")).isFalse();
+        assertThat(target.get("message").asText()).isEqualTo("eth0: link up");
+
+        target = parse("Jul  2 00:05:13 host message without a tag");
+        assertThat(target.has("program")).isFalse();
+        assertThat(target.get("message").asText()).isEqualTo("message without a tag");
+    }
+
+    @Test
+    public void test_rfc3164_timestamps() {
+        Clock january = Clock.fixed(Instant.parse("2017-01-02T00:00:00Z"), ZoneId.of("Europe/Stockholm"));
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+        new Syslog(ZoneId.of("Europe/Stockholm"), january).parse("Dec 31 23:59:59 host app: bye", target);
+        assertThat(target.get("@timestamp").asText()).isEqualTo("2016-12-31T23:59:59+01:00");
+
+        target = parse("2016-10-11T22:14:15.003+02:00 host app: high precision");
+        assertThat(target.get("@timestamp").asText()).isEqualTo("2016-10-11T22:14:15.003+02:00");
+        assertThat(target.get("message").asText()).isEqualTo("high precision");
+    }
+
+    @Test
+    public void test_rfc5424() {
+        ObjectNode target = parse("<165>1 2003-10-11T22:14:15.003Z mymachine.example.com evntslog - ID47 " +
+                "[exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"][examplePriority@32473 class=\"high\"] " +
+                "\uFEFFAn application event log entry...");
+        assertThat(target.get("priority").intValue()).isEqualTo(165);
+        assertThat(target.get("facility_label").asText()).isEqualTo("local4");
+        assertThat(target.get("severity_label").asText()).isEqualTo("Notice");
+        assertThat(target.get("version").intValue()).isEqualTo(1);
+        assertThat(target.get("@timestamp").asText()).isEqualTo("2003-10-11T22:14:15.003Z");
+        assertThat(target.get("logsource").asText()).isEqualTo("mymachine.example.com");
+        assertThat(target.get("program").asText()).isEqualTo("evntslog");
+        assertThat(target.has("pid")).isFalse();
+        assertThat(target.get("msgid").asText()).isEqualTo("ID47");
+        assertThat(target.get("structured_data").get("exampleSDID@32473").get("eventID").asText()).isEqualTo("1011");
+        assertThat(target.get("structured_data").get("examplePriority@32473").get("class").asText()).isEqualTo("high");
+        assertThat(target.get("message").asText()).isEqualTo("An application event log entry...");
+    }
+
+    @Test
+    public void test_rfc5424_nil_values_and_escapes() {
+        ObjectNode target = parse("<34>1 - - - - - -");
+        assertThat(target.has("timestamp")).isFalse();
+        assertThat(target.has("logsource")).isFalse();
+        assertThat(target.has("structured_data")).isFalse();
+        assertThat(target.get("message").asText()).isEmpty();
+
+        target = parse("<34>1 2016-10-11T22:14:15+02:00 host app 42 - [id a=\"x\\\"y\\]z\\\\\" b=\"\"]");
+        assertThat(target.get("pid").asText()).isEqualTo("42");
+        assertThat(target.get("structured_data").get("id").get("a").asText()).isEqualTo("x\"y]z\\");
+        assertThat(target.get("structured_data").get("id").get("b").asText()).isEmpty();
+    }
+
+    @Test
+    public void test_invalid_lines_do_not_modify_target() {
+        Syslog syslog = new Syslog(ZoneId.of("UTC"), NOW);
+        for (String line : new String[] {
+                "",
+                "not syslog",
+                "<999>Oct 11 22:14:15 host app: too high priority",
+                "<34Oct 11 22:14:15 host app: no end of priority",
+                "Oct 11 25:14:15 host app: bad hour",
+                "Oct 11 22:14:15",
+                "<34>1 2016-10-11T22:14:15 host app - - - missing offset",
+                "<34>1 - host app - -",
+                "<34>1 - host app - - [id a=\"unterminated]",
+                "<34>1 - host app - - [id a=\"1\"]no space"}) {
+            ObjectNode target = JsonNodeFactory.instance.objectNode();
+            assertThat(syslog.parse(line, target)).as(line).isFalse();
+            assertThat(target.size()).as(line).isEqualTo(0);
+        }
+    }
+
+    private static ObjectNode parse(String line) {
+        ObjectNode target = JsonNodeFactory.instance.objectNode();
+        assertThat(new Syslog(ZoneId.of("UTC"), NOW).parse(line, target)).as(line).isTrue();
+        return target;
+    }
+}
@@ -20,66 +20,168 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import lumbermill.api.JsonEvent;
 import lumbermill.internal.Json;
 import lumbermill.internal.elasticsearch.ElasticSearchBulkResponse;
+import okio.Buffer;
+import okio.ByteString;
 import rx.Observable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 
 
 /**
- * <p>This result matches an Elasticsearch Bulk API response
+ * <p>This result matches an Elasticsearch Bulk API response, item n is the result of argument n.
+ *
+ * <p>The json is not parsed until it is used. After retries the items of the retried events are
+ * replaced with the items of the last attempt.
  */
 public class ElasticSearchBulkResponseEvent extends JsonEvent {
 
-    private final Map<JsonEvent, JsonEvent> eventAndResponse = new HashMap<>();
+    private final List<JsonEvent> events;
+
+    /**
+     * The response of a single attempt, items are read from it when merged with a retry
+     */
+    private final ElasticSearchBulkResponse response;
+
+    /**
+     * Items of all events when the response is merged from several attempts
+     */
+    private final ByteString[] items;
+
+    private final long took;
 
     public static ElasticSearchBulkResponseEvent of(ElasticSearchBulkResponse bulkResponse) {
-        return new ElasticSearchBulkResponseEvent(buildJsonResponse(bulkResponse.hasErrors(), bulkResponse.eventWithResponse),
-                bulkResponse.eventWithResponse);
+        return new ElasticSearchBulkResponseEvent(bulkResponse);
     }
 
     public static ElasticSearchBulkResponseEvent ofPostponed(List<JsonEvent> events) {
-        return new ElasticSearchBulkResponseEvent(buildPostponedJsonResponse(events), new HashMap<>());
+        return new ElasticSearchBulkResponseEvent(buildPostponedJsonResponse(events));
     }
 
     public static ElasticSearchBulkResponseEvent ofPostponed(ElasticSearchBulkRequestEvent requestEvent) {
-        return new ElasticSearchBulkResponseEvent(buildPostponedJsonResponse(requestEvent), new HashMap<>());
+        return new ElasticSearchBulkResponseEvent(buildPostponedJsonResponse(requestEvent));
     }
 
-
-    private ElasticSearchBulkResponseEvent(ObjectNode node, Map<JsonEvent, JsonEvent> eventAndResponse) {
+    private ElasticSearchBulkResponseEvent(ObjectNode node) {
         super(node);
-        this.eventAndResponse.putAll(eventAndResponse);
+        this.events = Collections.emptyList();
+        this.response = null;
+        this.items = null;
+        this.took = node.get("took").asLong();
     }
 
+    private ElasticSearchBulkResponseEvent(ElasticSearchBulkResponse response) {
+        super(response.body());
+        this.events = response.events();
+        this.response = response;
+        this.items = null;
+        this.took = response.took();
+    }
 
-    public ElasticSearchBulkResponseEvent nextAttempt(ElasticSearchBulkResponse elasticSearchBulkResponse) {
-        eventAndResponse.putAll(elasticSearchBulkResponse.eventWithResponse);
-        return new ElasticSearchBulkResponseEvent(buildJsonResponse(elasticSearchBulkResponse.hasErrors(), eventAndResponse),
-                eventAndResponse);
+    private ElasticSearchBulkResponseEvent(List<JsonEvent> events, ByteString[] items, boolean errors, long took) {
+        this(events, toJson(join(Arrays.asList(items)), errors, took), items, took);
     }
 
-    public Observable<JsonEvent> arguments() {
-        return Observable.from(eventAndResponse.keySet());
+    private ElasticSearchBulkResponseEvent(List<JsonEvent> events, ByteString json, ByteString[] items, long took) {
+        super(json);
+        this.events = events;
+        this.response = null;
+        this.items = items;
+        this.took = took;
     }
 
-    private static ObjectNode buildJsonResponse(boolean hasErrors, Map<JsonEvent, JsonEvent> eventAndResponse) {
-        ObjectNode node = Json.OBJECT_MAPPER.createObjectNode()
-                .put("errors", hasErrors)
-                .put("took", 1L);
-        node.putArray("items")
-                .addAll(
-                        eventAndResponse.values()
-                                .stream()
-                                .map(jsonEvent -> jsonEvent.copyNode())
-                                .collect(Collectors.toList()));
-        return node;
+    /**
+     * Combines the responses of a batch that was split into several bulk requests, in the order of the batch
+     */
+    public static ElasticSearchBulkResponseEvent merge(List<ElasticSearchBulkResponseEvent> parts) {
+        List<JsonEvent> events = new ArrayList<>();
+        List<ByteString> items = new ArrayList<>(parts.size());
+        boolean errors = false;
+        long took = 0;
+        for (ElasticSearchBulkResponseEvent part : parts) {
+            events.addAll(part.events);
+            if (!part.events.isEmpty()) {
+                items.add(part.itemsJson());
+            }
+            errors |= part.errors();
+            // The parts are sent concurrently
+            took = Math.max(took, part.took);
+        }
+        return new ElasticSearchBulkResponseEvent(events, toJson(join(items), errors, took), null, took);
+    }
+
+    private boolean errors() {
+        return response != null ? response.hasErrors() : node().get("errors").asBoolean();
+    }
+
+    /**
+     * All items without the enclosing array brackets
+     */
+    private ByteString itemsJson() {
+        if (items != null) {
+            return join(Arrays.asList(items));
+        }
+        if (response != null) {
+            return response.items();
+        }
+        List<ByteString> serialized = new ArrayList<>();
+        node().get("items").forEach(item -> serialized.add(ByteString.encodeUtf8(item.toString())));
+        return join(serialized);
+    }
+
+    /**
+     * Replaces the items of the retried events with the result of the retry
+     * @param positions - position of each retried event in this response
+     */
+    public ElasticSearchBulkResponseEvent nextAttempt(ElasticSearchBulkResponse retry, int[] positions) {
+        ByteString[] merged = items();
+        for (int i = 0; i < positions.length; i++) {
+            merged[positions[i]] = retry.item(i);
+        }
+        return new ElasticSearchBulkResponseEvent(events, merged, retry.hasErrors(), took + retry.took());
+    }
+
+    private ByteString[] items() {
+        if (items != null) {
+            return items.clone();
+        }
+        if (response == null) {
+            throw new IllegalStateException("A postponed or merged response cannot be retried");
+        }
+        ByteString[] result = new ByteString[events.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = response.item(i);
+        }
+        return result;
+    }
 
+    private static ByteString toJson(ByteString items, boolean errors, long took) {
+        return new Buffer()
+                .writeUtf8("{\"took\":").writeUtf8(Long.toString(took))
+                .writeUtf8(",\"errors\":").writeUtf8(Boolean.toString(errors))
+                .writeUtf8(",\"items\":[")
+                .write(items)
+                .writeUtf8("]}")
+                .readByteString();
     }
 
+    private static ByteString join(List<ByteString> items) {
+        Buffer buffer = new Buffer();
+        for (int i = 0; i < items.size(); i++) {
+            if (i > 0) {
+                buffer.writeByte(',');
+            }
+            buffer.write(items.get(i));
+        }
+        return buffer.readByteString();
+    }
+
+    public Observable<JsonEvent> arguments() {
+        return Observable.from(events);
+    }
 
     private static ObjectNode buildPostponedJsonResponse(ElasticSearchBulkRequestEvent requestEvent) {
         ObjectNode node = Json.OBJECT_MAPPER.createObjectNode()
@@ -118,28 +220,28 @@ public class ElasticSearchBulkResponseEvent extends JsonEvent {
       Below are used for test and debugging
      */
     public List<String> indexNames() {
-        ArrayNode array = (ArrayNode) super.jsonNode.get("items");
+        ArrayNode array = (ArrayNode) node().get("items");
         List<String> indices = new ArrayList<>();
         array.forEach(created -> indices.add(dataNode(created).get("_index").asText()));
         return indices;
     }
 
     public List<String> types() {
-        ArrayNode array = (ArrayNode) super.jsonNode.get("items");
+        ArrayNode array = (ArrayNode) node().get("items");
         List<String> indices = new ArrayList<>();
         array.forEach(created -> indices.add(created.fieldNames().next()));
         return indices;
     }
 
     public List<String> versions() {
-        ArrayNode array = (ArrayNode) super.jsonNode.get("items");
+        ArrayNode array = (ArrayNode) node().get("items");
         List<String> indices = new ArrayList<>();
         array.forEach(created -> indices.add(dataNode(created).get("_version").asText()));
         return indices;
     }
 
     public int count() {
-        return super.jsonNode.get("items").size();
+        return node().get("items").size();
     }
 
     /**
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.elasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of bulk requests in flight with additive increase / multiplicative decrease.
+ *
+ * Each successful request increases the limit by 1/limit, roughly one more request per round trip.
+ * A throttled request (429, es_rejected_execution_exception), an io failure or a request slower
+ * than maxLatency halves the limit. The limit is only decreased once per round trip, requests that
+ * were started before the last decrease does not decrease it again.
+ *
+ * Requests above the limit are queued. When the queue is full, new requests blocks the caller until
+ * there is room so that a slow cluster pushes back on the pipeline instead of filling the heap.
+ * Retries are never blocked since they are started from the http client threads.
+ */
+public final class AimdConcurrencyLimiter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AimdConcurrencyLimiter.class);
+
+    private static final double BACKOFF_RATIO = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long maxLatencyNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseNanos = System.nanoTime();
+
+    private final LongAdder overloaded = new LongAdder();
+
+    public AimdConcurrencyLimiter(int initialLimit, int maxLimit, int maxQueued, long maxLatency, TimeUnit unit) {
+        if (maxLimit < 1 || initialLimit < 1 || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid concurrency limits, expected 1 <= initial <= max but was initial "
+                    + initialLimit + ", max " + maxLimit);
+        }
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("Invalid max_queued, expected at least 1 but was " + maxQueued);
+        }
+        this.minLimit = 1;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.maxLatencyNanos = unit.toNanos(maxLatency);
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Runs the request now if there is room for it, otherwise it is queued and run when another request
+     * completes. The request must call onComplete() when it is done.
+     *
+     * @param mayBlock - true if the caller can be blocked while the queue is full
+     */
+    public void submit(Runnable request, boolean mayBlock) {
+        lock.lock();
+        try {
+            while (mayBlock && queue.size() >= maxQueued) {
+                notFull.awaitUninterruptibly();
+            }
+            if (inFlight >= (int) limit) {
+                queue.add(request);
+                return;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+        request.run();
+    }
+
+    /**
+     * Records the outcome of a request and starts queued requests if the limit allows it.
+     *
+     * @param startNanos - System.nanoTime() when the request was started
+     * @param overloaded - true if the request failed or the cluster rejected the request or any of its items due to load
+     */
+    public void onComplete(long startNanos, boolean overloaded) {
+        long now = System.nanoTime();
+        List<Runnable> toStart = new ArrayList<>();
+        lock.lock();
+        try {
+            inFlight--;
+            if (overloaded || now - startNanos > maxLatencyNanos) {
+                this.overloaded.increment();
+                if (startNanos - lastDecreaseNanos > 0) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    lastDecreaseNanos = now;
+                    LOGGER.debug("Concurrency limit decreased to {}, overloaded: {}", (int) limit, overloaded);
+                }
+            } else {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            while (inFlight < (int) limit && !queue.isEmpty()) {
+                inFlight++;
+                toStart.add(queue.poll());
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        toStart.forEach(Runnable::run);
+    }
+
+    /**
+     * Current limit of requests in flight
+     */
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of requests waiting for the limit
+     */
+    public int queued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Requests slower than this decreases the limit
+     */
+    public long maxLatency(TimeUnit unit) {
+        return unit.convert(maxLatencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Number of requests that were throttled, failed or slower than max latency
+     */
+    public long overloaded() {
+        return overloaded.sum();
+    }
+}
@@ -14,90 +14,263 @@
  */
 package lumbermill.internal.elasticsearch;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.squareup.okhttp.Response;
 import lumbermill.api.JsonEvent;
 import lumbermill.internal.Json;
+import okio.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-
 
+/**
+ * Bulk API response correlated by position with the events of the request, item n is the result
+ * of event n.
+ *
+ * The response is read with a streaming parser that stops at "errors": false, which is the common
+ * case, so the items are never parsed then. Otherwise the items are walked and the failures are recorded
+ * by position together with where each item is in the response, so that it can be copied as is.
+ */
 public class ElasticSearchBulkResponse {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticSearchBulkResponse.class);
-    private final JsonNode responseContents;
 
-    public final Map<JsonEvent, JsonEvent> eventWithResponse = new HashMap<>();
-    public final List<JsonEvent> retryableEvents = new ArrayList<>();
+    private static final int[] NONE = new int[0];
+
+    private final List<JsonEvent> events;
+    private final ByteString body;
 
-    private ElasticSearchBulkResponse(JsonNode contents, RequestSigner.SignableRequest request) {
-        this.responseContents = contents;
-        getRetryableItems(request);
+    private long took;
+    private boolean errors;
+    private boolean throttled;
+
+    /**
+     * Null until the items has been walked
+     */
+    private int[] itemStart;
+    private int[] itemEnd;
+    private int[] retryable = NONE;
+
+    private ElasticSearchBulkResponse(List<JsonEvent> events, ByteString body) {
+        this.events = events;
+        this.body = body;
     }
 
     public static ElasticSearchBulkResponse parse(RequestSigner.SignableRequest request, Response response) {
         try {
-            return new ElasticSearchBulkResponse(
-                    Json.OBJECT_MAPPER.readValue(response.body().source().readByteString().utf8(),JsonNode.class),
-                    request);
+            return parse(request.original(), ByteString.of(response.body().bytes()));
         } catch (IOException e) {
             throw new IllegalStateException(e);
         }
     }
 
-    public boolean hasErrors() {
-        return responseContents.get("errors").asBoolean();
+    static ElasticSearchBulkResponse parse(List<JsonEvent> events, ByteString body) {
+        ElasticSearchBulkResponse response = new ElasticSearchBulkResponse(events, body);
+        try {
+            response.parse();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return response;
     }
 
-    List<JsonEvent> getRetryableItems(RequestSigner.SignableRequest request) {
+    private void parse() throws IOException {
+        try (JsonParser parser = Json.OBJECT_MAPPER.getFactory().createParser(Json.inputStream(body))) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (field.equals("errors")) {
+                    errors = parser.getBooleanValue();
+                    if (!errors) {
+                        return;
+                    }
+                } else if (field.equals("took")) {
+                    took = parser.getLongValue();
+                } else if (field.equals("items")) {
+                    expect(value, JsonToken.START_ARRAY);
+                    walkItems(parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
 
-        ArrayNode array = (ArrayNode)responseContents.get("items");
-        int pos          = 0;
+    private void walkItems(JsonParser parser) throws IOException {
+        itemStart = new int[events.size()];
+        itemEnd = new int[events.size()];
+        int[] failed = new int[events.size()];
+        int failures = 0;
         int updatedCount = 0;
+        int pos = 0;
 
-        for (JsonNode node: array) {
-            JsonNode dataNode;
-
-            if (node.has("create")) {
-                dataNode = node.get("create");
-             } else if (node.has("index")) {
-                dataNode = node.get("index");
-            } else {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (pos == events.size()) {
+                throw new IllegalStateException("Bulk response contains more items than the " + events.size() + " requested");
+            }
+            itemStart[pos] = (int) parser.getTokenLocation().getByteOffset();
+            // {"index" | "create" : {...}}
+            if (parser.nextToken() != JsonToken.FIELD_NAME) {
                 throw new IllegalStateException("Could not find field create or index in response");
             }
-            int statusCode = dataNode.get("status").asInt();
-            eventWithResponse.put(request.original().get(pos), new JsonEvent((ObjectNode)node));
-            if (statusCode != 200 && statusCode != 201 && statusCode != 202) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            int status = 0;
+            int version = 0;
+            String err = "no error message";
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("status")) {
+                    status = parser.getIntValue();
+                } else if (field.equals("_version")) {
+                    version = parser.getIntValue();
+                } else if (field.equals("error")) {
+                    err = readError(parser, body);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            expect(parser.nextToken(), JsonToken.END_OBJECT);
+            itemEnd[pos] = (int) parser.getCurrentLocation().getByteOffset();
+
+            if (status != 200 && status != 201 && status != 202) {
                 // No idea to retry if BAD_REQUEST, just skip and log them
-                String err = dataNode.has("error") ? dataNode.get("error").asText() : "no error message";
-                if (statusCode == 400) {
+                if (status == 429) {
+                    throttled = true;
+                }
+                if (status == 400) {
                     LOGGER.info("Will not retry event due to BAD_REQUEST:" +  err);
                 } else {
-                    LOGGER.debug("Bulk entry had errors, status: {}, error: {}", statusCode, err);
-                    retryableEvents.add(request.original().get(pos));
-                }
-            } else {
-                // Successful
-                if (dataNode.get("_version").asInt() > 1) {
-                    updatedCount++;
+                    LOGGER.debug("Bulk entry had errors, status: {}, error: {}", status, err);
+                    failed[failures++] = pos;
                 }
+            } else if (version > 1) {
+                updatedCount++;
             }
             pos++;
         }
-        if (!retryableEvents.isEmpty()) {
-            LOGGER.debug("Bulk response contains {} failed items out of {}", retryableEvents.size(), array.size());
+        if (pos != events.size()) {
+            throw new IllegalStateException("Bulk response contains " + pos + " items but " + events.size() + " was requested");
+        }
+        retryable = Arrays.copyOf(failed, failures);
+        if (failures > 0) {
+            LOGGER.debug("Bulk response contains {} failed items out of {}", failures, pos);
         }
         if (updatedCount > 0) {
-            LOGGER.debug("Bulk response contains {} document updates out of {}", updatedCount, array.size());
+            LOGGER.debug("Bulk response contains {} document updates out of {}", updatedCount, pos);
+        }
+    }
+
+    /**
+     * Reads the error at the current token, a string in ES 1.x and an object in later versions
+     */
+    static String readError(JsonParser parser, ByteString body) throws IOException {
+        if (parser.getCurrentToken().isScalarValue()) {
+            // The location is not past a string until its text is read
+            return parser.getText();
+        }
+        int start = (int) parser.getTokenLocation().getByteOffset();
+        parser.skipChildren();
+        return body.substring(start, (int) parser.getCurrentLocation().getByteOffset()).utf8();
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) {
+        if (actual != expected) {
+            throw new IllegalStateException("Unexpected bulk response, expected " + expected + " but was " + actual);
+        }
+    }
+
+    public boolean hasErrors() {
+        return errors;
+    }
+
+    /**
+     * True if any item was rejected with 429, typically es_rejected_execution_exception from a full queue
+     */
+    public boolean isThrottled() {
+        return throttled;
+    }
+
+    public long took() {
+        return took;
+    }
+
+    /**
+     * The events of the request, in the same order as the items
+     */
+    public List<JsonEvent> events() {
+        return events;
+    }
+
+    /**
+     * The response as it was received
+     */
+    public ByteString body() {
+        return body;
+    }
+
+    /**
+     * Positions of the items that failed and can be retried, 400 BAD REQUEST is not retried
+     */
+    public int[] retryable() {
+        return retryable;
+    }
+
+    /**
+     * The item of the event at position as json
+     */
+    public ByteString item(int position) {
+        if (itemStart == null) {
+            // Stopped at "errors": false
+            try (JsonParser parser = itemsParser()) {
+                walkItems(parser);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return body.substring(itemStart[position], itemEnd[position]);
+    }
+
+    /**
+     * All items as json without the enclosing array brackets, the items are skipped rather than
+     * walked if they have not been walked already.
+     */
+    public ByteString items() {
+        if (events.isEmpty()) {
+            return ByteString.EMPTY;
+        }
+        if (itemStart != null) {
+            return body.substring(itemStart[0], itemEnd[events.size() - 1]);
+        }
+        try (JsonParser parser = itemsParser()) {
+            int start = (int) parser.getTokenLocation().getByteOffset() + 1;
+            parser.skipChildren();
+            return body.substring(start, (int) parser.getCurrentLocation().getByteOffset() - 1);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Parser positioned at the start of the items array
+     */
+    private JsonParser itemsParser() throws IOException {
+        JsonParser parser = Json.OBJECT_MAPPER.getFactory().createParser(Json.inputStream(body));
+        expect(parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            if (parser.getCurrentName().equals("items")) {
+                expect(parser.nextToken(), JsonToken.START_ARRAY);
+                return parser;
+            }
+            parser.nextToken();
+            parser.skipChildren();
         }
-        return retryableEvents;
+        parser.close();
+        throw new IllegalStateException("Bulk response does not contain any items");
     }
 }
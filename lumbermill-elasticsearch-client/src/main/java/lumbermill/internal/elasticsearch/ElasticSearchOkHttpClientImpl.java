@@ -14,8 +14,11 @@
  */
 package lumbermill.internal.elasticsearch;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.squareup.okhttp.*;
 import lumbermill.api.JsonEvent;
 import lumbermill.api.Observables;
@@ -24,8 +27,12 @@ import lumbermill.elasticsearch.ElasticSearchBulkRequestEvent;
 import lumbermill.elasticsearch.ElasticSearchBulkResponseEvent;
 import lumbermill.elasticsearch.FatalIndexException;
 import lumbermill.elasticsearch.IndexFailedException;
+import lumbermill.internal.Json;
 import lumbermill.internal.MapWrap;
 import lumbermill.internal.StringTemplate;
+import lumbermill.internal.Timestamps;
+import okio.Buffer;
+import okio.ByteString;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,10 +48,14 @@ import java.net.URL;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -80,6 +91,19 @@ public class ElasticSearchOkHttpClientImpl {
     public static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
     private static final String AUTHORIZATION_HEADER_NAME = "Authorization";
+    private static final String CONTENT_ENCODING_HEADER_NAME = "Content-Encoding";
+
+    private static final DateTimeFormatter INDEX_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy.MM.dd");
+
+    private static final JsonStringEncoder JSON_ENCODER = JsonStringEncoder.getInstance();
+
+    private static final int MAX_CACHED_INDICES = 1024;
+
+    /**
+     * Same as the default max requests per host of the OkHttp Dispatcher
+     */
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 5;
+    private static final long DEFAULT_MAX_LATENCY_MS = 10_000;
 
     /**
      * Http client is shared
@@ -111,9 +135,27 @@ public class ElasticSearchOkHttpClientImpl {
 
     private Optional<RequestSigner> signer = Optional.empty();
 
+    private Optional<GzipCompressor> compressor = Optional.empty();
+
+    private AimdConcurrencyLimiter concurrency = new AimdConcurrencyLimiter(DEFAULT_MAX_CONCURRENT_REQUESTS,
+            DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_CONCURRENT_REQUESTS, DEFAULT_MAX_LATENCY_MS, TimeUnit.MILLISECONDS);
+
     private Timer.Factory timerFactory = Observables.fixedTimer(2000);
     private int retryAttempts = 20;
 
+    /**
+     * Serialized start of the action line per index and type
+     */
+    private final Map<String, Map<String, ByteString>> indexRowPrefixes = new ConcurrentHashMap<>();
+
+    private volatile IndexDate lastIndexDate;
+
+    /**
+     * 0 if batches are not split
+     */
+    private long maxBulkBytes;
+    private volatile long bulkBytesTarget;
+
     public ElasticSearchOkHttpClientImpl(String esUrl, String index, String type, boolean isPrefix) {
         this.indexIsPrefix = isPrefix;
         try {
@@ -163,6 +205,56 @@ public class ElasticSearchOkHttpClientImpl {
         return this;
     }
 
+    /**
+     * Gzip the bulk body and send it with Content-Encoding: gzip. A signer signs the compressed payload.
+     * @param level - 1 (fastest) to 9 (smallest)
+     */
+    public ElasticSearchOkHttpClientImpl withGzip(int level) {
+        this.compressor = Optional.of(new GzipCompressor(level));
+        return this;
+    }
+
+    /**
+     * Replaces the default limiter of 5 concurrent requests. The dispatcher is allowed at least as many
+     * requests as the limiter so that requests are not queued in the dispatcher as well.
+     */
+    public ElasticSearchOkHttpClientImpl withConcurrency(AimdConcurrencyLimiter concurrency) {
+        this.concurrency = concurrency;
+        Dispatcher dispatcher = client.getDispatcher();
+        dispatcher.setMaxRequests(Math.max(dispatcher.getMaxRequests(), concurrency.maxLimit()));
+        dispatcher.setMaxRequestsPerHost(Math.max(dispatcher.getMaxRequestsPerHost(), concurrency.maxLimit()));
+        return this;
+    }
+
+    /**
+     * Current concurrency limit, requests in flight and queued requests
+     */
+    public AimdConcurrencyLimiter concurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Splits batches into several bulk requests of at most maxBulkBytes, uncompressed. The actual limit
+     * adapts between a 16th of maxBulkBytes and maxBulkBytes, it is halved when a request is rejected
+     * with 413 or is slower than the max latency of the concurrency limiter and increased by a 16th for
+     * each request that is not.
+     */
+    public ElasticSearchOkHttpClientImpl withMaxBulkBytes(long maxBulkBytes) {
+        if (maxBulkBytes < 1) {
+            throw new IllegalArgumentException("Invalid max_bulk_bytes, expected at least 1 but was " + maxBulkBytes);
+        }
+        this.maxBulkBytes = maxBulkBytes;
+        this.bulkBytesTarget = maxBulkBytes;
+        return this;
+    }
+
+    /**
+     * Current limit for the size of bulk requests, 0 if batches are not split
+     */
+    public long bulkBytesTarget() {
+        return bulkBytesTarget;
+    }
+
     public ElasticSearchOkHttpClientImpl withBasicAuth(String user, String passwd) {
         this.basicAuthHeader = Optional.of(Credentials.basic(user, passwd));
         return this;
@@ -184,35 +276,74 @@ public class ElasticSearchOkHttpClientImpl {
         // TODO - Not sure how we really want this to work...
         List<JsonEvent> batch = requestEvent.indexRequests()
                 .stream().map(jsonEventJsonEventTuple2 -> jsonEventJsonEventTuple2.getSecond()).collect(toList());
-        LOGGER.debug("Sending batch of {} events", batch.size());
-        RequestContext request = new RequestContext(batch, new ElasticSearchRequest(batch, url));
-        post(request);
-        return request.subject;
+        return post(batch);
 
 
     }
 
+    /**
+     * Posts the batch as one bulk request, or if max bulk bytes is set and the batch is larger, as several
+     * bulk requests that are sent concurrently. Their responses are merged into one response in the
+     * same order as the batch.
+     */
     public Observable<ElasticSearchBulkResponseEvent> post(List<JsonEvent> batch) throws IndexFailedException {
         if (batch.isEmpty()) {
             LOGGER.info("Event batch is empty, skipping");
             Observable.just(batch);
         }
         LOGGER.debug("Sending batch of {} events", batch.size());
-        RequestContext request = new RequestContext(batch, new ElasticSearchRequest(batch, url));
-        post(request);
-        return request.subject;
+        if (maxBulkBytes == 0) {
+            RequestContext request = new RequestContext(batch, new ElasticSearchRequest(batch, null, url));
+            post(request);
+            return request.subject;
+        }
 
+        List<BulkPart> parts = toBulkApiRequests(batch, bulkBytesTarget);
+        if (parts.size() == 1) {
+            RequestContext request = new RequestContext(batch, new ElasticSearchRequest(batch, null, parts.get(0).bulk, url));
+            post(request);
+            return request.subject;
+        }
 
+        LOGGER.debug("Batch of {} events is split into {} bulk requests", batch.size(), parts.size());
+        List<Observable<ElasticSearchBulkResponseEvent>> responses = new ArrayList<>(parts.size());
+        for (BulkPart part : parts) {
+            List<JsonEvent> events = batch.subList(part.from, part.to);
+            RequestContext request = new RequestContext(events, new ElasticSearchRequest(events, null, part.bulk, url));
+            post(request);
+            responses.add(request.subject);
+        }
+        return Observable.zip(responses, results -> {
+            List<ElasticSearchBulkResponseEvent> merged = new ArrayList<>(results.length);
+            for (Object result : results) {
+                merged.add((ElasticSearchBulkResponseEvent) result);
+            }
+            return ElasticSearchBulkResponseEvent.merge(merged);
+        });
     }
 
+    /**
+     * Sends the request when the concurrency limit allows it. The first attempt blocks the caller
+     * if too many requests are queued, retries are always queued.
+     */
     public void post(RequestContext request) throws IndexFailedException {
+        concurrency.submit(() -> start(request), request.attempt.get() == 1);
+    }
 
-        if (signer.isPresent()) {
-            LOGGER.trace("Found RequestSigner, signing request");
-            signer.get().sign(request.signableRequest);
-        }
+    private void start(RequestContext request) {
+        request.attemptStarted();
+        try {
+            // Signed when started since the signature is only valid for a limited time
+            if (signer.isPresent()) {
+                LOGGER.trace("Found RequestSigner, signing request");
+                signer.get().sign(request.signableRequest);
+            }
 
-        doOkHttpPost(request);
+            doOkHttpPost(request);
+        } catch (RuntimeException e) {
+            request.attemptCompleted(false);
+            request.error(e);
+        }
     }
 
     /**
@@ -226,10 +357,13 @@ public class ElasticSearchOkHttpClientImpl {
         if (response.code() == 200) {
             ElasticSearchBulkResponse bulkResponse = ElasticSearchBulkResponse.parse(
                     request.signableRequest, response);
+            // Before the result is emitted, the subscriber might post the next batch
+            request.attemptCompleted(bulkResponse.isThrottled());
             if (bulkResponse.hasErrors()) {
                 Optional<Observable<RequestContext>> requestContextObservable = request.nextAttempt(bulkResponse);
                 if (!requestContextObservable.isPresent()) {
-                    request.done(bulkResponse);
+                    // Nothing to retry, the response is already applied by nextAttempt()
+                    request.done();
                 } else {
                     requestContextObservable.get()
                             .doOnNext(requestContext -> post(requestContext))
@@ -242,6 +376,8 @@ public class ElasticSearchOkHttpClientImpl {
             return;
         }
 
+        request.attemptCompleted(response.code() == 429, response.code() == 413);
+
         if (response.code() == 400) {
             request.error(createFatalIndexException(request.signableRequest, response));
             return;
@@ -259,21 +395,118 @@ public class ElasticSearchOkHttpClientImpl {
 
 
     /**
-     * Converts the events to a BulkApi request
+     * Converts the events to a BulkApi request. The body is written straight into the buffer, documents
+     * are serialized with a single generator and lazy events that has not been parsed are copied as is.
+     *
+     * Returned a StringBuilder before 0.0.27, subclasses overriding it must be updated. It is not used for
+     * the first attempt when max_bulk_bytes is set.
      */
-    protected StringBuilder toBulkApiRequest(List<JsonEvent> batch) {
+    protected Buffer toBulkApiRequest(List<JsonEvent> batch) {
+
+        Buffer buffer = new Buffer();
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(buffer.outputStream())) {
+            // Each document is terminated by a newline, no separator is needed between them
+            generator.setRootValueSeparator(null);
+            for (JsonEvent event : batch) {
+                writeRow(buffer, generator, event);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer;
+    }
 
-        StringBuilder builder = new StringBuilder();
+    /**
+     * Converts the events to BulkApi requests of at most maxBytes, an event larger than maxBytes is
+     * sent in a request of its own. Each row is written to a buffer of its own and then moved to
+     * the request, which only moves the buffer segments.
+     */
+    private List<BulkPart> toBulkApiRequests(List<JsonEvent> batch, long maxBytes) {
+
+        List<BulkPart> parts = new ArrayList<>();
+        Buffer bulk = new Buffer();
+        Buffer row = new Buffer();
+        int from = 0;
+        try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(row.outputStream())) {
+            generator.setRootValueSeparator(null);
+            for (int i = 0; i < batch.size(); i++) {
+                writeRow(row, generator, batch.get(i));
+                if (bulk.size() > 0 && bulk.size() + row.size() > maxBytes) {
+                    parts.add(new BulkPart(from, i, bulk.readByteArray()));
+                    from = i;
+                }
+                bulk.write(row, row.size());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        parts.add(new BulkPart(from, batch.size(), bulk.readByteArray()));
+        return parts;
+    }
 
-        batch.stream().forEach((event ->
-                builder.append(indexRowWithDateAndType(event))
-                        .append("\n")
-                        .append(event.toString(false))
-                        .append("\n")));
-        return builder;
+    /**
+     * Writes the action line and the document, the generator must write to the same buffer
+     */
+    private void writeRow(Buffer buffer, JsonGenerator generator, JsonEvent event) throws IOException {
+        // Must be checked before the action line is created since templates parses the event
+        boolean unparsed = !event.isParsed();
+        writeIndexRow(buffer, event);
+        if (unparsed && isCopyable(event.raw())) {
+            buffer.write(event.raw());
+        } else {
+            event.writeTo(generator);
+            generator.flush();
+        }
+        buffer.writeByte('\n');
     }
 
-    private String indexRowWithDateAndType(JsonEvent event) {
+    /**
+     * Events from..to of a batch serialized as a bulk request
+     */
+    private static final class BulkPart {
+        final int from;
+        final int to;
+        final byte[] bulk;
+
+        BulkPart(int from, int to, byte[] bulk) {
+            this.from = from;
+            this.to = to;
+            this.bulk = bulk;
+        }
+    }
+
+    /**
+     * The original bytes of a lazy event can only be used if the json is not pretty printed
+     */
+    /**
+     * Checks that the raw bytes of a lazy event is a single json object on one line, otherwise the event is
+     * parsed which fails here instead of making Elasticsearch reject the whole bulk request.
+     */
+    private static boolean isCopyable(ByteString json) {
+        if (!isSingleLine(json)) {
+            return false;
+        }
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(Json.inputStream(json))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return false;
+            }
+            parser.skipChildren();
+            return parser.nextToken() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isSingleLine(ByteString json) {
+        for (int i = 0, size = json.size(); i < size; i++) {
+            if (json.getByte(i) == '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeIndexRow(Buffer buffer, JsonEvent event) {
 
         Optional<String> formattedType = type.format(event);
         if (!formattedType.isPresent()) {
@@ -296,36 +529,79 @@ public class ElasticSearchOkHttpClientImpl {
             }
         }
 
-        ObjectNode objectNode = OBJECT_MAPPER.createObjectNode();
-        ObjectNode data = OBJECT_MAPPER.createObjectNode();
-
         // Prepare for adding day to index for each event
-        if (indexIsPrefix) {
-            LocalDate indexDate;
-            // TODO: Not sure how to handle this... what should be the behaviour if the specified timestamp field
-            //       does not exist
-            if (event.has(this.timestampField)) {
-                 indexDate = LocalDate.parse(event.valueAsString(this.timestampField).substring(0, 10),
-                        DateTimeFormatter.ISO_DATE);
-            } else {
-                indexDate = LocalDate.now();
+        String indexName = indexIsPrefix
+                ? formattedIndex.get() + indexDate(event)
+                : formattedIndex.get();
+
+        buffer.write(indexRowPrefix(indexName, formattedType.get()));
+        if (formattedDocumentId.isPresent()) {
+            buffer.writeUtf8(",\"_id\":\"")
+                    .write(JSON_ENCODER.quoteAsUTF8(formattedDocumentId.get()))
+                    .writeByte('"');
+        }
+        buffer.writeUtf8("}}\n");
+    }
+
+    /**
+     * Returns {"index":{"_index":"name","_type":"type" without the closing braces so that an _id can be appended.
+     */
+    private ByteString indexRowPrefix(String indexName, String typeName) {
+        Map<String, ByteString> byType = indexRowPrefixes.get(indexName);
+        if (byType == null) {
+            if (indexRowPrefixes.size() >= MAX_CACHED_INDICES) {
+                // Index names based on high cardinality fields, do not let the cache grow forever
+                indexRowPrefixes.clear();
             }
-            data.put("_index",
-                    formattedIndex.get() + indexDate.format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
-        } else {
-            data.put("_index", formattedIndex.get());
+            byType = indexRowPrefixes.computeIfAbsent(indexName, name -> new ConcurrentHashMap<>());
         }
-        data.put("_type", formattedType.get());
-        
-        if (formattedDocumentId.isPresent()) {
-            data.put("_id", formattedDocumentId.get());
+        ByteString prefix = byType.get(typeName);
+        if (prefix == null) {
+            prefix = new Buffer()
+                    .writeUtf8("{\"index\":{\"_index\":\"")
+                    .write(JSON_ENCODER.quoteAsUTF8(indexName))
+                    .writeUtf8("\",\"_type\":\"")
+                    .write(JSON_ENCODER.quoteAsUTF8(typeName))
+                    .writeByte('"')
+                    .readByteString();
+            byType.put(typeName, prefix);
         }
-        objectNode.set("index", data);
+        return prefix;
+    }
 
-        return objectNode.toString();
-     }
+    /**
+     * The day part of the index, the last date is remembered since events in a batch mostly are from the same day
+     */
+    private String indexDate(JsonEvent event) {
+        // TODO: Not sure how to handle this... what should be the behaviour if the specified timestamp field
+        //       does not exist
+        if (!event.has(this.timestampField)) {
+            return Timestamps.today().format(INDEX_DATE_FORMAT);
+        }
+        String timestamp = event.valueAsString(this.timestampField);
+        IndexDate last = lastIndexDate;
+        if (last != null && timestamp.regionMatches(0, last.date, 0, 10)) {
+            return last.suffix;
+        }
+        String date = timestamp.substring(0, 10);
+        last = new IndexDate(date, LocalDate.parse(date, DateTimeFormatter.ISO_DATE).format(INDEX_DATE_FORMAT));
+        lastIndexDate = last;
+        return last.suffix;
+    }
+
+    private static final class IndexDate {
+        final String date;
+        final String suffix;
+
+        IndexDate(String date, String suffix) {
+            this.date = date;
+            this.suffix = suffix;
+        }
+    }
 
     protected void doOkHttpPost(RequestContext requestCtx)  {
+        // A retry might have been started when the callback completes
+        Attempt attempt = requestCtx.currentAttempt;
         RequestBody body = RequestBody.create(TEXT, requestCtx.signableRequest.payload().get());
         Request request = new Request.Builder()
                 .url(url)
@@ -348,12 +624,18 @@ public class ElasticSearchOkHttpClientImpl {
         client.newCall(request).enqueue(new Callback() {
             @Override
             public void onFailure(Request request, IOException e) {
+                requestCtx.attemptCompleted(true);
                 requestCtx.error(IndexFailedException.ofIOException(e));
             }
 
             @Override
             public void onResponse(Response response) throws IOException {
-                handleResponse(requestCtx, response);
+                try {
+                    handleResponse(requestCtx, response);
+                } finally {
+                    // In case the response could not be handled
+                    attempt.completed(false, false);
+                }
             }
         });
     }
@@ -372,15 +654,34 @@ public class ElasticSearchOkHttpClientImpl {
     private class ElasticSearchRequest implements RequestSigner.SignableRequest {
 
         private final List<JsonEvent> events;
+
+        /**
+         * Position of each event in the first attempt, null for the first attempt
+         */
+        private final int[] positions;
         private final Optional<byte[]> payload;
         private final URL url;
         public final Map<String, String> headers;
 
-        public ElasticSearchRequest(List<JsonEvent> events, URL url) {
+        public ElasticSearchRequest(List<JsonEvent> events, int[] positions, URL url) {
+            this(events, positions, ElasticSearchOkHttpClientImpl.this.toBulkApiRequest(events).readByteArray(), url);
+        }
+
+        /**
+         * @param bulk - The events serialized as a bulk request, kept as bytes since it is used both
+         *             for signing and for the request body
+         */
+        public ElasticSearchRequest(List<JsonEvent> events, int[] positions, byte[] bulk, URL url) {
             this.events = events;
+            this.positions = positions;
             this.url = url;
             headers = MapWrap.of("host", url.getHost()).toMap();
-            payload = Optional.of(toBulkApiRequest(events).toString().getBytes());
+            if (compressor.isPresent()) {
+                headers.put(CONTENT_ENCODING_HEADER_NAME, "gzip");
+                payload = Optional.of(compressor.get().compress(bulk));
+            } else {
+                payload = Optional.of(bulk);
+            }
         }
 
         @Override
@@ -423,6 +724,29 @@ public class ElasticSearchOkHttpClientImpl {
         }
     }
 
+    private synchronized void adaptBulkBytesTarget(boolean decrease) {
+        long step = Math.max(1, maxBulkBytes / 16);
+        bulkBytesTarget = decrease
+                ? Math.max(step, bulkBytesTarget / 2)
+                : Math.min(maxBulkBytes, bulkBytesTarget + step);
+    }
+
+    private final class Attempt {
+
+        private final long startNanos = System.nanoTime();
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        void completed(boolean overloaded, boolean tooLarge) {
+            if (completed.compareAndSet(false, true)) {
+                if (maxBulkBytes > 0) {
+                    adaptBulkBytesTarget(tooLarge
+                            || System.nanoTime() - startNanos > concurrency.maxLatency(TimeUnit.NANOSECONDS));
+                }
+                concurrency.onComplete(startNanos, overloaded);
+            }
+        }
+    }
+
     /**
      * Contains state in order to track retries as well as returning response to pipeline.
      */
@@ -440,7 +764,7 @@ public class ElasticSearchOkHttpClientImpl {
         /**
          * Request to execute
          */
-        public RequestSigner.SignableRequest signableRequest;
+        public ElasticSearchRequest signableRequest;
 
         /**
          * Attempt count
@@ -452,17 +776,34 @@ public class ElasticSearchOkHttpClientImpl {
          */
         public long start = System.currentTimeMillis();
 
+        /**
+         * The attempt in flight, reported to the concurrency limiter when completed
+         */
+        private volatile Attempt currentAttempt;
+
         /**
          * The timer for each request
          */
         public Timer timer = ElasticSearchOkHttpClientImpl.this.timerFactory.create();
 
-        public RequestContext(List<JsonEvent> events, RequestSigner.SignableRequest signableRequest) {
+        public RequestContext(List<JsonEvent> events, ElasticSearchRequest signableRequest) {
             this.events = events;
             this.signableRequest = signableRequest;
 
         }
 
+        private void attemptStarted() {
+            currentAttempt = new Attempt();
+        }
+
+        private void attemptCompleted(boolean overloaded) {
+            currentAttempt.completed(overloaded, false);
+        }
+
+        private void attemptCompleted(boolean overloaded, boolean tooLarge) {
+            currentAttempt.completed(overloaded, tooLarge);
+        }
+
         private boolean hasNextAttempt() {
             return attempt.get() > ElasticSearchOkHttpClientImpl.this.retryAttempts ? false : true;
         }
@@ -470,7 +811,7 @@ public class ElasticSearchOkHttpClientImpl {
 
         public Optional<Observable<RequestContext>> nextAttempt(ElasticSearchBulkResponse result) {
             updateResponseEvent(result);
-            Optional<RequestSigner.SignableRequest> signableRequest = failedRecords(result);
+            Optional<ElasticSearchRequest> signableRequest = failedRecords(result);
             if (!signableRequest.isPresent()) {
                 return Optional.empty();
             }
@@ -489,26 +830,41 @@ public class ElasticSearchOkHttpClientImpl {
             if (this.response == null) {
                 response = ElasticSearchBulkResponseEvent.of(bulkResponse);
             } else {
-                response = response.nextAttempt(bulkResponse);
+                response = response.nextAttempt(bulkResponse, signableRequest.positions);
             }
         }
 
-        private Optional<RequestSigner.SignableRequest> failedRecords(ElasticSearchBulkResponse result) {
-            List<JsonEvent> retryableItems = result.getRetryableItems(this.signableRequest);
+        private Optional<ElasticSearchRequest> failedRecords(ElasticSearchBulkResponse result) {
+            int[] retryable = result.retryable();
 
-            if (retryableItems.size() == 0) {
+            if (retryable.length == 0) {
                 // This occurs if we got errors but they where all 400 BAD REQUEST, these will not be retried
                  return Optional.empty();
             }
-            return Optional.of(new ElasticSearchRequest(retryableItems, url));
+            List<JsonEvent> retryableItems = new ArrayList<>(retryable.length);
+            int[] positions = new int[retryable.length];
+            for (int i = 0; i < retryable.length; i++) {
+                retryableItems.add(signableRequest.events.get(retryable[i]));
+                positions[i] = signableRequest.positions == null
+                        ? retryable[i]
+                        : signableRequest.positions[retryable[i]];
+            }
+            return Optional.of(new ElasticSearchRequest(retryableItems, positions, url));
         }
 
         public void done(ElasticSearchBulkResponse bulkResponse) {
+            updateResponseEvent(bulkResponse);
+            done();
+        }
+
+        /**
+         * Emits the response of all attempts so far
+         */
+        private void done() {
             // Fix return ALL + ES response
             LOGGER.debug("Request took {} seconds / {} attempts / events {}",
                     Duration.ofMillis(System.currentTimeMillis() - start).getSeconds(),
                     attempt.get(), events.size());
-            updateResponseEvent(bulkResponse);
             this.subject.onNext(response);
             this.subject.onCompleted();
         }
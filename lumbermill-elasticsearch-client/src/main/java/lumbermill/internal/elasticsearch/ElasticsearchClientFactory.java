@@ -15,6 +15,7 @@
 package lumbermill.internal.elasticsearch;
 
 import com.squareup.okhttp.Dispatcher;
+import lumbermill.Core;
 import lumbermill.api.Observables;
 import lumbermill.internal.MapWrap;
 import org.slf4j.Logger;
@@ -22,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Arrays.asList;
 
@@ -30,6 +32,9 @@ public class ElasticsearchClientFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ElasticsearchClientFactory.class);
     private static final int DEFAULT_ATTEMPTS = 20;
+    private static final int DEFAULT_COMPRESSION_LEVEL = 3;
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 5;
+    private static final int DEFAULT_MAX_LATENCY_MS = 10_000;
 
     private final Map<String, ElasticSearchOkHttpClientImpl> cachedClients = new HashMap<>();
 
@@ -43,6 +48,15 @@ public class ElasticsearchClientFactory {
         return new StringBuilder().append(url).append(index).append(isPrefix).toString();
     }
 
+    /**
+     * Unique per cached client so that gauges of clients for the same index in different clusters are not replaced,
+     * for instance elasticsearch.localhost_9200.logs-*.
+     */
+    static String metricsPrefix(String url, String index, boolean isPrefix) {
+        String host = url.replaceFirst("^https?://", "").replaceAll("[^A-Za-z0-9_-]+", "_");
+        return "elasticsearch." + host + "." + index + (isPrefix ? "*" : "") + ".";
+    }
+
     private ElasticSearchOkHttpClientImpl createClient(MapWrap config) {
 
         boolean isPrefix;
@@ -95,6 +109,15 @@ public class ElasticsearchClientFactory {
             es.withTimestampField(config.asString("timestamp_field"));
         }
 
+        if (config.exists("compression")) {
+            String compression = config.asString("compression");
+            if (compression.equals("gzip")) {
+                es.withGzip(config.asInt("compression_level", DEFAULT_COMPRESSION_LEVEL));
+            } else if (!compression.equals("none")) {
+                throw new IllegalArgumentException("Invalid compression, expected 'gzip' or 'none' but was " + compression);
+            }
+        }
+
         if (config.exists("retry")) {
             MapWrap retryConfig = MapWrap.of(config.getObject("retry")).assertExists("policy");
             es.withRetryTimer(Observables.timer(retryConfig), retryConfig.asInt("attempts", DEFAULT_ATTEMPTS));
@@ -115,6 +138,30 @@ public class ElasticsearchClientFactory {
             es.withDispatcher(dispatcher);
         }
 
+        MapWrap concurrencyConfig = MapWrap.of(config.exists("concurrency") ? config.getObject("concurrency") : new HashMap<>());
+        int maxConcurrentRequests = concurrencyConfig.asInt("max", config.exists("dispatcher")
+                ? MapWrap.of(config.getObject("dispatcher")).asInt("max_concurrent_requests", DEFAULT_MAX_CONCURRENT_REQUESTS)
+                : DEFAULT_MAX_CONCURRENT_REQUESTS);
+        es.withConcurrency(new AimdConcurrencyLimiter(
+                concurrencyConfig.asInt("initial", maxConcurrentRequests),
+                maxConcurrentRequests,
+                concurrencyConfig.asInt("max_queued", maxConcurrentRequests),
+                concurrencyConfig.asInt("max_latency_ms", DEFAULT_MAX_LATENCY_MS),
+                TimeUnit.MILLISECONDS));
+
+        if (config.exists("max_bulk_bytes")) {
+            es.withMaxBulkBytes(config.asLong("max_bulk_bytes"));
+        }
+
+        String metricsPrefix = metricsPrefix(url, index, isPrefix);
+        Core.metrics.gauge(metricsPrefix + "concurrency_limit", () -> es.concurrency().limit());
+        Core.metrics.gauge(metricsPrefix + "in_flight", () -> es.concurrency().inFlight());
+        Core.metrics.gauge(metricsPrefix + "queued", () -> es.concurrency().queued());
+        Core.metrics.gauge(metricsPrefix + "overloaded", () -> es.concurrency().overloaded());
+        if (config.exists("max_bulk_bytes")) {
+            Core.metrics.gauge(metricsPrefix + "bulk_bytes_target", es::bulkBytesTarget);
+        }
+
         cachedClients.put(cacheKey, es);
 
         return es;
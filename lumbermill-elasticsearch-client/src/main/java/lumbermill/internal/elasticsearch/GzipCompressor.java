@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.elasticsearch;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips bulk payloads. Deflaters are pooled since each one allocates a fair amount of native memory
+ * and bulk requests are created both from the pipeline and from retries on the http client threads.
+ */
+final class GzipCompressor {
+
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+
+    /**
+     * Magic, deflate, no flags, no modification time, no extra flags and unknown OS
+     */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final int level;
+    private final BlockingQueue<Deflater> deflaters;
+
+    GzipCompressor(int level) {
+        this(level, Runtime.getRuntime().availableProcessors());
+    }
+
+    GzipCompressor(int level, int poolSize) {
+        if (level != Deflater.DEFAULT_COMPRESSION && (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level, expected 1-9 but was " + level);
+        }
+        this.level = level;
+        this.deflaters = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    int level() {
+        return level;
+    }
+
+    byte[] compress(byte[] data) {
+        Deflater deflater = borrow();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+
+            // Bulk json usually compresses 5-10 times, the array is only grown for data that does not compress
+            byte[] out = new byte[HEADER_SIZE + data.length / 4 + 64];
+            System.arraycopy(HEADER, 0, out, 0, HEADER_SIZE);
+            int size = HEADER_SIZE;
+            while (!deflater.finished()) {
+                if (size == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                size += deflater.deflate(out, size, out.length - size);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            out = Arrays.copyOf(out, size + TRAILER_SIZE);
+            writeIntLe(out, size, (int) crc.getValue());
+            writeIntLe(out, size + 4, data.length);
+            return out;
+        } finally {
+            release(deflater);
+        }
+    }
+
+    private Deflater borrow() {
+        Deflater deflater = deflaters.poll();
+        return deflater != null ? deflater : new Deflater(level, true);
+    }
+
+    private void release(Deflater deflater) {
+        deflater.reset();
+        if (!deflaters.offer(deflater)) {
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLe(byte[] out, int pos, int value) {
+        out[pos] = (byte) value;
+        out[pos + 1] = (byte) (value >>> 8);
+        out[pos + 2] = (byte) (value >>> 16);
+        out[pos + 3] = (byte) (value >>> 24);
+    }
+}
@@ -60,8 +60,8 @@ public class SimpleElasticSearchIntegrationTest extends AbstractElasticSearchTes
         bulkClient(MapWrap.of("index", indexName))
                 .post (simpleEventsOfSize(100, false))
                 .doOnNext( elasticSearchBulkResponseEvent-> assertThat(elasticSearchBulkResponseEvent.count())
-                        // With this bug this will be less then we want
-                        .isLessThan(100))
+                        // Equal events used to be merged when the response was correlated by hash
+                        .isEqualTo(100))
                 .toBlocking()
                 .subscribe();
     }
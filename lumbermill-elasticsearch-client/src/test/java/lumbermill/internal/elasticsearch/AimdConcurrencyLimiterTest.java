@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.elasticsearch;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AimdConcurrencyLimiterTest {
+
+    @Test
+    public void test_requests_above_limit_are_queued_until_completed() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(2, 2, 10, 1, TimeUnit.MINUTES);
+        List<Integer> started = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int request = i;
+            limiter.submit(() -> started.add(request), false);
+        }
+        assertThat(started).containsExactly(0, 1);
+        assertThat(limiter.inFlight()).isEqualTo(2);
+        assertThat(limiter.queued()).isEqualTo(2);
+
+        limiter.onComplete(System.nanoTime(), false);
+        assertThat(started).containsExactly(0, 1, 2);
+        assertThat(limiter.queued()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_limit_is_halved_once_per_round_trip_and_increased_additively() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(8, 8, 10, 1, TimeUnit.MINUTES);
+        long start = System.nanoTime();
+        for (int i = 0; i < 8; i++) {
+            limiter.submit(() -> { }, false);
+        }
+        limiter.onComplete(start, true);
+        assertThat(limiter.limit()).isEqualTo(4);
+        // Started before the decrease, does not decrease it again
+        limiter.onComplete(start, true);
+        assertThat(limiter.limit()).isEqualTo(4);
+        assertThat(limiter.overloaded()).isEqualTo(2);
+
+        // 1/limit per request, about one more per round trip
+        for (int i = 0; i < 4; i++) {
+            limiter.submit(() -> { }, false);
+            limiter.onComplete(System.nanoTime(), false);
+        }
+        assertThat(limiter.limit()).isEqualTo(4);
+        limiter.submit(() -> { }, false);
+        limiter.onComplete(System.nanoTime(), false);
+        assertThat(limiter.limit()).isEqualTo(5);
+    }
+
+    @Test
+    public void test_slow_requests_decrease_limit() {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(4, 4, 10, 1, TimeUnit.NANOSECONDS);
+        long start = System.nanoTime();
+        limiter.submit(() -> { }, false);
+        limiter.onComplete(start - TimeUnit.SECONDS.toNanos(1), false);
+        assertThat(limiter.limit()).isEqualTo(4);
+        limiter.submit(() -> { }, false);
+        limiter.onComplete(start + 1, false);
+        assertThat(limiter.limit()).isLessThan(4);
+    }
+
+    @Test
+    public void test_caller_is_blocked_while_queue_is_full() throws InterruptedException {
+        AimdConcurrencyLimiter limiter = new AimdConcurrencyLimiter(1, 1, 1, 1, TimeUnit.MINUTES);
+        limiter.submit(() -> { }, true);
+        limiter.submit(() -> { }, true);
+        CountDownLatch submitted = new CountDownLatch(1);
+        new Thread(() -> {
+            limiter.submit(() -> { }, true);
+            submitted.countDown();
+        }).start();
+        assertThat(submitted.await(100, TimeUnit.MILLISECONDS)).isFalse();
+
+        limiter.onComplete(System.nanoTime(), false);
+        assertThat(submitted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(limiter.queued()).isEqualTo(1);
+    }
+}
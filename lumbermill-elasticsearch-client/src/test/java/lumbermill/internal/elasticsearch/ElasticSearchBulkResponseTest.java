@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.elasticsearch;
+
+import com.fasterxml.jackson.core.JsonParser;
+import lumbermill.api.JsonEvent;
+import lumbermill.internal.Json;
+import lumbermill.elasticsearch.ElasticSearchBulkResponseEvent;
+import okio.ByteString;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ElasticSearchBulkResponseTest {
+
+    private static final String OK = "{\"index\":{\"_index\":\"i\",\"_type\":\"t\",\"_id\":\"%s\",\"_version\":1,\"status\":201}}";
+    private static final String REJECTED = "{\"index\":{\"_index\":\"i\",\"_type\":\"t\",\"_id\":\"%s\",\"status\":429,"
+            + "\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"queue is full\"}}}";
+    private static final String BAD_REQUEST = "{\"index\":{\"_index\":\"i\",\"_type\":\"t\",\"_id\":\"%s\",\"status\":400,"
+            + "\"error\":\"MapperParsingException[failed to parse]\"}}";
+
+    @Test
+    public void test_items_are_not_parsed_without_errors() {
+        // Items that are not even valid are never read
+        ElasticSearchBulkResponse response = parse(events(2), "{\"took\":3,\"errors\":false,\"items\":[not json]}");
+        assertThat(response.hasErrors()).isFalse();
+        assertThat(response.took()).isEqualTo(3);
+        assertThat(response.retryable()).isEmpty();
+    }
+
+    @Test
+    public void test_failures_are_recorded_by_position() {
+        ElasticSearchBulkResponse response = parse(events(4),
+                body(true, String.format(OK, 0), String.format(REJECTED, 1), String.format(BAD_REQUEST, 2), String.format(REJECTED, 3)));
+        assertThat(response.hasErrors()).isTrue();
+        assertThat(response.isThrottled()).isTrue();
+        assertThat(response.retryable()).containsExactly(1, 3);
+        assertThat(response.item(2).utf8()).isEqualTo(String.format(BAD_REQUEST, 2));
+    }
+
+    @Test
+    public void test_string_and_object_errors_are_read() throws IOException {
+        assertThat(readError("{\"error\":\"MapperParsingException[failed to parse]\"}"))
+                .isEqualTo("MapperParsingException[failed to parse]");
+        assertThat(readError("{\"error\":{\"type\":\"es_rejected_execution_exception\"},\"status\":429}"))
+                .isEqualTo("{\"type\":\"es_rejected_execution_exception\"}");
+    }
+
+    @Test
+    public void test_items_are_found_after_errors_false() {
+        ElasticSearchBulkResponse response = parse(events(2), body(false, String.format(OK, 0), String.format(OK, 1)));
+        assertThat(response.item(1).utf8()).isEqualTo(String.format(OK, 1));
+    }
+
+    @Test
+    public void test_retried_items_replace_failed_items() {
+        List<JsonEvent> events = events(3);
+        ElasticSearchBulkResponse first = parse(events,
+                body(true, String.format(REJECTED, 0), String.format(OK, 1), String.format(REJECTED, 2)));
+        ElasticSearchBulkResponse retry = parse(Arrays.asList(events.get(0), events.get(2)),
+                body(false, String.format(OK, 0), String.format(OK, 2)));
+
+        ElasticSearchBulkResponseEvent merged = ElasticSearchBulkResponseEvent.of(first).nextAttempt(retry, first.retryable());
+        assertThat(merged.count()).isEqualTo(3);
+        assertThat(merged.versions()).containsExactly("1", "1", "1");
+        assertThat(merged.unsafe().get("errors").asBoolean()).isFalse();
+        assertThat(merged.arguments().toList().toBlocking().single()).containsExactlyElementsOf(events);
+    }
+
+    @Test
+    public void test_equal_events_are_not_merged() {
+        List<JsonEvent> events = Arrays.asList(new JsonEvent().put("a", 1), new JsonEvent().put("a", 1));
+        ElasticSearchBulkResponseEvent response = ElasticSearchBulkResponseEvent.of(
+                parse(events, body(false, String.format(OK, 0), String.format(OK, 1))));
+        assertThat(response.count()).isEqualTo(2);
+        assertThat(response.arguments().count().toBlocking().single()).isEqualTo(2);
+    }
+
+    private static ElasticSearchBulkResponse parse(List<JsonEvent> events, String body) {
+        return ElasticSearchBulkResponse.parse(events, ByteString.encodeUtf8(body));
+    }
+
+    private static String readError(String json) throws IOException {
+        ByteString body = ByteString.encodeUtf8(json);
+        try (JsonParser parser = Json.OBJECT_MAPPER.getFactory().createParser(Json.inputStream(body))) {
+            parser.nextToken();
+            parser.nextToken();
+            parser.nextToken();
+            return ElasticSearchBulkResponse.readError(parser, body);
+        }
+    }
+
+    private static String body(boolean errors, String... items) {
+        return "{\"took\":1,\"errors\":" + errors + ",\"items\":[" + String.join(",", items) + "]}";
+    }
+
+    private static List<JsonEvent> events(int count) {
+        JsonEvent[] events = new JsonEvent[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = new JsonEvent().put("id", i);
+        }
+        return Arrays.asList(events);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.elasticsearch;
+
+import com.sun.net.httpserver.HttpServer;
+import lumbermill.api.Codecs;
+import lumbermill.api.JsonEvent;
+import lumbermill.api.Observables;
+import lumbermill.elasticsearch.ElasticSearchBulkResponseEvent;
+import okio.Okio;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class ElasticSearchOkHttpClientImplTest {
+
+    private HttpServer server;
+    private final List<String> bulks = new CopyOnWriteArrayList<>();
+
+    /**
+     * Returned instead of the generated response while there are any
+     */
+    private final Queue<String> responses = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Mock of the bulk endpoint, the _id of each item is the id field of the document
+     */
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/_bulk", exchange -> {
+            String bulk;
+            try (InputStream body = exchange.getRequestBody()) {
+                bulk = Okio.buffer(Okio.source(body)).readUtf8();
+            }
+            bulks.add(bulk);
+            StringBuilder items = new StringBuilder();
+            String[] lines = bulk.split("\n");
+            for (int i = 1; i < lines.length; i += 2) {
+                String id = lines[i].replaceAll(".*\"id\":(\\d+).*", "$1");
+                items.append(items.length() > 0 ? "," : "")
+                        .append("{\"index\":{\"_index\":\"idx\",\"_type\":\"t\",\"_id\":\"").append(id)
+                        .append("\",\"_version\":1,\"status\":201}}");
+            }
+            String canned = responses.poll();
+            byte[] response = (canned != null
+                    ? canned
+                    : "{\"took\":" + bulks.size() + ",\"errors\":false,\"items\":[" + items + "]}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void test_batch_is_split_at_max_bulk_bytes_and_responses_are_merged() {
+        List<JsonEvent> batch = events(100);
+        ElasticSearchOkHttpClientImpl client = client().withMaxBulkBytes(2000);
+
+        ElasticSearchBulkResponseEvent response = client.post(batch).toBlocking().single();
+
+        assertThat(bulks.size()).isGreaterThan(1);
+        bulks.forEach(bulk -> assertThat(bulk.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(2000));
+        assertThat(String.join("", bulks).split("\n")).hasSize(200);
+        assertThat(response.count()).isEqualTo(100);
+        assertThat(response.arguments().toList().toBlocking().single()).containsExactlyElementsOf(batch);
+        List<String> ids = new ArrayList<>();
+        response.unsafe().get("items").forEach(item -> ids.add(item.get("index").get("_id").asText()));
+        for (int i = 0; i < 100; i++) {
+            assertThat(ids.get(i)).isEqualTo(String.valueOf(i));
+        }
+    }
+
+    @Test
+    public void test_batch_within_max_bulk_bytes_is_one_request() {
+        ElasticSearchBulkResponseEvent response = client().withMaxBulkBytes(1_000_000)
+                .post(events(100)).toBlocking().single();
+
+        assertThat(bulks).hasSize(1);
+        assertThat(response.count()).isEqualTo(100);
+    }
+
+    @Test
+    public void test_event_larger_than_max_bulk_bytes_is_sent_alone() {
+        List<JsonEvent> batch = events(3);
+        batch.get(1).put("large", new String(new char[500]).replace('\0', 'x'));
+
+        ElasticSearchBulkResponseEvent response = client().withMaxBulkBytes(200)
+                .post(batch).toBlocking().single();
+
+        assertThat(bulks).hasSize(3);
+        assertThat(response.count()).isEqualTo(3);
+    }
+
+    @Test
+    public void test_invalid_lazy_event_fails_before_request() {
+        List<JsonEvent> events = Arrays.asList(Codecs.JSON_OBJECT_LAZY.from("{\"id\":0}"),
+                Codecs.JSON_OBJECT_LAZY.from("{\"id\":1,\"message\":}"));
+        try {
+            client().post(events);
+            fail("Invalid json must not be sent");
+        } catch (RuntimeException e) {
+            assertThat(bulks).isEmpty();
+        }
+    }
+
+    @Test
+    public void test_bad_request_items_are_not_retried() {
+        responses.add(bulkResponse(5, 400));
+
+        ElasticSearchBulkResponseEvent response = client().post(events(1))
+                .timeout(5, TimeUnit.SECONDS).toBlocking().single();
+
+        assertThat(bulks).hasSize(1);
+        assertThat(response.unsafe().get("errors").asBoolean()).isTrue();
+        assertThat(response.unsafe().get("took").asLong()).isEqualTo(5);
+        assertThat(response.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void test_bad_request_items_after_retry() {
+        responses.add(bulkResponse(5, 429));
+        responses.add(bulkResponse(5, 400));
+
+        ElasticSearchBulkResponseEvent response = client().withRetryTimer(Observables.fixedTimer(10), 5)
+                .post(events(1))
+                .timeout(5, TimeUnit.SECONDS).toBlocking().single();
+
+        assertThat(bulks).hasSize(2);
+        assertThat(response.unsafe().get("errors").asBoolean()).isTrue();
+        // Each attempt is counted once
+        assertThat(response.unsafe().get("took").asLong()).isEqualTo(10);
+        assertThat(response.unsafe().get("items").get(0).get("index").get("status").asInt()).isEqualTo(400);
+    }
+
+    private static String bulkResponse(long took, int status) {
+        return "{\"took\":" + took + ",\"errors\":true,\"items\":[{\"index\":{\"_index\":\"idx\",\"_type\":\"t\","
+                + "\"_id\":\"0\",\"status\":" + status + ",\"error\":\"failed with " + status + "\"}}]}";
+    }
+
+    private ElasticSearchOkHttpClientImpl client() {
+        return new ElasticSearchOkHttpClientImpl("http://localhost:" + server.getAddress().getPort(), "idx", "t", false);
+    }
+
+    private static List<JsonEvent> events(int count) {
+        List<JsonEvent> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            events.add(new JsonEvent().put("id", i).put("message", "Hello mighty mouse"));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.elasticsearch;
+
+import lumbermill.Core;
+import lumbermill.internal.MapWrap;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ElasticsearchClientFactoryTest {
+
+    @Test
+    public void test_gauges_of_clients_in_different_clusters_are_kept() {
+        ElasticsearchClientFactory factory = new ElasticsearchClientFactory();
+        factory.ofParameters(MapWrap.of("url", "http://first:9200", "index", "logs", "type", "t"));
+        factory.ofParameters(MapWrap.of("url", "https://second.example.com", "index_prefix", "logs", "type", "t"));
+
+        assertThat(Core.metrics.gauges()).containsKeys(
+                "elasticsearch.first_9200.logs.concurrency_limit",
+                "elasticsearch.second_example_com.logs*.concurrency_limit");
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Sony Mobile Communications, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package lumbermill.internal.elasticsearch;
+
+import lumbermill.internal.Streams;
+import okio.ByteString;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GzipCompressorTest {
+
+    @Test
+    public void test_compressed_payload_is_valid_gzip() {
+        GzipCompressor compressor = new GzipCompressor(3, 1);
+        byte[] bulk = bulk(1000);
+        for (int i = 0; i < 3; i++) {
+            // Same deflater is reused from the pool
+            byte[] compressed = compressor.compress(bulk);
+            assertThat(compressed.length).isLessThan(bulk.length / 5);
+            assertThat(Streams.gunzip(ByteString.of(compressed)).toByteArray()).isEqualTo(bulk);
+        }
+    }
+
+    @Test
+    public void test_incompressible_and_empty_payloads() {
+        GzipCompressor compressor = new GzipCompressor(9, 1);
+        byte[] random = new byte[100_000];
+        new Random(42).nextBytes(random);
+        assertThat(Streams.gunzip(ByteString.of(compressor.compress(random))).toByteArray()).isEqualTo(random);
+        assertThat(Streams.gunzip(ByteString.of(compressor.compress(new byte[0]))).size()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_invalid_level_fails() {
+        new GzipCompressor(10);
+    }
+
+    private static byte[] bulk(int events) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < events; i++) {
+            builder.append("{\"index\":{\"_index\":\"lumbermill-2016.06.15\",\"_type\":\"haproxy\"}}\n")
+                    .append("{\"message\":\"GET /api/v1/users/").append(i).append(" HTTP/1.1\",\"status\":200}\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
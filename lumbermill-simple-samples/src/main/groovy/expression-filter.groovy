@@ -7,7 +7,7 @@ import static lumbermill.Core.*
 // Performs simple filtering with boolean expression.
 
 /* Requirements:
-  : Valid JavaScript
+  : Valid JavaScript (a subset is compiled, anything else is evaluated as javascript)
   : Must evaluate to return a boolean value
 */
 